@@ -0,0 +1,121 @@
+package com.spotify.confidence;
+
+import com.google.protobuf.util.Structs;
+import com.google.protobuf.util.Values;
+import com.spotify.confidence.flags.resolver.v1.FlagDefinition;
+import com.spotify.confidence.flags.resolver.v1.FlagDefinition.Rule;
+import com.spotify.confidence.flags.resolver.v1.FlagDefinition.Variant;
+import com.spotify.confidence.flags.resolver.v1.FlagDefinitions;
+import com.spotify.confidence.flags.types.v1.FlagSchema;
+import com.spotify.confidence.flags.types.v1.FlagSchema.BoolFlagSchema;
+import com.spotify.confidence.flags.types.v1.FlagSchema.StructFlagSchema;
+import com.spotify.confidence.flags.types.v1.Targeting;
+import dev.openfeature.sdk.ImmutableContext;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Blocking evaluations from many threads against a {@link LocalFlagResolverService} served
+ * in-process, with a single channel and with pools of channels. The in-process transport has no
+ * stream limit, so this measures the overhead of the pool and the contention on the channels rather
+ * than the HTTP/2 stream ceiling that the pool avoids on real connections.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(16)
+@State(Scope.Benchmark)
+public class ChannelPoolBenchmark {
+
+  private static final int CONTEXTS = 1000;
+
+  @Param({"1", "4"})
+  public int poolSize;
+
+  @Param({"ROUND_ROBIN", "LEAST_OUTSTANDING"})
+  public ChannelSelection selection;
+
+  private Server server;
+  private ConfidenceFeatureProvider provider;
+  private ImmutableContext[] contexts;
+
+  @Setup
+  public void setup() throws IOException {
+    final String serverName = InProcessServerBuilder.generateName();
+    server =
+        InProcessServerBuilder.forName(serverName)
+            .addService(new LocalFlagResolverService(LocalResolver.create(definitions())))
+            .build()
+            .start();
+    final List<ManagedChannel> channels = new ArrayList<>(poolSize);
+    for (int i = 0; i < poolSize; i++) {
+      channels.add(InProcessChannelBuilder.forName(serverName).build());
+    }
+    provider =
+        ConfidenceFeatureProvider.builder("fake-secret")
+            .channel(poolSize == 1 ? channels.get(0) : new ChannelPool(channels, selection))
+            .build();
+    contexts = new ImmutableContext[CONTEXTS];
+    for (int i = 0; i < CONTEXTS; i++) {
+      contexts[i] = new ImmutableContext("user-" + i);
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    provider.shutdown();
+    server.shutdownNow();
+  }
+
+  @Benchmark
+  public Boolean evaluate() {
+    final ImmutableContext context = contexts[ThreadLocalRandom.current().nextInt(CONTEXTS)];
+    return provider.getBooleanEvaluation("flag.enabled", false, context).getValue();
+  }
+
+  private static FlagDefinitions definitions() {
+    final String variant = "flags/flag/variants/on";
+    return FlagDefinitions.newBuilder()
+        .addFlags(
+            FlagDefinition.newBuilder()
+                .setName("flags/flag")
+                .setSchema(
+                    StructFlagSchema.newBuilder()
+                        .putSchema(
+                            "enabled",
+                            FlagSchema.newBuilder()
+                                .setBoolSchema(BoolFlagSchema.getDefaultInstance())
+                                .build()))
+                .addVariants(
+                    Variant.newBuilder()
+                        .setName(variant)
+                        .setValue(Structs.of("enabled", Values.of(true))))
+                .addRules(
+                    Rule.newBuilder()
+                        .setTargeting(Targeting.getDefaultInstance())
+                        .setVariant(variant)))
+        .build();
+  }
+}
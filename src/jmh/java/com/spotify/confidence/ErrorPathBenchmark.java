@@ -0,0 +1,122 @@
+package com.spotify.confidence;
+
+import com.spotify.confidence.flags.resolver.v1.FlagResolverServiceGrpc.FlagResolverServiceImplBase;
+import com.spotify.confidence.flags.resolver.v1.ResolveFlagsRequest;
+import com.spotify.confidence.flags.resolver.v1.ResolveFlagsResponse;
+import dev.openfeature.sdk.EvaluationContext;
+import dev.openfeature.sdk.MutableContext;
+import dev.openfeature.sdk.ProviderEvaluation;
+import dev.openfeature.sdk.Value;
+import dev.openfeature.sdk.exceptions.OpenFeatureError;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Evaluations that fail, against an in-process gRPC server with direct executors that either
+ * resolves no flag or is unavailable: a flag that isn't found, a value of the wrong type and a
+ * backend outage. Errors are thrown, or returned as evaluations with an error code with {@link
+ * ConfidenceFeatureProvider.Builder#errorEvaluations()}. Add {@code -prof gc} for the allocation
+ * rate.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ErrorPathBenchmark {
+
+  @Param({"false", "true"})
+  public boolean errorEvaluations;
+
+  private Server server;
+  private ManagedChannel channel;
+  private ConfidenceFeatureProvider provider;
+  private EvaluationContext context;
+
+  @Setup
+  public void setup() throws IOException {
+    final String serverName = InProcessServerBuilder.generateName();
+    server =
+        InProcessServerBuilder.forName(serverName)
+            .directExecutor()
+            .addService(
+                new FlagResolverServiceImplBase() {
+                  @Override
+                  public void resolveFlags(
+                      ResolveFlagsRequest request,
+                      StreamObserver<ResolveFlagsResponse> responseObserver) {
+                    if (request.getFlags(0).equals("flags/unavailable")) {
+                      responseObserver.onError(Status.UNAVAILABLE.asRuntimeException());
+                    } else {
+                      responseObserver.onNext(ResolveFlagsResponse.getDefaultInstance());
+                      responseObserver.onCompleted();
+                    }
+                  }
+                })
+            .build()
+            .start();
+    channel = InProcessChannelBuilder.forName(serverName).directExecutor().build();
+    final ConfidenceFeatureProvider.Builder builder =
+        ConfidenceFeatureProvider.builder("fake-secret").channel(channel);
+    if (errorEvaluations) {
+      builder.errorEvaluations();
+    }
+    provider = builder.build();
+    context = new MutableContext("user-1", Map.of("country", new Value("SE")));
+  }
+
+  @TearDown
+  public void tearDown() {
+    provider.shutdown();
+    server.shutdownNow();
+  }
+
+  @Benchmark
+  public Object flagNotFound() {
+    try {
+      return provider.getObjectEvaluation("missing.title", new Value("default"), context);
+    } catch (OpenFeatureError e) {
+      return e;
+    }
+  }
+
+  @Benchmark
+  public Object unavailable() {
+    try {
+      return provider.getObjectEvaluation("unavailable", new Value("default"), context);
+    } catch (OpenFeatureError e) {
+      return e;
+    }
+  }
+
+  @Benchmark
+  public Object errorMessage() {
+    try {
+      final ProviderEvaluation<Value> evaluation =
+          provider.getObjectEvaluation("missing", new Value("default"), context);
+      return evaluation.getErrorMessage();
+    } catch (OpenFeatureError e) {
+      return e.getMessage();
+    }
+  }
+}
@@ -0,0 +1,130 @@
+package com.spotify.confidence;
+
+import com.google.protobuf.util.Structs;
+import com.google.protobuf.util.Values;
+import com.spotify.confidence.flags.resolver.v1.FlagResolverServiceGrpc.FlagResolverServiceImplBase;
+import com.spotify.confidence.flags.resolver.v1.ResolveFlagsRequest;
+import com.spotify.confidence.flags.resolver.v1.ResolveFlagsResponse;
+import com.spotify.confidence.flags.resolver.v1.ResolvedFlag;
+import com.spotify.confidence.flags.types.v1.FlagSchema;
+import com.spotify.confidence.flags.types.v1.FlagSchema.BoolFlagSchema;
+import com.spotify.confidence.flags.types.v1.FlagSchema.StringFlagSchema;
+import com.spotify.confidence.flags.types.v1.FlagSchema.StructFlagSchema;
+import dev.openfeature.sdk.EvaluationContext;
+import dev.openfeature.sdk.MutableContext;
+import dev.openfeature.sdk.ProviderEvaluation;
+import dev.openfeature.sdk.Value;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link ConfidenceFeatureProvider#getObjectEvaluation} end to end against an in-process gRPC
+ * server with direct executors, as set up by FeatureProviderTest, so that the provider's own work
+ * dominates: converting the context, building the request, the in-process call and converting the
+ * resolved value. With the cache, the call is replaced by a cache hit. Reports throughput and, in
+ * sample mode, latency percentiles; add {@code -prof gc} for the allocation rate.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EvaluationBenchmark {
+
+  @Param({"flag", "flag.title"})
+  public String key;
+
+  @Param({"false", "true"})
+  public boolean cached;
+
+  private static final Value DEFAULT_VALUE = new Value("default");
+
+  private Server server;
+  private ManagedChannel channel;
+  private ConfidenceFeatureProvider provider;
+  private EvaluationContext context;
+
+  @Setup
+  public void setup() throws IOException {
+    final ResolveFlagsResponse response =
+        ResolveFlagsResponse.newBuilder()
+            .addResolvedFlags(
+                ResolvedFlag.newBuilder()
+                    .setFlag("flags/flag")
+                    .setVariant("flags/flag/variants/on")
+                    .setValue(
+                        Structs.of(
+                            "enabled", Values.of(true),
+                            "title", Values.of("hello")))
+                    .setFlagSchema(
+                        StructFlagSchema.newBuilder()
+                            .putSchema(
+                                "enabled",
+                                FlagSchema.newBuilder()
+                                    .setBoolSchema(BoolFlagSchema.getDefaultInstance())
+                                    .build())
+                            .putSchema(
+                                "title",
+                                FlagSchema.newBuilder()
+                                    .setStringSchema(StringFlagSchema.getDefaultInstance())
+                                    .build())))
+            .build();
+    final String serverName = InProcessServerBuilder.generateName();
+    server =
+        InProcessServerBuilder.forName(serverName)
+            .directExecutor()
+            .addService(
+                new FlagResolverServiceImplBase() {
+                  @Override
+                  public void resolveFlags(
+                      ResolveFlagsRequest request,
+                      StreamObserver<ResolveFlagsResponse> responseObserver) {
+                    responseObserver.onNext(response);
+                    responseObserver.onCompleted();
+                  }
+                })
+            .build()
+            .start();
+    channel = InProcessChannelBuilder.forName(serverName).directExecutor().build();
+    final ConfidenceFeatureProvider.Builder builder =
+        ConfidenceFeatureProvider.builder("fake-secret").channel(channel);
+    if (cached) {
+      builder.resolveCache(1000, Duration.ofHours(1));
+    }
+    provider = builder.build();
+    context =
+        new MutableContext(
+            "user-1", Map.of("country", new Value("SE"), "version", new Value("1.2.3")));
+  }
+
+  @TearDown
+  public void tearDown() {
+    provider.shutdown();
+    server.shutdownNow();
+  }
+
+  @Benchmark
+  public ProviderEvaluation<Value> getObjectEvaluation() {
+    return provider.getObjectEvaluation(key, DEFAULT_VALUE, context);
+  }
+}
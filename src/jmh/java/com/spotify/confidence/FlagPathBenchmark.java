@@ -0,0 +1,59 @@
+package com.spotify.confidence;
+
+import com.spotify.confidence.ConfidenceFeatureProvider.FlagPath;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Splitting of flag keys into the flag name and the path into the flag value, and the lookup of
+ * keys parsed before, which should allocate nothing; add {@code -prof gc} to check
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FlagPathBenchmark {
+
+  @Param({"flag", "flag.nested.title"})
+  public String key;
+
+  private ConfidenceFeatureProvider provider;
+
+  @Setup
+  public void setup() {
+    // the channel is never called
+    provider =
+        ConfidenceFeatureProvider.builder("fake-secret")
+            .channel(InProcessChannelBuilder.forName("unused").build())
+            .build();
+  }
+
+  @TearDown
+  public void tearDown() {
+    provider.shutdown();
+  }
+
+  @Benchmark
+  public FlagPath getPath() {
+    return ConfidenceFeatureProvider.getPath(key);
+  }
+
+  @Benchmark
+  public FlagPath keptFlagPath() {
+    return provider.flagPath(key);
+  }
+}
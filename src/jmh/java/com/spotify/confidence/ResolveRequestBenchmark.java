@@ -0,0 +1,74 @@
+package com.spotify.confidence;
+
+import com.google.protobuf.Struct;
+import com.google.protobuf.util.Structs;
+import com.google.protobuf.util.Values;
+import com.spotify.confidence.flags.resolver.v1.ResolveFlagsRequest;
+import com.spotify.confidence.flags.resolver.v1.Sdk;
+import com.spotify.confidence.flags.resolver.v1.SdkId;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Building the request of resolving one flag, from a request prototype and the kept request names
+ * of the flag, against building every part of it for each evaluation. Add {@code -prof gc} for the
+ * bytes allocated per request.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResolveRequestBenchmark {
+
+  @Param({"flag"})
+  public String flag;
+
+  private ConfidenceFeatureProvider provider;
+  private Struct context;
+
+  @Setup
+  public void setup() {
+    // the channel is never called
+    provider =
+        ConfidenceFeatureProvider.builder("fake-secret")
+            .channel(InProcessChannelBuilder.forName("unused").build())
+            .build();
+    context = Structs.of("targeting_key", Values.of("user-1"), "country", Values.of("SE"));
+  }
+
+  @TearDown
+  public void tearDown() {
+    provider.shutdown();
+  }
+
+  @Benchmark
+  public ResolveFlagsRequest fromPrototype() {
+    return provider.resolveRequest(context, provider.singleFlagRequest(flag));
+  }
+
+  @Benchmark
+  public ResolveFlagsRequest rebuilt() {
+    return ResolveFlagsRequest.newBuilder()
+        .setClientSecret("fake-secret")
+        .addAllFlags(List.of("flags/" + flag))
+        .setEvaluationContext(context)
+        .setSdk(Sdk.newBuilder().setId(SdkId.SDK_ID_JAVA_PROVIDER).setVersion("0.0.0").build())
+        .setApply(true)
+        .build();
+  }
+}
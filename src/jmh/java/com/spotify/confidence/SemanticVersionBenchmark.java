@@ -0,0 +1,72 @@
+package com.spotify.confidence;
+
+import com.google.protobuf.util.Values;
+import com.spotify.confidence.flags.types.v1.Targeting;
+import com.spotify.confidence.flags.types.v1.Targeting.RangeRule;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Parsing and comparing semantic versions, as done for version range targeting */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SemanticVersionBenchmark {
+
+  private static final String VERSION = "8.9.12-beta.11+build.1234";
+
+  private SemanticVersion version;
+  private SemanticVersion preRelease;
+  private ValueMatcher versionRange;
+  private com.google.protobuf.Value appVersion;
+
+  @Setup
+  public void setup() {
+    version = SemanticVersion.parse(VERSION);
+    preRelease = SemanticVersion.parse("8.9.12-beta.2");
+    versionRange =
+        ValueMatchers.range(
+            RangeRule.newBuilder()
+                .setStartInclusive(version("8.0.0"))
+                .setEndExclusive(version("9.0.0"))
+                .build());
+    appVersion = Values.of(VERSION);
+  }
+
+  @Benchmark
+  public SemanticVersion parse() {
+    return SemanticVersion.parse(VERSION);
+  }
+
+  @Benchmark
+  public SemanticVersion parseCached() {
+    return SemanticVersion.parseCached(VERSION);
+  }
+
+  @Benchmark
+  public int comparePreRelease() {
+    return version.compareTo(preRelease);
+  }
+
+  @Benchmark
+  public boolean matchVersionRange() {
+    return versionRange.matches(appVersion);
+  }
+
+  private static Targeting.Value version(String version) {
+    return Targeting.Value.newBuilder()
+        .setVersionValue(Targeting.SemanticVersion.newBuilder().setVersion(version))
+        .build();
+  }
+}
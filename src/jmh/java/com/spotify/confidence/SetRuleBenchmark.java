@@ -0,0 +1,84 @@
+package com.spotify.confidence;
+
+import com.google.protobuf.util.Values;
+import com.spotify.confidence.flags.types.v1.Targeting;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Matching of a context value against set rules of different sizes, with the compiled {@link
+ * ValueMatchers.SetMatcher} and with a linear scan over the rule values as a baseline.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SetRuleBenchmark {
+
+  @Param({"10", "100000"})
+  public int size;
+
+  private List<Targeting.Value> values;
+  private ValueMatcher stringSet;
+  private ValueMatcher numberSet;
+  private com.google.protobuf.Value lastString;
+  private com.google.protobuf.Value missingString;
+  private com.google.protobuf.Value lastNumber;
+
+  @Setup
+  public void setup() {
+    values =
+        IntStream.range(0, size)
+            .mapToObj(i -> Targeting.Value.newBuilder().setStringValue("user-" + i).build())
+            .collect(Collectors.toList());
+    stringSet = new ValueMatchers.SetMatcher(values);
+    numberSet =
+        new ValueMatchers.SetMatcher(
+            IntStream.range(0, size)
+                .mapToObj(i -> Targeting.Value.newBuilder().setNumberValue(i).build())
+                .collect(Collectors.toList()));
+    lastString = Values.of("user-" + (size - 1));
+    missingString = Values.of("user-" + size);
+    lastNumber = Values.of(size - 1);
+  }
+
+  @Benchmark
+  public boolean stringSetHit() {
+    return stringSet.matches(lastString);
+  }
+
+  @Benchmark
+  public boolean stringSetMiss() {
+    return stringSet.matches(missingString);
+  }
+
+  @Benchmark
+  public boolean numberSetHit() {
+    return numberSet.matches(lastNumber);
+  }
+
+  @Benchmark
+  public boolean linearScanHit() {
+    for (Targeting.Value value : values) {
+      if (value.getStringValue().equals(lastString.getStringValue())) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,229 @@
+package com.spotify.confidence;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.ListValue;
+import com.google.protobuf.Struct;
+import com.google.protobuf.util.Values;
+import com.spotify.confidence.flags.resolver.v1.ResolvedFlag;
+import com.spotify.confidence.flags.types.v1.FlagSchema;
+import com.spotify.confidence.flags.types.v1.FlagSchema.BoolFlagSchema;
+import com.spotify.confidence.flags.types.v1.FlagSchema.DoubleFlagSchema;
+import com.spotify.confidence.flags.types.v1.FlagSchema.IntFlagSchema;
+import com.spotify.confidence.flags.types.v1.FlagSchema.ListFlagSchema;
+import com.spotify.confidence.flags.types.v1.FlagSchema.StringFlagSchema;
+import com.spotify.confidence.flags.types.v1.FlagSchema.StructFlagSchema;
+import dev.openfeature.sdk.MutableStructure;
+import dev.openfeature.sdk.Value;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Conversion of flag values with nested schemas, with {@link ConversionPlan} and with a walk over
+ * the schema for every value, as TypeMapper did before conversion plans, as a baseline. Every
+ * resolve parses a new instance of the flag schema, so the benchmarks that take the schema parse it
+ * on each invocation, and the parse benchmark gives the cost of parsing alone. The resolution
+ * benchmarks evaluate a resolution that already has its plan, as done for cached, prefetched and
+ * batched flags. The path benchmarks look up a single field, as done for flag keys such as
+ * "flag.nested.title", and the proto benchmark converts an OpenFeature value the other way, to a
+ * protobuf value.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TypeMapperBenchmark {
+
+  @Param({"1", "3"})
+  public int depth;
+
+  private static final String FLAG = "flags/benchmark";
+
+  private Struct value;
+  // the serialized schema, as received in resolve responses
+  private byte[] schemaBytes;
+  private FlagResolution resolution;
+  // the path to the deepest title
+  private List<String> path;
+  // a value like an evaluation context, for the conversion to a protobuf value, which doesn't
+  // support numbers
+  private Value converted;
+
+  @Setup
+  public void setup() {
+    Struct.Builder value = leafValue();
+    StructFlagSchema.Builder schema = leafSchema();
+    for (int i = 1; i < depth; i++) {
+      value = leafValue().putFields("nested", Values.of(value.build()));
+      schema =
+          leafSchema().putSchema("nested", FlagSchema.newBuilder().setStructSchema(schema).build());
+    }
+    this.value = value.build();
+    this.schemaBytes = schema.build().toByteArray();
+    this.resolution =
+        new FlagResolution(
+            ResolvedFlag.newBuilder()
+                .setFlag(FLAG)
+                .setValue(this.value)
+                .setFlagSchema(parseSchema())
+                .build(),
+            ByteString.EMPTY);
+    resolution.conversionPlan();
+    final List<String> nested = new ArrayList<>(Collections.nCopies(depth - 1, "nested"));
+    nested.add("title");
+    this.path = nested;
+    Value converted = evaluationContextValue();
+    for (int i = 1; i < depth; i++) {
+      final Map<String, Value> fields =
+          new HashMap<>(evaluationContextValue().asStructure().asMap());
+      fields.put("nested", converted);
+      converted = new Value(new MutableStructure(fields));
+    }
+    this.converted = converted;
+  }
+
+  @Benchmark
+  public StructFlagSchema schemaParse() {
+    return parseSchema();
+  }
+
+  @Benchmark
+  public Value conversionPlan() {
+    return ConversionPlan.forFlag(FLAG, parseSchema()).convert(value);
+  }
+
+  @Benchmark
+  public Value conversionPlanPath() {
+    return ConversionPlan.forFlag(FLAG, parseSchema()).convert(value, path);
+  }
+
+  @Benchmark
+  public Value resolution() {
+    return resolution.conversionPlan().convert(resolution.getResolvedFlag().getValue());
+  }
+
+  @Benchmark
+  public Value resolutionPath() {
+    return resolution.conversionPlan().convert(resolution.getResolvedFlag().getValue(), path);
+  }
+
+  @Benchmark
+  public com.google.protobuf.Value toProto() {
+    return TypeMapper.from(converted);
+  }
+
+  @Benchmark
+  public Value schemaWalk() {
+    return walk(value, parseSchema());
+  }
+
+  private StructFlagSchema parseSchema() {
+    try {
+      return StructFlagSchema.parseFrom(schemaBytes);
+    } catch (InvalidProtocolBufferException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static Value evaluationContextValue() {
+    return new Value(
+        new MutableStructure(
+            Map.of(
+                "targeting_key", new Value("user-1"),
+                "premium", new Value(true),
+                "country", new Value("SE"),
+                "tags", new Value(List.of(new Value("a"), new Value("b"), new Value("c"))))));
+  }
+
+  private static Struct.Builder leafValue() {
+    return Struct.newBuilder()
+        .putFields("enabled", Values.of(true))
+        .putFields("count", Values.of(42))
+        .putFields("ratio", Values.of(0.5))
+        .putFields("title", Values.of("hello"))
+        .putFields(
+            "tags",
+            Values.of(
+                ListValue.newBuilder()
+                    .addValues(Values.of("a"))
+                    .addValues(Values.of("b"))
+                    .addValues(Values.of("c"))
+                    .build()));
+  }
+
+  private static StructFlagSchema.Builder leafSchema() {
+    final FlagSchema string =
+        FlagSchema.newBuilder().setStringSchema(StringFlagSchema.getDefaultInstance()).build();
+    return StructFlagSchema.newBuilder()
+        .putSchema(
+            "enabled",
+            FlagSchema.newBuilder().setBoolSchema(BoolFlagSchema.getDefaultInstance()).build())
+        .putSchema(
+            "count",
+            FlagSchema.newBuilder().setIntSchema(IntFlagSchema.getDefaultInstance()).build())
+        .putSchema(
+            "ratio",
+            FlagSchema.newBuilder().setDoubleSchema(DoubleFlagSchema.getDefaultInstance()).build())
+        .putSchema("title", string)
+        .putSchema(
+            "tags",
+            FlagSchema.newBuilder()
+                .setListSchema(ListFlagSchema.newBuilder().setElementSchema(string))
+                .build());
+  }
+
+  private static Value walk(Struct struct, StructFlagSchema schema) {
+    final Map<String, Value> map =
+        struct.getFieldsMap().entrySet().stream()
+            .collect(
+                Collectors.toMap(
+                    Map.Entry::getKey,
+                    entry -> {
+                      if (!schema.getSchemaMap().containsKey(entry.getKey())) {
+                        throw new IllegalArgumentException(entry.getKey());
+                      }
+                      return walk(entry.getValue(), schema.getSchemaMap().get(entry.getKey()));
+                    }));
+    return new Value(new MutableStructure(map));
+  }
+
+  private static Value walk(com.google.protobuf.Value value, FlagSchema schema) {
+    switch (value.getKindCase()) {
+      case NUMBER_VALUE:
+        return schema.getSchemaTypeCase() == FlagSchema.SchemaTypeCase.INT_SCHEMA
+            ? new Value((int) value.getNumberValue())
+            : new Value(value.getNumberValue());
+      case STRING_VALUE:
+        return new Value(value.getStringValue());
+      case BOOL_VALUE:
+        return new Value(value.getBoolValue());
+      case STRUCT_VALUE:
+        return walk(value.getStructValue(), schema.getStructSchema());
+      case LIST_VALUE:
+        return new Value(
+            value.getListValue().getValuesList().stream()
+                .map(element -> walk(element, schema.getListSchema().getElementSchema()))
+                .collect(Collectors.toList()));
+      default:
+        throw new IllegalArgumentException(value.getKindCase().toString());
+    }
+  }
+}
@@ -0,0 +1,13 @@
+package com.spotify.confidence;
+
+/** What to do when a flag is applied while the buffer of pending applies is full */
+public enum ApplyBackpressurePolicy {
+  /** Drop the oldest pending apply to make room for the new one */
+  DROP_OLDEST,
+  /**
+   * Block the evaluating thread until the buffer has room again. Asynchronous evaluations complete
+   * on gRPC and executor threads that must not block, so they drop the oldest pending apply
+   * instead.
+   */
+  BLOCK
+}
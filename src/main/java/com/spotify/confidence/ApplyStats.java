@@ -0,0 +1,42 @@
+package com.spotify.confidence;
+
+/** Point-in-time counters of the deferred apply of flags in {@link ConfidenceFeatureProvider} */
+public final class ApplyStats {
+
+  static final ApplyStats EMPTY = new ApplyStats(0, 0, 0);
+
+  private final long sentCount;
+  private final long droppedCount;
+  private final long failedCount;
+
+  ApplyStats(long sentCount, long droppedCount, long failedCount) {
+    this.sentCount = sentCount;
+    this.droppedCount = droppedCount;
+    this.failedCount = failedCount;
+  }
+
+  /** Number of flag applies that were sent to the resolver */
+  public long getSentCount() {
+    return sentCount;
+  }
+
+  /** Number of flag applies that were dropped because the buffer of pending applies was full */
+  public long getDroppedCount() {
+    return droppedCount;
+  }
+
+  /**
+   * Number of flag applies whose ApplyFlags call failed. These flags are applied again when they
+   * are evaluated again.
+   */
+  public long getFailedCount() {
+    return failedCount;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "ApplyStats{sentCount=%d, droppedCount=%d, failedCount=%d}",
+        sentCount, droppedCount, failedCount);
+  }
+}
@@ -0,0 +1,75 @@
+package com.spotify.confidence;
+
+/** Point-in-time counters of the resolve cache in {@link ConfidenceFeatureProvider} */
+public final class CacheStats {
+
+  static final CacheStats EMPTY = new CacheStats(0, 0, 0, 0, 0, 0, 0);
+
+  private final long hitCount;
+  private final long missCount;
+  private final long evictionCount;
+  private final long size;
+  private final long staleHitCount;
+  private final long refreshCount;
+  private final long refreshFailureCount;
+
+  CacheStats(
+      long hitCount,
+      long missCount,
+      long evictionCount,
+      long size,
+      long staleHitCount,
+      long refreshCount,
+      long refreshFailureCount) {
+    this.hitCount = hitCount;
+    this.missCount = missCount;
+    this.evictionCount = evictionCount;
+    this.size = size;
+    this.staleHitCount = staleHitCount;
+    this.refreshCount = refreshCount;
+    this.refreshFailureCount = refreshFailureCount;
+  }
+
+  /** Number of lookups that were served from the cache */
+  public long getHitCount() {
+    return hitCount;
+  }
+
+  /** Number of lookups that had to resolve the flag remotely */
+  public long getMissCount() {
+    return missCount;
+  }
+
+  /** Number of entries removed because they expired or the cache was full */
+  public long getEvictionCount() {
+    return evictionCount;
+  }
+
+  /** Number of entries currently held by the cache */
+  public long getSize() {
+    return size;
+  }
+
+  /** Number of hits that were served from an entry due for a refresh, included in the hits */
+  public long getStaleHitCount() {
+    return staleHitCount;
+  }
+
+  /** Number of background refreshes that were started */
+  public long getRefreshCount() {
+    return refreshCount;
+  }
+
+  /** Number of background refreshes that failed, after which the stale entry is kept */
+  public long getRefreshFailureCount() {
+    return refreshFailureCount;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "CacheStats{hitCount=%d, missCount=%d, evictionCount=%d, size=%d, staleHitCount=%d,"
+            + " refreshCount=%d, refreshFailureCount=%d}",
+        hitCount, missCount, evictionCount, size, staleHitCount, refreshCount, refreshFailureCount);
+  }
+}
@@ -0,0 +1,153 @@
+package com.spotify.confidence;
+
+import io.grpc.CallOptions;
+import io.grpc.ClientCall;
+import io.grpc.ForwardingClientCall.SimpleForwardingClientCall;
+import io.grpc.ForwardingClientCallListener.SimpleForwardingClientCallListener;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Spreads calls over several channels, so that each of them has its own connection and the
+ * concurrent calls aren't capped by the maximum number of concurrent streams of a single HTTP/2
+ * connection. Shutting down the pool shuts down all its channels.
+ */
+final class ChannelPool extends ManagedChannel {
+
+  private final List<ManagedChannel> channels;
+  private final ChannelSelection selection;
+  private final AtomicInteger next = new AtomicInteger();
+  // calls in flight per channel, only counted for LEAST_OUTSTANDING
+  private final AtomicIntegerArray outstanding;
+
+  ChannelPool(List<ManagedChannel> channels, ChannelSelection selection) {
+    if (channels.isEmpty()) {
+      throw new IllegalArgumentException("A channel pool needs at least one channel.");
+    }
+    this.channels = List.copyOf(channels);
+    this.selection = selection;
+    this.outstanding = new AtomicIntegerArray(channels.size());
+  }
+
+  @Override
+  public <ReqT, RespT> ClientCall<ReqT, RespT> newCall(
+      MethodDescriptor<ReqT, RespT> methodDescriptor, CallOptions callOptions) {
+    if (selection == ChannelSelection.ROUND_ROBIN) {
+      return channels
+          .get(Math.floorMod(next.getAndIncrement(), channels.size()))
+          .newCall(methodDescriptor, callOptions);
+    }
+    final int index = leastOutstanding();
+    return new CountedCall<>(channels.get(index).newCall(methodDescriptor, callOptions), index);
+  }
+
+  @Override
+  public String authority() {
+    return channels.get(0).authority();
+  }
+
+  @Override
+  public ManagedChannel shutdown() {
+    for (ManagedChannel channel : channels) {
+      channel.shutdown();
+    }
+    return this;
+  }
+
+  @Override
+  public ManagedChannel shutdownNow() {
+    for (ManagedChannel channel : channels) {
+      channel.shutdownNow();
+    }
+    return this;
+  }
+
+  @Override
+  public boolean isShutdown() {
+    return channels.stream().allMatch(ManagedChannel::isShutdown);
+  }
+
+  @Override
+  public boolean isTerminated() {
+    return channels.stream().allMatch(ManagedChannel::isTerminated);
+  }
+
+  @Override
+  public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+    final long deadline = System.nanoTime() + unit.toNanos(timeout);
+    for (ManagedChannel channel : channels) {
+      final long remaining = deadline - System.nanoTime();
+      if (!channel.awaitTermination(Math.max(0, remaining), TimeUnit.NANOSECONDS)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public void resetConnectBackoff() {
+    for (ManagedChannel channel : channels) {
+      channel.resetConnectBackoff();
+    }
+  }
+
+  @Override
+  public void enterIdle() {
+    for (ManagedChannel channel : channels) {
+      channel.enterIdle();
+    }
+  }
+
+  private int leastOutstanding() {
+    // the scan starts at a rotating channel, so that ties are spread over the channels
+    final int size = channels.size();
+    final int start = Math.floorMod(next.getAndIncrement(), size);
+    int least = start;
+    int leastCount = outstanding.get(start);
+    for (int i = 1; i < size && leastCount > 0; i++) {
+      final int index = (start + i) % size;
+      final int count = outstanding.get(index);
+      if (count < leastCount) {
+        least = index;
+        leastCount = count;
+      }
+    }
+    return least;
+  }
+
+  /** Counts a call as outstanding on its channel from its start until it is closed */
+  private final class CountedCall<ReqT, RespT> extends SimpleForwardingClientCall<ReqT, RespT> {
+
+    private final int index;
+
+    CountedCall(ClientCall<ReqT, RespT> delegate, int index) {
+      super(delegate);
+      this.index = index;
+    }
+
+    @Override
+    public void start(Listener<RespT> responseListener, Metadata headers) {
+      outstanding.incrementAndGet(index);
+      try {
+        super.start(
+            new SimpleForwardingClientCallListener<>(responseListener) {
+              @Override
+              public void onClose(Status status, Metadata trailers) {
+                outstanding.decrementAndGet(index);
+                super.onClose(status, trailers);
+              }
+            },
+            headers);
+      } catch (RuntimeException e) {
+        outstanding.decrementAndGet(index);
+        throw e;
+      }
+    }
+  }
+}
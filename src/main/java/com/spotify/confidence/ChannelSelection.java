@@ -0,0 +1,9 @@
+package com.spotify.confidence;
+
+/** How a call picks a channel from the pool of channels to the resolver */
+public enum ChannelSelection {
+  /** Use the channels in turn */
+  ROUND_ROBIN,
+  /** Use the channel with the fewest calls in flight */
+  LEAST_OUTSTANDING
+}
@@ -0,0 +1,124 @@
+package com.spotify.confidence;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+import javax.annotation.Nullable;
+
+/**
+ * Stops calls to the resolver while it fails. Outcomes are counted in consecutive windows of calls,
+ * and calls that fail or are slower than the slow call threshold count as failures. The circuit
+ * opens when the failures of a window reach the failure rate threshold. While open, calls are
+ * rejected; after the open duration a single trial call is let through, which closes the circuit if
+ * it succeeds in time and opens it again otherwise.
+ */
+class CircuitBreaker {
+
+  // the window packs the number of calls in its high and the number of failures in its low 32 bits
+  private static final long CALL = 1L << 32;
+  private static final long FAILURE = 1;
+  private static final long FAILURES_MASK = CALL - 1;
+
+  private final int windowSize;
+  private final double failureRateThreshold;
+  private final long slowCallNanos;
+  private final long openNanos;
+  private final CircuitStateListener listener;
+  private final LongSupplier nanoTime;
+
+  private final AtomicReference<CircuitState> state = new AtomicReference<>(CircuitState.CLOSED);
+  private final AtomicLong window = new AtomicLong();
+  private final AtomicBoolean probing = new AtomicBoolean();
+  private volatile long openedAt;
+
+  CircuitBreaker(
+      int windowSize,
+      double failureRateThreshold,
+      Duration slowCallThreshold,
+      Duration openDuration,
+      CircuitStateListener listener,
+      LongSupplier nanoTime) {
+    this.windowSize = windowSize;
+    this.failureRateThreshold = failureRateThreshold;
+    this.slowCallNanos = slowCallThreshold.toNanos();
+    this.openNanos = openDuration.toNanos();
+    this.listener = listener;
+    this.nanoTime = nanoTime;
+  }
+
+  /**
+   * Returns the state in which a call may be made, to be passed back with its outcome, or null if
+   * the call is rejected
+   */
+  @Nullable
+  CircuitState tryAcquire() {
+    final CircuitState current = state.get();
+    if (current == CircuitState.CLOSED) {
+      return CircuitState.CLOSED;
+    }
+    if (current == CircuitState.OPEN) {
+      if (nanoTime.getAsLong() - openedAt < openNanos) {
+        return null;
+      }
+      transition(CircuitState.OPEN, CircuitState.HALF_OPEN);
+    }
+    return probing.compareAndSet(false, true) ? CircuitState.HALF_OPEN : null;
+  }
+
+  void onSuccess(CircuitState acquiredIn, long latencyNanos) {
+    record(acquiredIn, latencyNanos >= slowCallNanos);
+  }
+
+  void onFailure(CircuitState acquiredIn) {
+    record(acquiredIn, true);
+  }
+
+  /** Releases a call whose outcome says nothing about the resolver, such as a cancelled one */
+  void onIgnored(CircuitState acquiredIn) {
+    if (acquiredIn == CircuitState.HALF_OPEN) {
+      probing.set(false);
+    }
+  }
+
+  CircuitState state() {
+    return state.get();
+  }
+
+  private void record(CircuitState acquiredIn, boolean failed) {
+    if (acquiredIn == CircuitState.HALF_OPEN) {
+      if (failed) {
+        open(CircuitState.HALF_OPEN);
+      } else if (transition(CircuitState.HALF_OPEN, CircuitState.CLOSED)) {
+        window.set(0);
+      }
+      probing.set(false);
+      return;
+    }
+    if (state.get() != CircuitState.CLOSED) {
+      // the call was made before the circuit opened
+      return;
+    }
+    final long counts = window.addAndGet(failed ? CALL + FAILURE : CALL);
+    final long calls = counts >>> 32;
+    if (calls >= windowSize && window.compareAndSet(counts, 0)) {
+      if ((counts & FAILURES_MASK) >= failureRateThreshold * calls) {
+        open(CircuitState.CLOSED);
+      }
+    }
+  }
+
+  private void open(CircuitState from) {
+    openedAt = nanoTime.getAsLong();
+    transition(from, CircuitState.OPEN);
+  }
+
+  private boolean transition(CircuitState from, CircuitState to) {
+    if (!state.compareAndSet(from, to)) {
+      return false;
+    }
+    listener.onTransition(from, to);
+    return true;
+  }
+}
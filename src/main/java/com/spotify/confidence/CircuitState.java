@@ -0,0 +1,11 @@
+package com.spotify.confidence;
+
+/** State of the circuit breaker around resolve calls */
+public enum CircuitState {
+  /** Resolves are sent to the resolver */
+  CLOSED,
+  /** Resolves fail right away, without calling the resolver */
+  OPEN,
+  /** A single trial resolve is sent to find out whether the resolver has recovered */
+  HALF_OPEN
+}
@@ -0,0 +1,17 @@
+package com.spotify.confidence;
+
+/**
+ * Observes the state transitions of the circuit breaker around resolve calls. It is called on the
+ * thread that completed the resolve causing the transition, so it should return quickly.
+ */
+@FunctionalInterface
+public interface CircuitStateListener {
+
+  /**
+   * Called when the circuit breaker changed state.
+   *
+   * @param from previous state
+   * @param to new state
+   */
+  void onTransition(CircuitState from, CircuitState to);
+}
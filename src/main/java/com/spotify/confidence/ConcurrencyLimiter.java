@@ -0,0 +1,69 @@
+package com.spotify.confidence;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the number of concurrent calls to the resolver with an additive increase, multiplicative
+ * decrease (AIMD) limit. Calls that succeed within the latency threshold while the limit is in use
+ * raise the limit by one, and calls that are slow, time out or find the resolver unavailable lower
+ * it by a tenth. Calls beyond the limit are rejected instead of queued.
+ */
+class ConcurrencyLimiter {
+
+  private static final double BACKOFF_RATIO = 0.9;
+  private static final int MIN_LIMIT = 1;
+
+  private final int maxLimit;
+  private final long latencyThresholdNanos;
+
+  private final AtomicInteger inFlight = new AtomicInteger();
+  // the limit is a double to let repeated backoffs shrink small limits
+  private final AtomicLong limitBits;
+
+  ConcurrencyLimiter(int initialLimit, int maxLimit, Duration latencyThreshold) {
+    this.maxLimit = maxLimit;
+    this.latencyThresholdNanos = latencyThreshold.toNanos();
+    this.limitBits = new AtomicLong(Double.doubleToLongBits(initialLimit));
+  }
+
+  boolean tryAcquire() {
+    if (inFlight.incrementAndGet() > limit()) {
+      inFlight.decrementAndGet();
+      return false;
+    }
+    return true;
+  }
+
+  void onSuccess(long latencyNanos) {
+    final int concurrent = inFlight.getAndDecrement();
+    if (latencyNanos > latencyThresholdNanos) {
+      backOff();
+    } else if (concurrent * 2 >= limit()) {
+      // the limit is only raised while it is used, so that it can't grow unbounded when idle
+      limitBits.getAndUpdate(
+          bits -> Double.doubleToLongBits(Math.min(maxLimit, Double.longBitsToDouble(bits) + 1)));
+    }
+  }
+
+  void onDropped() {
+    inFlight.decrementAndGet();
+    backOff();
+  }
+
+  void onIgnored() {
+    inFlight.decrementAndGet();
+  }
+
+  int limit() {
+    return (int) Double.longBitsToDouble(limitBits.get());
+  }
+
+  private void backOff() {
+    limitBits.getAndUpdate(
+        bits ->
+            Double.doubleToLongBits(
+                Math.max(MIN_LIMIT, Double.longBitsToDouble(bits) * BACKOFF_RATIO)));
+  }
+}
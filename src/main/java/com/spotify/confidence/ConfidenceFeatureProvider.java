@@ -1,50 +1,139 @@
 package com.spotify.confidence;
 
 import com.google.common.base.Strings;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.protobuf.ByteString;
 import com.google.protobuf.Struct;
-import com.google.protobuf.util.Values;
+import com.google.protobuf.Timestamp;
+import com.google.protobuf.util.Timestamps;
+import com.spotify.confidence.EvaluationErrors.Sink;
+import com.spotify.confidence.FlagSnapshotStore.FlagSnapshot;
+import com.spotify.confidence.flags.resolver.v1.AppliedFlag;
+import com.spotify.confidence.flags.resolver.v1.ApplyFlagsRequest;
+import com.spotify.confidence.flags.resolver.v1.ApplyFlagsResponse;
 import com.spotify.confidence.flags.resolver.v1.FlagResolverServiceGrpc;
 import com.spotify.confidence.flags.resolver.v1.FlagResolverServiceGrpc.FlagResolverServiceBlockingStub;
+import com.spotify.confidence.flags.resolver.v1.FlagResolverServiceGrpc.FlagResolverServiceFutureStub;
+import com.spotify.confidence.flags.resolver.v1.PersistedResolve;
 import com.spotify.confidence.flags.resolver.v1.ResolveFlagsRequest;
 import com.spotify.confidence.flags.resolver.v1.ResolveFlagsResponse;
 import com.spotify.confidence.flags.resolver.v1.ResolvedFlag;
 import com.spotify.confidence.flags.resolver.v1.Sdk;
 import com.spotify.confidence.flags.resolver.v1.SdkId;
+import dev.openfeature.sdk.ErrorCode;
 import dev.openfeature.sdk.EvaluationContext;
 import dev.openfeature.sdk.FeatureProvider;
 import dev.openfeature.sdk.Metadata;
 import dev.openfeature.sdk.ProviderEvaluation;
-import dev.openfeature.sdk.Structure;
+import dev.openfeature.sdk.Reason;
 import dev.openfeature.sdk.Value;
 import dev.openfeature.sdk.exceptions.FlagNotFoundError;
 import dev.openfeature.sdk.exceptions.GeneralError;
-import dev.openfeature.sdk.exceptions.TypeMismatchError;
+import dev.openfeature.sdk.exceptions.OpenFeatureError;
+import io.grpc.Context;
+import io.grpc.Deadline;
 import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
+import io.grpc.Status;
 import io.grpc.Status.Code;
 import io.grpc.StatusRuntimeException;
-import io.grpc.netty.shaded.io.netty.util.internal.StringUtil;
+import io.grpc.netty.shaded.io.grpc.netty.NettyChannelBuilder;
 import java.io.IOException;
-import java.util.Arrays;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
 import java.util.function.Function;
-import java.util.regex.Pattern;
+import java.util.function.Supplier;
+import javax.annotation.Nullable;
 
 /** OpenFeature Provider for feature flagging with the Confidence platform */
 public class ConfidenceFeatureProvider implements FeatureProvider {
 
-  // Deadline in seconds
-  public static final int DEADLINE_AFTER_SECONDS = 10;
+  /**
+   * Default deadline of resolve calls, in seconds
+   *
+   * @deprecated the deadline is configured with {@link Builder#deadline(Duration)}
+   */
+  @Deprecated public static final int DEADLINE_AFTER_SECONDS = 10;
+
+  private static final Duration DEFAULT_DEADLINE = Duration.ofSeconds(10);
+  private static final Duration APPLY_SHUTDOWN_TIMEOUT = Duration.ofSeconds(5);
   private final ManagedChannel managedChannel;
   private final FlagResolverServiceBlockingStub stub;
+  private final FlagResolverServiceFutureStub futureStub;
   private final String clientSecret;
+  private final Duration deadline;
+  // deadlines that override the default deadline, by request flag name
+  private final Map<String, Duration> flagDeadlines;
+  @Nullable private final ResolveCache resolveCache;
+  @Nullable private final ResolveHistory resolveHistory;
+  @Nullable private final PersistentSnapshot persistentSnapshot;
+  @Nullable private final WarmStart warmStart;
+  private final FlagSnapshotStore snapshots;
+  // returns failed evaluations instead of throwing their errors
+  private final boolean errorEvaluations;
+  private final EvaluationContextConverter contextConverter =
+      new EvaluationContextConverter(MAX_CONVERTED_CONTEXTS);
+  @Nullable private final ScheduledExecutorService scheduler;
+  // runs the internal work on virtual threads, if enabled and supported by the runtime
+  @Nullable private final ExecutorService virtualThreadExecutor;
+  @Nullable private final ResolveBatcher resolveBatcher;
+  @Nullable private final ResolveHedger resolveHedger;
+  @Nullable private final ResolveGuard resolveGuard;
+  @Nullable private final FlagApplier flagApplier;
+  @Nullable private final LocalResolver localResolver;
 
   private final String SDK_VERSION;
   private static final SdkId SDK_ID = SdkId.SDK_ID_JAVA_PROVIDER;
+  // the client secret, SDK and apply mode, which are the same in every resolve request
+  private final ResolveFlagsRequest requestPrototype;
+  // the prototype of prefetch requests, which never apply the flags since they may not be evaluated
+  private final ResolveFlagsRequest prefetchPrototype;
+  // the client secret and SDK of apply requests of prefetched flags, if deferred apply is disabled
+  private final ApplyFlagsRequest applyPrototype;
+  // the single-flag request names of evaluated flags, so that evaluations don't build them again
+  private final Map<String, List<String>> singleFlagRequests = new ConcurrentHashMap<>();
+  // the parsed keys of evaluated flags, so that evaluations don't split them again
+  private final Map<String, FlagPath> flagPaths = new ConcurrentHashMap<>();
 
   static final String TARGETING_KEY = "targeting_key";
+  // reason of evaluations served from the resolve history, as defined by the OpenFeature spec
+  static final String STALE_REASON = "STALE";
+  private static final String NOT_FOUND_MESSAGE = "No active flag '%s' was found";
+  private static final String CAST_ERROR_MESSAGE = "Cannot cast value '%s' to expected type";
+  // returned by knownResolution for flags that the prefetched flags show don't exist
+  private static final FlagResolution NOT_FOUND =
+      new FlagResolution(ResolvedFlag.getDefaultInstance(), ByteString.EMPTY);
+  // resolves kept for the persisted snapshot if the resolve history isn't configured
+  private static final int DEFAULT_PERSISTED_RESOLVES = 10_000;
+  // how long after their resolve persisted flags are kept, unless configured otherwise
+  private static final Duration DEFAULT_SNAPSHOT_MAX_AGE = Duration.ofDays(1);
+  // evaluation contexts whose conversion to a Struct is remembered
+  private static final int MAX_CONVERTED_CONTEXTS = 1000;
+  // flags whose request names are kept, bounding the memory taken by arbitrary flag keys
+  private static final int MAX_SINGLE_FLAG_REQUESTS = 10_000;
+  // flag keys whose parsed paths are kept
+  private static final int MAX_FLAG_PATHS = 10_000;
 
   /**
    * ConfidenceFeatureProvider constructor
@@ -53,14 +142,188 @@ public class ConfidenceFeatureProvider implements FeatureProvider {
    * @param managedChannel gRPC channel
    */
   public ConfidenceFeatureProvider(String clientSecret, ManagedChannel managedChannel) {
-    this.clientSecret = clientSecret;
-    this.managedChannel = managedChannel;
-    this.stub = FlagResolverServiceGrpc.newBlockingStub(managedChannel);
+    this(builder(clientSecret).channel(managedChannel));
+  }
+
+  /**
+   * ConfidenceFeatureProvider constructor
+   *
+   * @param clientSecret generated from Confidence
+   */
+  public ConfidenceFeatureProvider(String clientSecret) {
+    this(builder(clientSecret));
+  }
 
-    if (Strings.isNullOrEmpty(clientSecret)) {
+  /**
+   * ConfidenceFeatureProvider constructor that allows you to override the default gRPC host and
+   * port, used for local resolver.
+   *
+   * @param clientSecret generated from Confidence
+   * @param host gRPC host you want to connect to.
+   * @param port port of the gRPC host that you want to use.
+   */
+  public ConfidenceFeatureProvider(String clientSecret, String host, int port) {
+    this(builder(clientSecret).target(host, port));
+  }
+
+  private ConfidenceFeatureProvider(Builder builder) {
+    if (Strings.isNullOrEmpty(builder.clientSecret)) {
       throw new IllegalArgumentException("clientSecret must be a non-empty string.");
     }
 
+    if (builder.hedgeDelay != null && builder.applyBatchSize <= 0) {
+      throw new IllegalArgumentException(
+          "Hedging requires deferred apply, since resolves that apply flags have side effects.");
+    }
+
+    this.clientSecret = builder.clientSecret;
+    this.deadline = builder.deadline;
+    final Map<String, Duration> flagDeadlines = new HashMap<>();
+    builder.flagDeadlines.forEach((flag, d) -> flagDeadlines.put("flags/" + flag, d));
+    this.flagDeadlines = Map.copyOf(flagDeadlines);
+    this.errorEvaluations = builder.errorEvaluations;
+    this.virtualThreadExecutor =
+        builder.virtualThreads
+            ? VirtualThreads.newThreadPerTaskExecutor("confidence-provider-virtual-")
+            : null;
+    if (builder.managedChannel != null) {
+      this.managedChannel = builder.managedChannel;
+    } else if (builder.channelPoolSize > 1) {
+      final List<ManagedChannel> channels = new ArrayList<>(builder.channelPoolSize);
+      for (int i = 0; i < builder.channelPoolSize; i++) {
+        channels.add(newChannel(builder));
+      }
+      this.managedChannel = new ChannelPool(channels, builder.channelSelection);
+    } else {
+      this.managedChannel = newChannel(builder);
+    }
+    this.stub = FlagResolverServiceGrpc.newBlockingStub(managedChannel);
+    this.futureStub = FlagResolverServiceGrpc.newFutureStub(managedChannel);
+    this.localResolver = builder.localResolver;
+    this.snapshots = new FlagSnapshotStore(builder.snapshotMaxContexts, builder.snapshotTtl);
+    if (builder.historyMaxSize > 0) {
+      this.resolveHistory = new ResolveHistory(builder.historyMaxSize);
+    } else if (builder.snapshotFile != null) {
+      this.resolveHistory = new ResolveHistory(DEFAULT_PERSISTED_RESOLVES);
+    } else {
+      this.resolveHistory = null;
+    }
+    if (builder.batchMaxSize > 0
+        || builder.applyBatchSize > 0
+        || builder.snapshotFile != null
+        || builder.hedgeDelay != null
+        || (builder.cacheRefreshAfter != null && builder.refreshExecutor == null)) {
+      this.scheduler =
+          Executors.newSingleThreadScheduledExecutor(
+              new ThreadFactoryBuilder()
+                  .setDaemon(true)
+                  .setNameFormat("confidence-provider-%d")
+                  .build());
+    } else {
+      this.scheduler = null;
+    }
+    this.resolveBatcher =
+        builder.batchMaxSize > 0
+            ? new ResolveBatcher(
+                builder.batchWindow,
+                builder.batchMaxSize,
+                // a batch is shared by evaluations, so it has the configured deadline of its flags
+                (evaluationContext, requestFlagNames) ->
+                    resolveAsync(evaluationContext, requestFlagNames, null),
+                scheduler,
+                dispatcher())
+            : null;
+    final CircuitBreaker circuitBreaker =
+        builder.circuitWindowSize > 0
+            ? new CircuitBreaker(
+                builder.circuitWindowSize,
+                builder.circuitFailureRateThreshold,
+                builder.circuitSlowCallThreshold,
+                builder.circuitOpenDuration,
+                builder.circuitStateListener,
+                System::nanoTime)
+            : null;
+    final ConcurrencyLimiter concurrencyLimiter =
+        builder.concurrencyMaxLimit > 0
+            ? new ConcurrencyLimiter(
+                builder.concurrencyInitialLimit,
+                builder.concurrencyMaxLimit,
+                builder.concurrencyLatencyThreshold)
+            : null;
+    this.resolveGuard =
+        circuitBreaker != null || concurrencyLimiter != null
+            ? new ResolveGuard(circuitBreaker, concurrencyLimiter, System::nanoTime)
+            : null;
+    this.resolveHedger =
+        builder.hedgeDelay != null
+            ? new ResolveHedger(builder.hedgeDelay, builder.hedgeMaxRate, scheduler, dispatcher())
+            : null;
+    if (builder.cacheMaxSize <= 0) {
+      this.resolveCache = null;
+    } else if (builder.cacheRefreshAfter == null) {
+      this.resolveCache = new ResolveCache(builder.cacheMaxSize, builder.cacheTtl);
+    } else {
+      this.resolveCache =
+          new ResolveCache(
+              builder.cacheMaxSize,
+              builder.cacheRefreshAfter,
+              builder.cacheTtl,
+              (requestFlagName, evaluationContext) ->
+                  resolveRemotelyAsync(
+                      requestFlagName.substring("flags/".length()), evaluationContext),
+              builder.refreshExecutor != null ? builder.refreshExecutor : dispatcher(),
+              System::nanoTime);
+    }
+    if (builder.snapshotFile != null) {
+      this.persistentSnapshot =
+          new PersistentSnapshot(
+              builder.snapshotFile,
+              builder.snapshotContexts,
+              builder.snapshotMaxAge,
+              Clock.systemUTC());
+      final List<PersistedResolve> loaded = readSnapshot(persistentSnapshot);
+      for (PersistedResolve persisted : loaded) {
+        // entries without a context can only be served to an equal context by the warm start
+        if (persisted.hasEvaluationContext()) {
+          resolveHistory.put(
+              persisted.getResolvedFlag().getFlag(),
+              persisted.getEvaluationContext(),
+              new FlagResolution(
+                  persisted.getResolvedFlag(),
+                  persisted.getResolveToken(),
+                  Timestamps.toMillis(persisted.getResolveTime())));
+        }
+      }
+      this.warmStart =
+          new WarmStart(
+              loaded,
+              (requestFlagName, evaluationContext) ->
+                  resolveRemotelyAsync(
+                          requestFlagName.substring("flags/".length()), evaluationContext)
+                      .thenApply(
+                          resolution -> {
+                            if (resolveCache != null) {
+                              resolveCache.put(requestFlagName, evaluationContext, resolution);
+                            }
+                            return resolution;
+                          }),
+              // the root context leaves out the deadline, budget and cancellation of the evaluation
+              // that starts the resolve, which then has the configured deadline of the flag
+              Context.ROOT.fixedContextExecutor(dispatcher()),
+              // by then the resolve cache, or the next snapshot write, holds the refreshed flags
+              builder.cacheMaxSize > 0 ? builder.cacheTtl : builder.snapshotWriteInterval,
+              System::nanoTime);
+      final long intervalNanos = builder.snapshotWriteInterval.toNanos();
+      scheduler.scheduleWithFixedDelay(
+          () -> dispatcher().execute(this::writeSnapshot),
+          intervalNanos,
+          intervalNanos,
+          TimeUnit.NANOSECONDS);
+    } else {
+      this.persistentSnapshot = null;
+      this.warmStart = null;
+    }
+
     try {
       final Properties prop = new Properties();
       prop.load(this.getClass().getResourceAsStream("/version.properties"));
@@ -68,27 +331,170 @@ public class ConfidenceFeatureProvider implements FeatureProvider {
     } catch (IOException e) {
       throw new RuntimeException("Can't determine version of the SDK", e);
     }
+    final Sdk sdk = Sdk.newBuilder().setId(SDK_ID).setVersion(SDK_VERSION).build();
+    this.requestPrototype =
+        ResolveFlagsRequest.newBuilder()
+            .setClientSecret(clientSecret)
+            .setSdk(sdk)
+            // with deferred apply, only the flags that get evaluated are applied
+            .setApply(builder.applyBatchSize <= 0)
+            .build();
+    this.prefetchPrototype = requestPrototype.toBuilder().setApply(false).build();
+    this.applyPrototype =
+        ApplyFlagsRequest.newBuilder().setClientSecret(clientSecret).setSdk(sdk).build();
+
+    this.flagApplier =
+        builder.applyBatchSize > 0
+            ? new FlagApplier(
+                builder.applyCapacity,
+                builder.applyBatchSize,
+                builder.applyFlushInterval,
+                builder.applyBackpressurePolicy,
+                applyPrototype,
+                this::applyAsync,
+                scheduler,
+                dispatcher(),
+                Clock.systemUTC())
+            : null;
+  }
+
+  private ManagedChannel newChannel(Builder builder) {
+    final ManagedChannelBuilder<?> channelBuilder =
+        builder.channelBuilderFactory.apply(builder.host, builder.port);
+    if (builder.channelExecutor != null) {
+      channelBuilder.executor(builder.channelExecutor);
+    } else if (virtualThreadExecutor != null) {
+      channelBuilder.executor(virtualThreadExecutor);
+    }
+    if (builder.keepAliveTime != null) {
+      channelBuilder
+          .keepAliveTime(builder.keepAliveTime.toNanos(), TimeUnit.NANOSECONDS)
+          .keepAliveTimeout(builder.keepAliveTimeout.toNanos(), TimeUnit.NANOSECONDS);
+    }
+    if (builder.flowControlWindow > 0) {
+      // the flow control window is a setting of the Netty transport, which is the default one
+      if (!(channelBuilder instanceof NettyChannelBuilder)) {
+        throw new IllegalStateException(
+            "flowControlWindow requires the Netty transport, but the channel is built by "
+                + channelBuilder.getClass().getName()
+                + ".");
+      }
+      ((NettyChannelBuilder) channelBuilder).flowControlWindow(builder.flowControlWindow);
+    }
+    return channelBuilder.build();
+  }
+
+  private Executor dispatcher() {
+    return virtualThreadExecutor != null ? virtualThreadExecutor : scheduler;
+  }
+
+  private static List<PersistedResolve> readSnapshot(PersistentSnapshot snapshot) {
+    try {
+      return snapshot.read();
+    } catch (IOException e) {
+      // the provider then starts without persisted flags, like on its first start
+      return List.of();
+    }
+  }
+
+  private void writeSnapshot() {
+    try {
+      persistentSnapshot.write(resolveHistory.asMap(), warmStart.remaining());
+    } catch (IOException | RuntimeException e) {
+      // the previous snapshot is kept, and the write is tried again at the next interval
+    }
   }
 
   /**
-   * ConfidenceFeatureProvider constructor
+   * Creates a builder for a ConfidenceFeatureProvider, for when the provider needs more
+   * configuration than the constructors offer.
    *
    * @param clientSecret generated from Confidence
+   * @return a builder with default settings
    */
-  public ConfidenceFeatureProvider(String clientSecret) {
-    this(clientSecret, ManagedChannelBuilder.forAddress("edge-grpc.spotify.com", 443).build());
+  public static Builder builder(String clientSecret) {
+    return new Builder(clientSecret);
   }
 
   /**
-   * ConfidenceFeatureProvider constructor that allows you to override the default gRPC host and
-   * port, used for local resolver.
+   * Returns the counters of the resolve cache. All counters are zero if the cache is disabled.
    *
-   * @param clientSecret generated from Confidence
-   * @param host gRPC host you want to connect to.
-   * @param port port of the gRPC host that you want to use.
+   * @return a snapshot of the cache counters
    */
-  public ConfidenceFeatureProvider(String clientSecret, String host, int port) {
-    this(clientSecret, ManagedChannelBuilder.forAddress(host, port).build());
+  public CacheStats getCacheStats() {
+    return resolveCache != null ? resolveCache.stats() : CacheStats.EMPTY;
+  }
+
+  /**
+   * Returns the counters of the hedging of resolves. All counters are zero if hedging is disabled.
+   *
+   * @return a snapshot of the hedging counters
+   */
+  public HedgeStats getHedgeStats() {
+    return resolveHedger != null ? resolveHedger.stats() : HedgeStats.EMPTY;
+  }
+
+  /**
+   * Returns the counters of the deferred apply of flags. All counters are zero if deferred apply is
+   * disabled.
+   *
+   * @return a snapshot of the apply counters
+   */
+  public ApplyStats getApplyStats() {
+    return flagApplier != null ? flagApplier.stats() : ApplyStats.EMPTY;
+  }
+
+  /**
+   * Returns the state of the circuit breaker around resolve calls. It is always {@link
+   * CircuitState#CLOSED} if the circuit breaker is disabled.
+   *
+   * @return the current state of the circuit breaker
+   */
+  public CircuitState getCircuitState() {
+    return resolveGuard != null ? resolveGuard.circuitState() : CircuitState.CLOSED;
+  }
+
+  /**
+   * Returns the current adaptive limit of concurrent resolve calls, or {@link Integer#MAX_VALUE} if
+   * the concurrency limit is disabled.
+   *
+   * @return the current concurrency limit
+   */
+  public int getConcurrencyLimit() {
+    return resolveGuard != null ? resolveGuard.concurrencyLimit() : Integer.MAX_VALUE;
+  }
+
+  /**
+   * Resolves the given flags for the evaluation context in a single call, and keeps the result so
+   * that subsequent evaluations of these flags with an equal context are served without calling the
+   * resolver. Passing an empty list prefetches all flags enabled for the client. The flags are
+   * resolved without applying them, and each flag is applied when it is first evaluated.
+   *
+   * @param ctx evaluation context to resolve the flags for
+   * @param flags names of the flags to prefetch, or an empty list for all flags
+   */
+  public void prefetch(EvaluationContext ctx, List<String> flags) {
+    final Struct evaluationContext = contextConverter.convert(ctx);
+    final List<String> requestFlagNames = new ArrayList<>(flags.size());
+    for (String flag : flags) {
+      requestFlagNames.add(singleFlagRequest(flag).get(0));
+    }
+    try {
+      final ResolveFlagsResponse response =
+          resolve(evaluationContext, requestFlagNames, callerDeadline(), prefetchPrototype);
+      snapshots.put(evaluationContext, response, requestFlagNames.isEmpty());
+    } catch (StatusRuntimeException e) {
+      throw toGeneralError(e);
+    }
+  }
+
+  /**
+   * Drops the prefetched flags of the evaluation context, if any.
+   *
+   * @param ctx evaluation context that was passed to {@link #prefetch(EvaluationContext, List)}
+   */
+  public void clearPrefetched(EvaluationContext ctx) {
+    snapshots.remove(contextConverter.convert(ctx));
   }
 
   @Override
@@ -122,21 +528,313 @@ public class ConfidenceFeatureProvider implements FeatureProvider {
 
   private <T> ProviderEvaluation<T> getCastedEvaluation(
       String key, T defaultValue, EvaluationContext ctx, Function<Value, T> cast) {
-    final Value wrappedDefaultValue;
+    final ProviderEvaluation<Value> evaluation = getObjectEvaluation(key, wrap(defaultValue), ctx);
+    if (errorEvaluations && cast.apply(evaluation.getValue()) == null) {
+      final Sink sink = new Sink();
+      EvaluationErrors.fail(
+          sink, ErrorCode.TYPE_MISMATCH, CAST_ERROR_MESSAGE, evaluation.getValue());
+      return sink.evaluation(defaultValue);
+    }
+    return cast(evaluation, cast);
+  }
+
+  @Override
+  public ProviderEvaluation<Value> getObjectEvaluation(
+      String key, Value defaultValue, EvaluationContext ctx) {
+    if (!errorEvaluations) {
+      return evaluateObject(key, defaultValue, ctx, null);
+    }
+    final Sink sink = new Sink();
+    final ProviderEvaluation<Value> evaluation;
     try {
-      wrappedDefaultValue = new Value(defaultValue);
+      evaluation = evaluateObject(key, defaultValue, ctx, sink);
+    } catch (OpenFeatureError e) {
+      // errors that aren't ordinary, such as a context value that can't be converted, are thrown
+      return errorEvaluation(defaultValue, e);
+    }
+    return evaluation != null ? evaluation : sink.evaluation(defaultValue);
+  }
+
+  /**
+   * Evaluates the flag. Ordinary failures are thrown if there is no sink, and otherwise recorded in
+   * the sink, and null is returned.
+   */
+  @Nullable
+  private ProviderEvaluation<Value> evaluateObject(
+      String key, Value defaultValue, EvaluationContext ctx, @Nullable Sink sink) {
+    final FlagPath flagPath = flagPath(key, sink);
+    if (flagPath == null) {
+      return null;
+    }
+
+    final Struct evaluationContext = contextConverter.convert(ctx);
+
+    // resolve the flag by calling the resolver API
+    final FlagResolution resolution;
+    try {
+      resolution = resolveFlag(flagPath.getFlag(), evaluationContext, sink);
+    } catch (StatusRuntimeException e) {
+      // If the remote API is unreachable, the last known resolve of the flag is served if there is
+      // one, to avoid flickering between variants and default values
+      final FlagResolution lastKnownGood = lastKnownGood(e, flagPath, evaluationContext);
+      if (lastKnownGood != null) {
+        return evaluate(lastKnownGood, flagPath.getPath(), defaultValue, STALE_REASON, sink, true);
+      }
+      return backendError(sink, e);
+    }
+    if (resolution == null) {
+      return null;
+    }
+    return evaluate(resolution, flagPath.getPath(), defaultValue, null, sink, true);
+  }
+
+  /**
+   * Evaluates a boolean flag without blocking the calling thread.
+   *
+   * @param key flag key, optionally with a path into the flag value
+   * @param defaultValue value to use if the flag has no assignment
+   * @param ctx evaluation context
+   * @return a future of the evaluation
+   * @see #getObjectEvaluationAsync(String, Value, EvaluationContext)
+   */
+  public CompletableFuture<ProviderEvaluation<Boolean>> getBooleanEvaluationAsync(
+      String key, Boolean defaultValue, EvaluationContext ctx) {
+    return getCastedEvaluationAsync(key, defaultValue, ctx, Value::asBoolean);
+  }
+
+  /**
+   * Evaluates a string flag without blocking the calling thread.
+   *
+   * @param key flag key, optionally with a path into the flag value
+   * @param defaultValue value to use if the flag has no assignment
+   * @param ctx evaluation context
+   * @return a future of the evaluation
+   * @see #getObjectEvaluationAsync(String, Value, EvaluationContext)
+   */
+  public CompletableFuture<ProviderEvaluation<String>> getStringEvaluationAsync(
+      String key, String defaultValue, EvaluationContext ctx) {
+    return getCastedEvaluationAsync(key, defaultValue, ctx, Value::asString);
+  }
+
+  /**
+   * Evaluates an integer flag without blocking the calling thread.
+   *
+   * @param key flag key, optionally with a path into the flag value
+   * @param defaultValue value to use if the flag has no assignment
+   * @param ctx evaluation context
+   * @return a future of the evaluation
+   * @see #getObjectEvaluationAsync(String, Value, EvaluationContext)
+   */
+  public CompletableFuture<ProviderEvaluation<Integer>> getIntegerEvaluationAsync(
+      String key, Integer defaultValue, EvaluationContext ctx) {
+    return getCastedEvaluationAsync(key, defaultValue, ctx, Value::asInteger);
+  }
+
+  /**
+   * Evaluates a double flag without blocking the calling thread.
+   *
+   * @param key flag key, optionally with a path into the flag value
+   * @param defaultValue value to use if the flag has no assignment
+   * @param ctx evaluation context
+   * @return a future of the evaluation
+   * @see #getObjectEvaluationAsync(String, Value, EvaluationContext)
+   */
+  public CompletableFuture<ProviderEvaluation<Double>> getDoubleEvaluationAsync(
+      String key, Double defaultValue, EvaluationContext ctx) {
+    return getCastedEvaluationAsync(key, defaultValue, ctx, Value::asDouble);
+  }
+
+  /**
+   * Evaluates a flag without blocking the calling thread. The resolve is sent with the future stub,
+   * and the future completes on the gRPC thread that receives the response, or right away if the
+   * flag is prefetched or cached. It fails with the same errors that {@link
+   * #getObjectEvaluation(String, Value, EvaluationContext)} throws.
+   *
+   * <p>The resolve has the same deadline as a blocking evaluation, shortened by the current {@link
+   * DeadlineBudget} or the deadline of the current gRPC context, if any. Cancelling the returned
+   * future cancels the resolve call, unless the call is shared with other evaluations by the
+   * batching of resolves.
+   *
+   * @param key flag key, optionally with a path into the flag value
+   * @param defaultValue value to use if the flag has no assignment
+   * @param ctx evaluation context
+   * @return a future of the evaluation
+   */
+  public CompletableFuture<ProviderEvaluation<Value>> getObjectEvaluationAsync(
+      String key, Value defaultValue, EvaluationContext ctx) {
+    final FlagPath flagPath;
+    final Struct evaluationContext;
+    try {
+      flagPath = flagPath(key);
+      evaluationContext = contextConverter.convert(ctx);
+    } catch (RuntimeException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+    final CompletableFuture<FlagResolution> resolution =
+        resolveFlagAsync(flagPath.getFlag(), evaluationContext);
+    return cancelling(
+        mapErrors(
+            resolution.handle(
+                (r, throwable) -> {
+                  if (throwable == null) {
+                    return evaluate(r, flagPath.getPath(), defaultValue, null, null, false);
+                  }
+                  final FlagResolution lastKnownGood =
+                      lastKnownGood(throwable, flagPath, evaluationContext);
+                  if (lastKnownGood == null) {
+                    throw throwable instanceof CompletionException
+                        ? (CompletionException) throwable
+                        : new CompletionException(throwable);
+                  }
+                  return evaluate(
+                      lastKnownGood, flagPath.getPath(), defaultValue, STALE_REASON, null, false);
+                })),
+        resolution);
+  }
+
+  /**
+   * Evaluates several flags for the same evaluation context without blocking the calling thread.
+   * Flags that are neither prefetched nor cached are resolved in a single resolve call, or added to
+   * a batch if batching is enabled.
+   *
+   * <p>The future fails if the resolve call fails. Flags that could not be evaluated, for example
+   * because they were not found or their value has an unexpected type, get an evaluation with the
+   * default value, reason {@code ERROR} and the error code and message, like the OpenFeature client
+   * reports them. Cancelling the returned future cancels the resolve call.
+   *
+   * @param defaultValues flag keys, optionally with paths into the flag values, and the values to
+   *     use if a flag has no assignment
+   * @param ctx evaluation context
+   * @return a future of the evaluations, by flag key
+   */
+  public CompletableFuture<Map<String, ProviderEvaluation<Value>>> getObjectEvaluationsAsync(
+      Map<String, Value> defaultValues, EvaluationContext ctx) {
+    final Map<String, FlagPath> flagPaths = new LinkedHashMap<>();
+    final Struct evaluationContext;
+    try {
+      for (String key : defaultValues.keySet()) {
+        flagPaths.put(key, flagPath(key));
+      }
+      evaluationContext = contextConverter.convert(ctx);
+    } catch (RuntimeException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+
+    final Map<String, CompletableFuture<FlagResolution>> resolutions = new HashMap<>();
+    final List<String> unresolved = new ArrayList<>();
+    for (FlagPath flagPath : flagPaths.values()) {
+      final String flag = flagPath.getFlag();
+      if (resolutions.containsKey(flag)) {
+        continue;
+      }
+      try {
+        final FlagResolution known = knownResolution(flag, evaluationContext);
+        if (known == NOT_FOUND) {
+          resolutions.put(flag, CompletableFuture.failedFuture(flagNotFound(flag)));
+        } else if (known != null) {
+          resolutions.put(flag, CompletableFuture.completedFuture(known));
+        } else if (resolveBatcher != null) {
+          resolutions.put(flag, resolveFlagAsync(flag, evaluationContext));
+        } else {
+          resolutions.put(flag, null);
+          unresolved.add(flag);
+        }
+      } catch (RuntimeException e) {
+        resolutions.put(flag, CompletableFuture.failedFuture(e));
+      }
+    }
+
+    final CompletableFuture<Void> resolved;
+    if (unresolved.isEmpty()) {
+      resolved =
+          CompletableFuture.allOf(
+              resolutions.values().stream()
+                  // failed resolutions are reported per flag
+                  .map(future -> future.handle((r, t) -> null))
+                  .toArray(CompletableFuture[]::new));
+    } else {
+      final List<String> requestFlagNames = new ArrayList<>(unresolved.size());
+      for (String flag : unresolved) {
+        requestFlagNames.add(singleFlagRequest(flag).get(0));
+      }
+      final CompletableFuture<ResolveFlagsResponse> response =
+          resolveAsync(evaluationContext, requestFlagNames, callerDeadline());
+      final CompletableFuture<Void> batched =
+          response.handle(
+              (resolveFlagsResponse, throwable) -> {
+                if (throwable != null) {
+                  if (!servesLastKnownGood(throwable)) {
+                    throw throwable instanceof CompletionException
+                        ? (CompletionException) throwable
+                        : new CompletionException(throwable);
+                  }
+                  // each flag is then evaluated from the resolve history, if possible
+                  for (String flag : unresolved) {
+                    resolutions.put(flag, CompletableFuture.failedFuture(throwable));
+                  }
+                  return null;
+                }
+                final Map<String, ResolvedFlag> byName = new HashMap<>();
+                for (ResolvedFlag resolvedFlag : resolveFlagsResponse.getResolvedFlagsList()) {
+                  byName.put(resolvedFlag.getFlag(), resolvedFlag);
+                }
+                for (String flag : unresolved) {
+                  final ResolvedFlag resolvedFlag = byName.get(singleFlagRequest(flag).get(0));
+                  if (resolvedFlag == null) {
+                    resolutions.put(flag, CompletableFuture.failedFuture(flagNotFound(flag)));
+                  } else {
+                    final FlagResolution resolution =
+                        new FlagResolution(resolvedFlag, resolveFlagsResponse.getResolveToken());
+                    remember(resolvedFlag.getFlag(), evaluationContext, resolution);
+                    resolutions.put(flag, CompletableFuture.completedFuture(resolution));
+                  }
+                }
+                return null;
+              });
+      resolved = cancelling(batched, response);
+    }
+
+    return cancelling(
+        mapErrors(
+            resolved.thenApply(
+                ignored -> {
+                  final Map<String, ProviderEvaluation<Value>> evaluations =
+                      new LinkedHashMap<>(flagPaths.size() * 4 / 3 + 1);
+                  flagPaths.forEach(
+                      (key, flagPath) ->
+                          evaluations.put(
+                              key,
+                              evaluateOrError(
+                                  resolutions.get(flagPath.getFlag()),
+                                  flagPath,
+                                  defaultValues.get(key),
+                                  evaluationContext)));
+                  return evaluations;
+                })),
+        resolved);
+  }
+
+  private <T> CompletableFuture<ProviderEvaluation<T>> getCastedEvaluationAsync(
+      String key, T defaultValue, EvaluationContext ctx, Function<Value, T> cast) {
+    final CompletableFuture<ProviderEvaluation<Value>> evaluation =
+        getObjectEvaluationAsync(key, wrap(defaultValue), ctx);
+    return cancelling(mapErrors(evaluation.thenApply(e -> cast(e, cast))), evaluation);
+  }
+
+  private static Value wrap(Object defaultValue) {
+    try {
+      return new Value(defaultValue);
     } catch (InstantiationException e) {
       // this is not going to happen because we only call the constructor with supported types
       throw new RuntimeException(e);
     }
+  }
 
-    final ProviderEvaluation<Value> objectEvaluation =
-        getObjectEvaluation(key, wrappedDefaultValue, ctx);
-
+  private static <T> ProviderEvaluation<T> cast(
+      ProviderEvaluation<Value> objectEvaluation, Function<Value, T> cast) {
     final T castedValue = cast.apply(objectEvaluation.getValue());
     if (castedValue == null) {
-      throw new TypeMismatchError(
-          String.format("Cannot cast value '%s' to expected type", objectEvaluation.getValue()));
+      throw EvaluationErrors.typeMismatch(CAST_ERROR_MESSAGE, objectEvaluation.getValue());
     }
 
     return ProviderEvaluation.<T>builder()
@@ -148,151 +846,651 @@ public class ConfidenceFeatureProvider implements FeatureProvider {
         .build();
   }
 
-  @Override
-  public ProviderEvaluation<Value> getObjectEvaluation(
-      String key, Value defaultValue, EvaluationContext ctx) {
+  /**
+   * Evaluates the resolved flag, with the given reason, or with the reason of a regular resolve if
+   * it is null. If the value doesn't match its schema, the error is thrown if there is no sink, and
+   * otherwise recorded in the sink, and null is returned. Asynchronous evaluations complete on
+   * threads that may not block, so they never wait for room in the buffer of deferred applies.
+   */
+  @Nullable
+  private ProviderEvaluation<Value> evaluate(
+      FlagResolution resolution,
+      List<String> path,
+      Value defaultValue,
+      @Nullable String reason,
+      @Nullable Sink sink,
+      boolean mayBlock) {
+    final ResolvedFlag resolvedFlag = resolution.getResolvedFlag();
+    if (flagApplier != null) {
+      flagApplier.apply(resolution.getResolveToken(), resolvedFlag.getFlag(), mayBlock);
+    } else if (resolution.claimApply()) {
+      applyPrefetched(resolution);
+    }
+    final String evaluationReason = reason == null && resolution.isStale() ? STALE_REASON : reason;
 
-    final FlagPath flagPath = getPath(key);
+    if (resolvedFlag.getVariant().isEmpty()) {
+      return ProviderEvaluation.<Value>builder()
+          .value(defaultValue)
+          .reason(
+              evaluationReason != null
+                  ? evaluationReason
+                  : "The server returned no assignment for the flag. Typically, this happens "
+                      + "if no configured rules matches the given evaluation context.")
+          .build();
+    } else {
+      // if a path is given, only the expected portion of the structured value is converted
+      Value value = resolution.conversionPlan().convert(resolvedFlag.getValue(), path, sink);
+      if (value == null) {
+        return null;
+      }
 
-    final Struct.Builder evaluationContext = Struct.newBuilder();
-    ctx.asMap()
-        .forEach(
-            (mapKey, mapValue) -> {
-              evaluationContext.putFields(mapKey, TypeMapper.from(mapValue));
-            });
+      if (value.isNull()) {
+        value = defaultValue;
+      }
 
-    // add targeting key as a regular value to proto struct
-    if (!StringUtil.isNullOrEmpty(ctx.getTargetingKey())) {
-      evaluationContext.putFields(TARGETING_KEY, Values.of(ctx.getTargetingKey()));
+      // regular resolve was successful
+      return ProviderEvaluation.<Value>builder()
+          .value(value)
+          .variant(resolvedFlag.getVariant())
+          .reason(evaluationReason)
+          .build();
     }
+  }
 
-    // resolve the flag by calling the resolver API
-    final ResolveFlagsResponse resolveFlagResponse;
+  private ProviderEvaluation<Value> evaluateOrError(
+      CompletableFuture<FlagResolution> resolution,
+      FlagPath flagPath,
+      Value defaultValue,
+      Struct evaluationContext) {
+    FlagResolution resolved;
+    String reason = null;
     try {
-      final String requestFlagName = "flags/" + flagPath.getFlag();
-      resolveFlagResponse =
-          stub.withDeadlineAfter(DEADLINE_AFTER_SECONDS, TimeUnit.SECONDS)
-              .resolveFlags(
-                  ResolveFlagsRequest.newBuilder()
-                      .setClientSecret(clientSecret)
-                      .addAllFlags(List.of(requestFlagName))
-                      .setEvaluationContext(evaluationContext.build())
-                      .setSdk(Sdk.newBuilder().setId(SDK_ID).setVersion(SDK_VERSION).build())
-                      .setApply(true)
-                      .build());
-
-      if (resolveFlagResponse.getResolvedFlagsList().isEmpty()) {
-        throw new FlagNotFoundError(
-            String.format("No active flag '%s' was found", flagPath.getFlag()));
-      }
-
-      final String responseFlagName = resolveFlagResponse.getResolvedFlags(0).getFlag();
-      if (!requestFlagName.equals(responseFlagName)) {
-        throw new FlagNotFoundError(
-            String.format(
-                "Unexpected flag '%s' from remote", responseFlagName.replaceFirst("^flags/", "")));
-      }
-
-      final ResolvedFlag resolvedFlag = resolveFlagResponse.getResolvedFlags(0);
-
-      if (resolvedFlag.getVariant().isEmpty()) {
-        return ProviderEvaluation.<Value>builder()
-            .value(defaultValue)
-            .reason(
-                "The server returned no assignment for the flag. Typically, this happens "
-                    + "if no configured rules matches the given evaluation context.")
-            .build();
-      } else {
-        final Value fullValue =
-            TypeMapper.from(resolvedFlag.getValue(), resolvedFlag.getFlagSchema());
+      resolved = resolution.join();
+    } catch (RuntimeException e) {
+      resolved = lastKnownGood(e, flagPath, evaluationContext);
+      if (resolved == null) {
+        return errorEvaluation(defaultValue, toOpenFeatureError(e));
+      }
+      reason = STALE_REASON;
+    }
+    final Sink sink = new Sink();
+    final ProviderEvaluation<Value> evaluation =
+        evaluate(resolved, flagPath.getPath(), defaultValue, reason, sink, false);
+    return evaluation != null ? evaluation : sink.evaluation(defaultValue);
+  }
 
-        // if a path is given, extract expected portion from the structured value
-        Value value = getValueForPath(flagPath.getPath(), fullValue);
+  /** Returns the evaluation of the default value that failed with the error */
+  private static <T> ProviderEvaluation<T> errorEvaluation(T defaultValue, Throwable error) {
+    final ErrorCode errorCode =
+        error instanceof OpenFeatureError
+            ? ((OpenFeatureError) error).getErrorCode()
+            : ErrorCode.GENERAL;
+    return ProviderEvaluation.<T>builder()
+        .value(defaultValue)
+        .reason(Reason.ERROR.toString())
+        .errorCode(errorCode)
+        .errorMessage(error.getMessage())
+        .build();
+  }
 
-        if (value.isNull()) {
-          value = defaultValue;
-        }
+  private static GeneralError toGeneralError(StatusRuntimeException e) {
+    final Code code = e.getStatus().getCode();
+    return EvaluationErrors.generalError(backendErrorFormat(code), code);
+  }
 
-        // regular resolve was successful
-        return ProviderEvaluation.<Value>builder()
-            .value(value)
-            .variant(resolvedFlag.getVariant())
-            .build();
+  /** Throws the error of a failed resolve call, or records it in the sink and returns null */
+  @Nullable
+  private static <T> T backendError(@Nullable Sink sink, StatusRuntimeException e) {
+    final Code code = e.getStatus().getCode();
+    return EvaluationErrors.fail(sink, ErrorCode.GENERAL, backendErrorFormat(code), code);
+  }
+
+  /** Returns the format of the error message of a failed resolve call, given its status code */
+  private static String backendErrorFormat(Code code) {
+    switch (code) {
+      case DEADLINE_EXCEEDED:
+        return "Deadline exceeded when calling provider backend";
+      case UNAVAILABLE:
+        return "Provider backend is unavailable";
+      case UNAUTHENTICATED:
+        return "UNAUTHENTICATED";
+      default:
+        return "Unknown error occurred when calling the provider backend. Grpc status code %s";
+    }
+  }
+
+  /**
+   * Resolves the flag. If it isn't found, the error is thrown if there is no sink, and otherwise
+   * recorded in the sink, and null is returned.
+   */
+  @Nullable
+  private FlagResolution resolveFlag(String flag, Struct evaluationContext, @Nullable Sink sink) {
+    final FlagResolution known = knownResolution(flag, evaluationContext);
+    if (known == NOT_FOUND) {
+      return EvaluationErrors.fail(sink, ErrorCode.FLAG_NOT_FOUND, NOT_FOUND_MESSAGE, flag);
+    } else if (known != null) {
+      return known;
+    }
+
+    final List<String> requestFlagNames = singleFlagRequest(flag);
+    final String requestFlagName = requestFlagNames.get(0);
+    final FlagResolution resolution;
+    if (resolveBatcher != null) {
+      resolution = await(resolveBatched(requestFlagName, evaluationContext));
+      if (resolution == null) {
+        return EvaluationErrors.fail(sink, ErrorCode.FLAG_NOT_FOUND, NOT_FOUND_MESSAGE, flag);
       }
-    } catch (StatusRuntimeException e) {
-      // If the remote API is unreachable, for now we fall back to the default value. However, we
-      // should consider maintaining a local resolve-history to avoid flickering experience in case
-      // of a temporarily unavailable backend
+    } else {
+      resolution =
+          toResolution(
+              flag,
+              requestFlagName,
+              resolve(evaluationContext, requestFlagNames, callerDeadline()),
+              sink);
+      if (resolution == null) {
+        return null;
+      }
+    }
+
+    remember(requestFlagName, evaluationContext, resolution);
+    return resolution;
+  }
+
+  /** Keeps a resolution from the resolver in the resolve cache and the resolve history */
+  private void remember(
+      String requestFlagName, Struct evaluationContext, FlagResolution resolution) {
+    if (resolveCache != null) {
+      resolveCache.put(requestFlagName, evaluationContext, resolution);
+    }
+    if (resolveHistory != null) {
+      resolveHistory.put(requestFlagName, evaluationContext, resolution);
+    }
+  }
+
+  /**
+   * Returns the last known resolution of the flag if the resolve failed because the resolver
+   * couldn't be reached in time, or null
+   */
+  @Nullable
+  private FlagResolution lastKnownGood(
+      Throwable throwable, FlagPath flagPath, Struct evaluationContext) {
+    return servesLastKnownGood(throwable)
+        ? resolveHistory.get(flagPath.getRequestFlagName(), evaluationContext)
+        : null;
+  }
+
+  private boolean servesLastKnownGood(Throwable throwable) {
+    if (resolveHistory == null) {
+      return false;
+    }
+    Throwable cause = throwable;
+    while (cause instanceof CompletionException && cause.getCause() != null) {
+      cause = cause.getCause();
+    }
+    if (!(cause instanceof StatusRuntimeException)) {
+      return false;
+    }
+    final Code code = ((StatusRuntimeException) cause).getStatus().getCode();
+    return code == Code.UNAVAILABLE || code == Code.DEADLINE_EXCEEDED;
+  }
 
-      if (e.getStatus().getCode() == Code.DEADLINE_EXCEEDED) {
-        throw new GeneralError("Deadline exceeded when calling provider backend");
-      } else if (e.getStatus().getCode() == Code.UNAVAILABLE) {
-        throw new GeneralError("Provider backend is unavailable");
-      } else if (e.getStatus().getCode() == Code.UNAUTHENTICATED) {
-        throw new GeneralError("UNAUTHENTICATED");
-      } else {
-        throw new GeneralError(
-            String.format(
-                "Unknown error occurred when calling the provider backend. Grpc status code %s",
-                e.getStatus().getCode()));
+  private CompletableFuture<FlagResolution> resolveFlagAsync(
+      String flag, Struct evaluationContext) {
+    final FlagResolution known = knownResolution(flag, evaluationContext);
+    if (known == NOT_FOUND) {
+      return CompletableFuture.failedFuture(flagNotFound(flag));
+    } else if (known != null) {
+      return CompletableFuture.completedFuture(known);
+    }
+
+    final CompletableFuture<FlagResolution> resolution =
+        resolveRemotelyAsync(flag, evaluationContext);
+    if (resolveCache != null) {
+      final String requestFlagName = singleFlagRequest(flag).get(0);
+      resolution.thenAccept(r -> resolveCache.put(requestFlagName, evaluationContext, r));
+    }
+    return resolution;
+  }
+
+  /** Resolves the flag with the resolver, bypassing prefetched and cached flags */
+  private CompletableFuture<FlagResolution> resolveRemotelyAsync(
+      String flag, Struct evaluationContext) {
+    final List<String> requestFlagNames = singleFlagRequest(flag);
+    final String requestFlagName = requestFlagNames.get(0);
+    final CompletableFuture<FlagResolution> resolution;
+    if (resolveBatcher != null) {
+      // the batched future may be shared with other evaluations, so cancellation stops here
+      resolution =
+          resolveBatched(requestFlagName, evaluationContext)
+              .thenApply(
+                  r -> {
+                    if (r == null) {
+                      throw flagNotFound(flag);
+                    }
+                    return r;
+                  });
+    } else {
+      final CompletableFuture<ResolveFlagsResponse> response;
+      try {
+        response = resolveAsync(evaluationContext, requestFlagNames, callerDeadline());
+      } catch (RuntimeException e) {
+        return CompletableFuture.failedFuture(e);
       }
+      resolution =
+          cancelling(
+              response.thenApply(r -> toResolution(flag, requestFlagName, r, null)), response);
+    }
+    if (resolveHistory != null) {
+      resolution.thenAccept(r -> resolveHistory.put(requestFlagName, evaluationContext, r));
     }
+    return resolution;
   }
 
-  @Override
-  public void shutdown() {
-    managedChannel.shutdownNow();
+  /**
+   * Adds the flag to a batch. If the evaluation has a deadline of its own, from a deadline budget
+   * or the gRPC context, it stops waiting for the batch when that deadline passes.
+   */
+  private CompletableFuture<FlagResolution> resolveBatched(
+      String requestFlagName, Struct evaluationContext) {
+    final Deadline callerDeadline = callerDeadline();
+    if (callerDeadline == null) {
+      return resolveBatcher.resolve(requestFlagName, evaluationContext);
+    }
+    if (callerDeadline.isExpired()) {
+      return CompletableFuture.failedFuture(deadlineExceeded());
+    }
+    final CompletableFuture<FlagResolution> result = new CompletableFuture<>();
+    final Future<?> timeout =
+        scheduler.schedule(
+            () -> result.completeExceptionally(deadlineExceeded()),
+            callerDeadline.timeRemaining(TimeUnit.NANOSECONDS),
+            TimeUnit.NANOSECONDS);
+    resolveBatcher
+        .resolve(requestFlagName, evaluationContext)
+        .whenComplete(
+            (resolution, throwable) -> {
+              timeout.cancel(false);
+              if (throwable != null) {
+                result.completeExceptionally(throwable);
+              } else {
+                result.complete(resolution);
+              }
+            });
+    return result;
   }
 
-  private static Value getValueForPath(List<String> path, Value fullValue) {
-    Value value = fullValue;
-    for (String fieldName : path) {
-      final Structure structure = value.asStructure();
-      if (structure == null) {
-        // value's inner object actually is no structure
-        throw new TypeMismatchError(
-            String.format(
-                "Illegal attempt to derive field '%s' on non-structure value '%s'",
-                fieldName, value));
+  /** Returns the shortest deadline configured for the flags */
+  private Deadline configuredDeadline(List<String> requestFlagNames) {
+    Duration shortest = deadline;
+    for (String requestFlagName : requestFlagNames) {
+      final Duration flagDeadline = flagDeadlines.get(requestFlagName);
+      if (flagDeadline != null && flagDeadline.compareTo(shortest) < 0) {
+        shortest = flagDeadline;
       }
+    }
+    return Deadline.after(shortest.toNanos(), TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Returns the earlier of the deadline budget and the deadline of the current gRPC context, or
+   * null if there is neither
+   */
+  @Nullable
+  private static Deadline callerDeadline() {
+    final Deadline contextDeadline = Context.current().getDeadline();
+    final DeadlineBudget budget = DeadlineBudget.current();
+    if (budget == null) {
+      return contextDeadline;
+    }
+    return contextDeadline != null ? contextDeadline.minimum(budget.deadline()) : budget.deadline();
+  }
 
-      value = structure.getValue(fieldName);
+  private static StatusRuntimeException deadlineExceeded() {
+    return Status.DEADLINE_EXCEEDED
+        .withDescription("The deadline passed before the flags were resolved")
+        .asRuntimeException();
+  }
 
-      if (value == null) {
-        // we know that null indicates absence of a proper value because intended nulls would be an
-        // instance of type Value
-        throw new TypeMismatchError(
-            String.format(
-                "Illegal attempt to derive non-existing field '%s' on structure value '%s'",
-                fieldName, structure));
+  /**
+   * Returns the prefetched or cached resolution of the flag, {@link #NOT_FOUND} if the prefetched
+   * flags show that it doesn't exist, or null if the flag needs to be resolved
+   */
+  @Nullable
+  private FlagResolution knownResolution(String flag, Struct evaluationContext) {
+    final String requestFlagName = singleFlagRequest(flag).get(0);
+    final FlagSnapshot snapshot = snapshots.get(evaluationContext);
+    if (snapshot != null) {
+      final FlagResolution prefetched = snapshot.get(requestFlagName);
+      if (prefetched != null) {
+        return prefetched;
+      } else if (snapshot.coversAllFlags()) {
+        return NOT_FOUND;
+      }
+    }
+
+    if (resolveCache != null) {
+      final FlagResolution cached = resolveCache.get(requestFlagName, evaluationContext);
+      if (cached != null) {
+        return cached;
       }
     }
 
-    return value;
+    if (warmStart != null) {
+      return warmStart.get(requestFlagName, evaluationContext);
+    }
+    return null;
   }
 
-  private static FlagPath getPath(String str) {
-    final String regex = Pattern.quote(".");
-    final String[] parts = str.split(regex);
+  /**
+   * Returns the resolution of the flag in the response. If the flag isn't in it, the error is
+   * thrown if there is no sink, and otherwise recorded in the sink, and null is returned.
+   */
+  @Nullable
+  private static FlagResolution toResolution(
+      String flag, String requestFlagName, ResolveFlagsResponse response, @Nullable Sink sink) {
+    if (response.getResolvedFlagsList().isEmpty()) {
+      return EvaluationErrors.fail(sink, ErrorCode.FLAG_NOT_FOUND, NOT_FOUND_MESSAGE, flag);
+    }
 
-    if (parts.length == 0) {
-      // this happens for malformed corner cases such as: str = "..."
-      throw new GeneralError(String.format("Illegal path string '%s'", str));
-    } else if (parts.length == 1) {
+    final String responseFlagName = response.getResolvedFlags(0).getFlag();
+    if (!requestFlagName.equals(responseFlagName)) {
+      return EvaluationErrors.fail(
+          sink,
+          ErrorCode.FLAG_NOT_FOUND,
+          "Unexpected flag '%s' from remote",
+          EvaluationErrors.lazy(() -> responseFlagName.replaceFirst("^flags/", "")));
+    }
+
+    return new FlagResolution(response.getResolvedFlags(0), response.getResolveToken());
+  }
+
+  private static FlagNotFoundError flagNotFound(String flag) {
+    return EvaluationErrors.flagNotFound(NOT_FOUND_MESSAGE, flag);
+  }
+
+  /**
+   * Completes with the result of the future, or with its failure unwrapped and mapped the way the
+   * blocking evaluations throw it
+   */
+  private static <T> CompletableFuture<T> mapErrors(CompletableFuture<T> future) {
+    final CompletableFuture<T> result = new CompletableFuture<>();
+    future.whenComplete(
+        (value, throwable) -> {
+          if (throwable != null) {
+            result.completeExceptionally(toOpenFeatureError(throwable));
+          } else {
+            result.complete(value);
+          }
+        });
+    return result;
+  }
+
+  private static Throwable toOpenFeatureError(Throwable throwable) {
+    Throwable cause = throwable;
+    while (cause instanceof CompletionException && cause.getCause() != null) {
+      cause = cause.getCause();
+    }
+    if (cause instanceof StatusRuntimeException) {
+      return toGeneralError((StatusRuntimeException) cause);
+    }
+    return cause;
+  }
+
+  /** Makes cancelling the dependent future also cancel the future that it depends on */
+  private static <T> CompletableFuture<T> cancelling(
+      CompletableFuture<T> dependent, Future<?> source) {
+    dependent.whenComplete(
+        (value, throwable) -> {
+          if (dependent.isCancelled()) {
+            source.cancel(true);
+          }
+        });
+    return dependent;
+  }
+
+  private static <T> T await(CompletableFuture<T> future) {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Resolves the flags with the earlier of their configured deadline and the caller's deadline. A
+   * call cut short by the caller's deadline says nothing about the health of the resolver, so the
+   * resolve guard doesn't count it as a failure.
+   */
+  private ResolveFlagsResponse resolve(
+      Struct evaluationContext, List<String> requestFlagNames, @Nullable Deadline callerDeadline) {
+    return resolve(evaluationContext, requestFlagNames, callerDeadline, requestPrototype);
+  }
+
+  /** Resolves the flags with a request built from the given prototype */
+  private ResolveFlagsResponse resolve(
+      Struct evaluationContext,
+      List<String> requestFlagNames,
+      @Nullable Deadline callerDeadline,
+      ResolveFlagsRequest prototype) {
+    if (localResolver != null) {
+      return localResolver.resolve(evaluationContext, requestFlagNames);
+    }
+    final Deadline configured = configuredDeadline(requestFlagNames);
+    final boolean byCaller = callerDeadline != null && callerDeadline.isBefore(configured);
+    final Deadline deadline = byCaller ? callerDeadline : configured;
+    if (deadline.isExpired()) {
+      // no time is left for a round trip, so the call is not made
+      throw deadlineExceeded();
+    }
+    if (resolveHedger != null) {
+      return await(resolveAsync(evaluationContext, requestFlagNames, callerDeadline, prototype));
+    }
+    final ResolveFlagsRequest request =
+        resolveRequest(prototype, evaluationContext, requestFlagNames);
+    if (resolveGuard != null) {
+      return resolveGuard.callBlocking(
+          () -> stub.withDeadline(deadline).resolveFlags(request), byCaller);
+    }
+    return stub.withDeadline(deadline).resolveFlags(request);
+  }
+
+  /** Resolves the flags like {@link #resolve(Struct, List, Deadline)}, without blocking */
+  private CompletableFuture<ResolveFlagsResponse> resolveAsync(
+      Struct evaluationContext, List<String> requestFlagNames, @Nullable Deadline callerDeadline) {
+    return resolveAsync(evaluationContext, requestFlagNames, callerDeadline, requestPrototype);
+  }
+
+  private CompletableFuture<ResolveFlagsResponse> resolveAsync(
+      Struct evaluationContext,
+      List<String> requestFlagNames,
+      @Nullable Deadline callerDeadline,
+      ResolveFlagsRequest prototype) {
+    if (localResolver != null) {
+      try {
+        return CompletableFuture.completedFuture(
+            localResolver.resolve(evaluationContext, requestFlagNames));
+      } catch (RuntimeException e) {
+        return CompletableFuture.failedFuture(e);
+      }
+    }
+    final Deadline configured = configuredDeadline(requestFlagNames);
+    final boolean byCaller = callerDeadline != null && callerDeadline.isBefore(configured);
+    final Deadline deadline = byCaller ? callerDeadline : configured;
+    if (deadline.isExpired()) {
+      return CompletableFuture.failedFuture(deadlineExceeded());
+    }
+    final ResolveFlagsRequest request =
+        resolveRequest(prototype, evaluationContext, requestFlagNames);
+    // a hedged attempt is identical to the first one, including its deadline
+    final Supplier<CompletableFuture<ResolveFlagsResponse>> call =
+        () -> toCompletableFuture(futureStub.withDeadline(deadline).resolveFlags(request));
+    // each attempt is guarded on its own, so a rejected hedge doesn't fail the first attempt
+    final Supplier<CompletableFuture<ResolveFlagsResponse>> attempt =
+        resolveGuard != null ? () -> resolveGuard.call(call, byCaller) : call;
+    return resolveHedger != null ? resolveHedger.call(attempt) : attempt.get();
+  }
+
+  /** Applies a prefetched flag right away, since there is no deferred apply to queue it in */
+  private void applyPrefetched(FlagResolution resolution) {
+    final Timestamp now = Timestamps.fromMillis(System.currentTimeMillis());
+    final ApplyFlagsRequest request =
+        applyPrototype.toBuilder()
+            .setResolveToken(resolution.getResolveToken())
+            .addFlags(
+                AppliedFlag.newBuilder()
+                    .setFlag(resolution.getResolvedFlag().getFlag())
+                    .setApplyTime(now))
+            .setSendTime(now)
+            .build();
+    try {
+      applyAsync(request);
+    } catch (RuntimeException e) {
+      // like a resolve with apply set to true, a failed apply doesn't fail the evaluation
+    }
+  }
+
+  private CompletableFuture<ApplyFlagsResponse> applyAsync(ApplyFlagsRequest request) {
+    return toCompletableFuture(
+        futureStub.withDeadlineAfter(deadline.toNanos(), TimeUnit.NANOSECONDS).applyFlags(request));
+  }
+
+  private static <T> CompletableFuture<T> toCompletableFuture(ListenableFuture<T> future) {
+    final CompletableFuture<T> result = new CompletableFuture<>();
+    Futures.addCallback(
+        future,
+        new FutureCallback<>() {
+          @Override
+          public void onSuccess(T value) {
+            result.complete(value);
+          }
+
+          @Override
+          public void onFailure(Throwable t) {
+            result.completeExceptionally(t);
+          }
+        },
+        MoreExecutors.directExecutor());
+    return cancelling(result, future);
+  }
+
+  // package-private for benchmarks
+  ResolveFlagsRequest resolveRequest(Struct evaluationContext, List<String> requestFlagNames) {
+    return resolveRequest(requestPrototype, evaluationContext, requestFlagNames);
+  }
+
+  private static ResolveFlagsRequest resolveRequest(
+      ResolveFlagsRequest prototype, Struct evaluationContext, List<String> requestFlagNames) {
+    return prototype.toBuilder()
+        .addAllFlags(requestFlagNames)
+        .setEvaluationContext(evaluationContext)
+        .build();
+  }
+
+  /** Returns the request names of resolving only the flag, that is "flags/&lt;flag&gt;" */
+  // package-private for benchmarks
+  List<String> singleFlagRequest(String flag) {
+    final List<String> known = singleFlagRequests.get(flag);
+    if (known != null) {
+      return known;
+    }
+    final List<String> requestFlagNames = List.of("flags/" + flag);
+    if (singleFlagRequests.size() < MAX_SINGLE_FLAG_REQUESTS) {
+      singleFlagRequests.putIfAbsent(flag, requestFlagNames);
+    }
+    return requestFlagNames;
+  }
+
+  @Override
+  public void shutdown() {
+    if (flagApplier != null) {
+      flagApplier.close(APPLY_SHUTDOWN_TIMEOUT);
+    }
+    if (persistentSnapshot != null) {
+      writeSnapshot();
+    }
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+    }
+    managedChannel.shutdownNow();
+    if (virtualThreadExecutor != null) {
+      virtualThreadExecutor.shutdownNow();
+    }
+  }
+
+  /** Returns the parsed flag key, kept for the next evaluations of the key */
+  // package-private for benchmarks
+  FlagPath flagPath(String key) {
+    return flagPath(key, null);
+  }
+
+  /**
+   * Returns the parsed flag key like {@link #flagPath(String)}. If the key is malformed, the error
+   * is thrown if there is no sink, and otherwise recorded in the sink, and null is returned.
+   */
+  @Nullable
+  private FlagPath flagPath(String key, @Nullable Sink sink) {
+    final FlagPath known = flagPaths.get(key);
+    if (known != null) {
+      return known;
+    }
+    final FlagPath flagPath = getPath(key, sink);
+    if (flagPath == null) {
+      return null;
+    }
+    if (flagPaths.size() < MAX_FLAG_PATHS) {
+      flagPaths.putIfAbsent(key, flagPath);
+    }
+    return flagPath;
+  }
+
+  /**
+   * Splits the key at each "." into the flag name and the path into the flag value, dropping
+   * trailing empty segments like {@code str.split("\\.")}
+   */
+  // package-private for benchmarks
+  static FlagPath getPath(String str) {
+    return getPath(str, null);
+  }
+
+  @Nullable
+  private static FlagPath getPath(String str, @Nullable Sink sink) {
+    int dot = str.indexOf('.');
+    if (dot < 0) {
       // str doesn't contain the delimiter
       return new FlagPath(str, List.of());
-    } else {
-      return new FlagPath(parts[0], Arrays.asList(parts).subList(1, parts.length));
     }
+    final List<String> parts = new ArrayList<>();
+    int start = 0;
+    while (dot >= 0) {
+      parts.add(str.substring(start, dot));
+      start = dot + 1;
+      dot = str.indexOf('.', start);
+    }
+    parts.add(str.substring(start));
+    int size = parts.size();
+    while (size > 0 && parts.get(size - 1).isEmpty()) {
+      size--;
+    }
+
+    if (size == 0) {
+      // this happens for malformed corner cases such as: str = "..."
+      return EvaluationErrors.fail(sink, ErrorCode.GENERAL, "Illegal path string '%s'", str);
+    }
+    return new FlagPath(parts.get(0), List.copyOf(parts.subList(1, size)));
   }
 
-  private static class FlagPath {
+  static class FlagPath {
 
     private final String flag;
+    private final String requestFlagName;
     private final List<String> path;
 
     public FlagPath(String flag, List<String> path) {
       this.flag = flag;
+      this.requestFlagName = "flags/" + flag;
       this.path = path;
     }
 
@@ -300,8 +1498,568 @@ public class ConfidenceFeatureProvider implements FeatureProvider {
       return flag;
     }
 
+    /** Returns the name of the flag in resolve requests, "flags/&lt;flag&gt;" */
+    public String getRequestFlagName() {
+      return requestFlagName;
+    }
+
     public List<String> getPath() {
       return path;
     }
   }
+
+  /** Builder for {@link ConfidenceFeatureProvider} */
+  public static final class Builder {
+
+    private final String clientSecret;
+    @Nullable private ManagedChannel managedChannel;
+    private String host = "edge-grpc.spotify.com";
+    private int port = 443;
+    private int channelPoolSize = 1;
+    private ChannelSelection channelSelection = ChannelSelection.ROUND_ROBIN;
+    @Nullable private Duration keepAliveTime;
+    private Duration keepAliveTimeout = Duration.ZERO;
+    private int flowControlWindow;
+    @Nullable private Executor channelExecutor;
+    private BiFunction<String, Integer, ManagedChannelBuilder<?>> channelBuilderFactory =
+        ManagedChannelBuilder::forAddress;
+    private Duration deadline = DEFAULT_DEADLINE;
+    private final Map<String, Duration> flagDeadlines = new HashMap<>();
+    private int cacheMaxSize;
+    private Duration cacheTtl = Duration.ZERO;
+    @Nullable private Duration cacheRefreshAfter;
+    @Nullable private Executor refreshExecutor;
+    private int historyMaxSize;
+    @Nullable private Path snapshotFile;
+    private Duration snapshotWriteInterval = Duration.ZERO;
+    private boolean snapshotContexts;
+    private Duration snapshotMaxAge = DEFAULT_SNAPSHOT_MAX_AGE;
+    private int snapshotMaxContexts = 1000;
+    private Duration snapshotTtl = Duration.ofMinutes(1);
+    private int batchMaxSize;
+    private Duration batchWindow = Duration.ZERO;
+    private int applyBatchSize;
+    private int applyCapacity;
+    private Duration applyFlushInterval = Duration.ZERO;
+    private ApplyBackpressurePolicy applyBackpressurePolicy = ApplyBackpressurePolicy.DROP_OLDEST;
+    @Nullable private Duration hedgeDelay;
+    private double hedgeMaxRate;
+    private int circuitWindowSize;
+    private double circuitFailureRateThreshold;
+    private Duration circuitSlowCallThreshold = Duration.ZERO;
+    private Duration circuitOpenDuration = Duration.ZERO;
+    private CircuitStateListener circuitStateListener = (from, to) -> {};
+    private int concurrencyInitialLimit;
+    private int concurrencyMaxLimit;
+    private Duration concurrencyLatencyThreshold = Duration.ZERO;
+    @Nullable private LocalResolver localResolver;
+    private boolean virtualThreads;
+    private boolean errorEvaluations;
+
+    private Builder(String clientSecret) {
+      this.clientSecret = clientSecret;
+    }
+
+    /**
+     * Sets the gRPC channel used to reach the resolver. Defaults to the Confidence edge.
+     *
+     * @param managedChannel gRPC channel
+     * @return this builder
+     */
+    public Builder channel(ManagedChannel managedChannel) {
+      this.managedChannel = managedChannel;
+      return this;
+    }
+
+    /**
+     * Sets the address of the resolver that the provider connects to. Defaults to the Confidence
+     * edge.
+     *
+     * @param host gRPC host you want to connect to
+     * @param port port of the gRPC host that you want to use
+     * @return this builder
+     */
+    public Builder target(String host, int port) {
+      this.host = host;
+      this.port = port;
+      return this;
+    }
+
+    /**
+     * Connects to the resolver with a pool of channels instead of a single one. Each channel has
+     * its own HTTP/2 connection, so high volumes of concurrent resolves aren't capped by the
+     * maximum number of concurrent streams of one connection. Ignored if a channel is passed to
+     * {@link #channel(ManagedChannel)}. Defaults to a single channel.
+     *
+     * @param size number of channels
+     * @param selection how each call picks a channel
+     * @return this builder
+     */
+    public Builder channelPool(int size, ChannelSelection selection) {
+      if (size <= 0) {
+        throw new IllegalArgumentException("size must be positive.");
+      }
+      this.channelPoolSize = size;
+      this.channelSelection = selection;
+      return this;
+    }
+
+    /**
+     * Enables keepalive pings on the channels that the provider creates, so that broken connections
+     * are noticed before a resolve is sent on them. Disabled by default.
+     *
+     * @param time how long a connection may be idle before a ping is sent
+     * @param timeout how long to wait for the ping to be acknowledged before closing the connection
+     * @return this builder
+     */
+    public Builder keepAlive(Duration time, Duration timeout) {
+      if (time.isNegative() || time.isZero() || timeout.isNegative() || timeout.isZero()) {
+        throw new IllegalArgumentException("time and timeout must be positive.");
+      }
+      this.keepAliveTime = time;
+      this.keepAliveTimeout = timeout;
+      return this;
+    }
+
+    /**
+     * Sets the initial HTTP/2 flow control window of the channels that the provider creates.
+     * Defaults to the window of the gRPC transport. The window is a setting of the Netty transport
+     * that the provider uses by default, so building the provider fails with an {@link
+     * IllegalStateException} if the channels are built by another transport. Ignored if a channel
+     * is passed to {@link #channel(ManagedChannel)}.
+     *
+     * @param bytes size of the window
+     * @return this builder
+     */
+    public Builder flowControlWindow(int bytes) {
+      if (bytes <= 0) {
+        throw new IllegalArgumentException("bytes must be positive.");
+      }
+      this.flowControlWindow = bytes;
+      return this;
+    }
+
+    /**
+     * Sets the executor that runs the callbacks of the channels that the provider creates. Defaults
+     * to the virtual threads of the provider if enabled, and to the gRPC default executor
+     * otherwise.
+     *
+     * @param executor executor for channel callbacks
+     * @return this builder
+     */
+    public Builder channelExecutor(Executor executor) {
+      this.channelExecutor = executor;
+      return this;
+    }
+
+    /** Sets how the channels that the provider creates are built, from a host and a port. */
+    Builder channelBuilderFactory(
+        BiFunction<String, Integer, ManagedChannelBuilder<?>> channelBuilderFactory) {
+      this.channelBuilderFactory = channelBuilderFactory;
+      return this;
+    }
+
+    /**
+     * Sets the deadline of resolve and apply calls. Defaults to 10 seconds. Evaluations made with a
+     * {@link DeadlineBudget}, or in a gRPC context with a deadline, resolve with the earlier of the
+     * two deadlines, and without calling the resolver if no time is left.
+     *
+     * @param deadline how long a call to the resolver may take
+     * @return this builder
+     * @see #deadline(String, Duration)
+     */
+    public Builder deadline(Duration deadline) {
+      if (deadline.isNegative() || deadline.isZero()) {
+        throw new IllegalArgumentException("deadline must be positive.");
+      }
+      this.deadline = deadline;
+      return this;
+    }
+
+    /**
+     * Sets the deadline of resolving a flag, instead of the deadline set with {@link
+     * #deadline(Duration)}. A resolve of several flags, such as a batch, has the shortest deadline
+     * of its flags.
+     *
+     * @param flag name of the flag, without a path into its value
+     * @param deadline how long a resolve of the flag may take
+     * @return this builder
+     */
+    public Builder deadline(String flag, Duration deadline) {
+      if (deadline.isNegative() || deadline.isZero()) {
+        throw new IllegalArgumentException("deadline must be positive.");
+      }
+      this.flagDeadlines.put(flag, deadline);
+      return this;
+    }
+
+    /**
+     * Enables a local cache of resolved flags, keyed by flag name and evaluation context. Cache
+     * hits are served without calling the resolver, which also means that no new exposure is
+     * applied for them. Disabled by default.
+     *
+     * @param maxSize maximum number of cached flag resolves
+     * @param ttl how long a resolved flag may be served from the cache
+     * @return this builder
+     */
+    public Builder resolveCache(int maxSize, Duration ttl) {
+      if (maxSize <= 0) {
+        throw new IllegalArgumentException("maxSize must be positive.");
+      }
+      if (ttl.isNegative() || ttl.isZero()) {
+        throw new IllegalArgumentException("ttl must be positive.");
+      }
+      this.cacheMaxSize = maxSize;
+      this.cacheTtl = ttl;
+      this.cacheRefreshAfter = null;
+      return this;
+    }
+
+    /**
+     * Enables a local cache of resolved flags that is refreshed in the background. Entries older
+     * than {@code refreshAfter} are still served, while one background resolve per entry replaces
+     * them; only entries older than {@code ttl} make evaluations wait for the resolver. Without
+     * deferred apply, the background resolves also apply the flags. Disabled by default.
+     *
+     * @param maxSize maximum number of cached flag resolves
+     * @param refreshAfter age after which a cached flag is refreshed in the background
+     * @param ttl how long a resolved flag may be served from the cache
+     * @return this builder
+     * @see #refreshExecutor(Executor)
+     */
+    public Builder resolveCache(int maxSize, Duration refreshAfter, Duration ttl) {
+      resolveCache(maxSize, ttl);
+      if (refreshAfter.isNegative() || refreshAfter.isZero() || refreshAfter.compareTo(ttl) > 0) {
+        throw new IllegalArgumentException("refreshAfter must be positive and at most ttl.");
+      }
+      this.cacheRefreshAfter = refreshAfter;
+      return this;
+    }
+
+    /**
+     * Sets the executor that starts background refreshes of the resolve cache. Defaults to the
+     * provider's own scheduler thread, or virtual threads if enabled.
+     *
+     * @param executor executor for cache refreshes
+     * @return this builder
+     */
+    public Builder refreshExecutor(Executor executor) {
+      this.refreshExecutor = executor;
+      return this;
+    }
+
+    /**
+     * Keeps the last resolve of flags from the resolver, per flag and evaluation context, and
+     * serves it when a later resolve of the flag fails because the resolver is unavailable or the
+     * deadline is exceeded. Such evaluations have the reason {@code STALE}. The least recently used
+     * resolves are dropped beyond the maximum size. Disabled by default.
+     *
+     * @param maxSize maximum number of kept flag resolves
+     * @return this builder
+     */
+    public Builder resolveHistory(int maxSize) {
+      if (maxSize <= 0) {
+        throw new IllegalArgumentException("maxSize must be positive.");
+      }
+      this.historyMaxSize = maxSize;
+      return this;
+    }
+
+    /**
+     * Persists the resolve history to a file, and loads it when the provider is created. Loaded
+     * flags are served with the reason {@code STALE} right away, while the first evaluation of each
+     * of them resolves it again in the background. Loaded flags are served for the TTL of the
+     * resolve cache if it is enabled, and otherwise for one write interval, and flags older than
+     * {@link #persistentSnapshotMaxAge(Duration)} are not loaded at all. The file is written at the
+     * given interval and on {@link ConfidenceFeatureProvider#shutdown()}, and replaced atomically.
+     * A missing or unreadable file is ignored. Enables the resolve history with 10000 entries, if
+     * it isn't enabled with {@link #resolveHistory(int)}.
+     *
+     * <p>The file is not encrypted. It holds the resolved flags with their variants and values, and
+     * the resolve tokens needed to apply them, which the resolver may derive from the evaluation
+     * context. Evaluation contexts are only written as a SHA-256 digest, which serves flags to
+     * equal contexts after a restart but can be matched against guessed contexts. Protect the file
+     * like other user data.
+     *
+     * @param file file to persist resolved flags to
+     * @param writeInterval how often the file is written
+     * @return this builder
+     * @see #persistentSnapshot(Path, Duration, boolean)
+     */
+    public Builder persistentSnapshot(Path file, Duration writeInterval) {
+      return persistentSnapshot(file, writeInterval, false);
+    }
+
+    /**
+     * Persists the resolve history to a file like {@link #persistentSnapshot(Path, Duration)}, and
+     * optionally writes the evaluation contexts themselves. Persisted contexts let the resolve
+     * history serve loaded flags during outages right after a restart, as it does for flags it
+     * resolved itself, but the file then holds every attribute of the contexts, such as user
+     * identifiers, in plain text.
+     *
+     * @param file file to persist resolved flags to
+     * @param writeInterval how often the file is written
+     * @param persistContexts whether the evaluation contexts are written instead of their digests
+     * @return this builder
+     */
+    public Builder persistentSnapshot(Path file, Duration writeInterval, boolean persistContexts) {
+      if (writeInterval.isNegative() || writeInterval.isZero()) {
+        throw new IllegalArgumentException("writeInterval must be positive.");
+      }
+      this.snapshotFile = file;
+      this.snapshotWriteInterval = writeInterval;
+      this.snapshotContexts = persistContexts;
+      return this;
+    }
+
+    /**
+     * Sets how long after their resolve the flags of the {@link #persistentSnapshot(Path,
+     * Duration)} are kept. Older flags are neither loaded nor written. Defaults to one day.
+     *
+     * @param maxAge maximum age of persisted flags
+     * @return this builder
+     */
+    public Builder persistentSnapshotMaxAge(Duration maxAge) {
+      if (maxAge.isNegative() || maxAge.isZero()) {
+        throw new IllegalArgumentException("maxAge must be positive.");
+      }
+      this.snapshotMaxAge = maxAge;
+      return this;
+    }
+
+    /**
+     * Bounds the flags kept by {@link ConfidenceFeatureProvider#prefetch(EvaluationContext, List)}.
+     * Defaults to 1000 evaluation contexts kept for one minute.
+     *
+     * @param maxContexts maximum number of evaluation contexts with prefetched flags
+     * @param ttl how long prefetched flags may be served
+     * @return this builder
+     */
+    public Builder prefetchSnapshots(int maxContexts, Duration ttl) {
+      if (maxContexts <= 0) {
+        throw new IllegalArgumentException("maxContexts must be positive.");
+      }
+      if (ttl.isNegative() || ttl.isZero()) {
+        throw new IllegalArgumentException("ttl must be positive.");
+      }
+      this.snapshotMaxContexts = maxContexts;
+      this.snapshotTtl = ttl;
+      return this;
+    }
+
+    /**
+     * Enables batching of concurrent flag resolves. Resolves for the same evaluation context that
+     * are issued within the window are sent as a single resolve call, and identical resolves that
+     * are in flight share one call. Disabled by default.
+     *
+     * @param window how long to wait for more flags after the first flag of a batch
+     * @param maxBatchSize number of flags after which a batch is sent without waiting
+     * @return this builder
+     */
+    public Builder batching(Duration window, int maxBatchSize) {
+      if (maxBatchSize <= 0) {
+        throw new IllegalArgumentException("maxBatchSize must be positive.");
+      }
+      if (window.isNegative()) {
+        throw new IllegalArgumentException("window must not be negative.");
+      }
+      this.batchWindow = window;
+      this.batchMaxSize = maxBatchSize;
+      return this;
+    }
+
+    /**
+     * Enables deferred apply with default settings: applies are flushed every second or per 100
+     * flags, buffering at most 10000 flags and dropping the oldest when full.
+     *
+     * @return this builder
+     * @see #deferredApply(Duration, int, int, ApplyBackpressurePolicy)
+     */
+    public Builder deferredApply() {
+      return deferredApply(Duration.ofSeconds(1), 100, 10_000, ApplyBackpressurePolicy.DROP_OLDEST);
+    }
+
+    /**
+     * Enables deferred apply. Flags are then resolved without being applied, and the flags that are
+     * evaluated are applied afterwards in batches, once per resolve. This keeps the apply off the
+     * evaluation path, and makes sure that flags served from the cache or from prefetched snapshots
+     * are applied too. Pending applies are flushed on {@link ConfidenceFeatureProvider#shutdown()}.
+     *
+     * @param flushInterval how often pending applies are sent
+     * @param batchSize number of pending applies that triggers a send before the interval passed
+     * @param capacity maximum number of pending applies
+     * @param backpressurePolicy what to do when there are already {@code capacity} pending applies
+     * @return this builder
+     */
+    public Builder deferredApply(
+        Duration flushInterval,
+        int batchSize,
+        int capacity,
+        ApplyBackpressurePolicy backpressurePolicy) {
+      if (flushInterval.isNegative() || flushInterval.isZero()) {
+        throw new IllegalArgumentException("flushInterval must be positive.");
+      }
+      if (batchSize <= 0 || capacity < batchSize) {
+        throw new IllegalArgumentException(
+            "batchSize must be positive and capacity must be at least batchSize.");
+      }
+      this.applyFlushInterval = flushInterval;
+      this.applyBatchSize = batchSize;
+      this.applyCapacity = capacity;
+      this.applyBackpressurePolicy = backpressurePolicy;
+      return this;
+    }
+
+    /**
+     * Enables hedging of resolve calls: if a resolve hasn't returned after the delay, an identical
+     * resolve is sent, the first response is used and the other call is cancelled. A delay around
+     * the 95th percentile of the resolve latency cuts the tail latency at the cost of a few percent
+     * more calls. Hedges are limited to {@code maxHedgeRate} of the resolves, such as 0.05 for 5%,
+     * so that a slow backend doesn't get twice the load. Requires {@link #deferredApply()}, since
+     * resolves that apply flags must not be sent twice. Disabled by default.
+     *
+     * @param delay how long to wait for a response before sending the hedged resolve
+     * @param maxHedgeRate maximum fraction of resolves that are hedged, between 0 and 1
+     * @return this builder
+     * @see ConfidenceFeatureProvider#getHedgeStats()
+     */
+    public Builder hedging(Duration delay, double maxHedgeRate) {
+      if (delay.isNegative() || delay.isZero()) {
+        throw new IllegalArgumentException("delay must be positive.");
+      }
+      if (!(maxHedgeRate > 0 && maxHedgeRate <= 1)) {
+        throw new IllegalArgumentException("maxHedgeRate must be greater than 0 and at most 1.");
+      }
+      this.hedgeDelay = delay;
+      this.hedgeMaxRate = maxHedgeRate;
+      return this;
+    }
+
+    /**
+     * Enables a circuit breaker around resolve calls. Outcomes are counted per window of calls,
+     * where calls that time out or fail because the resolver is unavailable, overloaded or broken
+     * count as failures, and so do calls slower than {@code slowCallThreshold}. When the failures
+     * of a window reach {@code failureRateThreshold}, the circuit opens and resolves fail right
+     * away, so that evaluations are served from the cache or the resolve history, or fall back to
+     * the default value. After {@code openDuration}, one trial resolve decides whether the circuit
+     * closes again. Disabled by default.
+     *
+     * @param failureRateThreshold fraction of failed calls that opens the circuit, between 0 and 1
+     * @param windowSize number of calls over which the failure rate is computed
+     * @param slowCallThreshold latency from which a successful call counts as failed
+     * @param openDuration how long the circuit stays open before a trial resolve
+     * @return this builder
+     * @see #circuitStateListener(CircuitStateListener)
+     */
+    public Builder circuitBreaker(
+        double failureRateThreshold,
+        int windowSize,
+        Duration slowCallThreshold,
+        Duration openDuration) {
+      if (!(failureRateThreshold > 0 && failureRateThreshold <= 1)) {
+        throw new IllegalArgumentException(
+            "failureRateThreshold must be greater than 0 and at most 1.");
+      }
+      if (windowSize <= 0) {
+        throw new IllegalArgumentException("windowSize must be positive.");
+      }
+      if (slowCallThreshold.isNegative() || slowCallThreshold.isZero()) {
+        throw new IllegalArgumentException("slowCallThreshold must be positive.");
+      }
+      if (openDuration.isNegative() || openDuration.isZero()) {
+        throw new IllegalArgumentException("openDuration must be positive.");
+      }
+      this.circuitFailureRateThreshold = failureRateThreshold;
+      this.circuitWindowSize = windowSize;
+      this.circuitSlowCallThreshold = slowCallThreshold;
+      this.circuitOpenDuration = openDuration;
+      return this;
+    }
+
+    /**
+     * Sets a listener for the state transitions of the circuit breaker.
+     *
+     * @param listener listener that is called on each transition
+     * @return this builder
+     * @see #circuitBreaker(double, int, Duration, Duration)
+     */
+    public Builder circuitStateListener(CircuitStateListener listener) {
+      this.circuitStateListener = listener;
+      return this;
+    }
+
+    /**
+     * Enables an adaptive limit of concurrent resolve calls. The limit grows by one for each call
+     * that returns within {@code latencyThreshold} while the limit is in use, and shrinks by a
+     * tenth for each call that is slower, times out or finds the resolver unavailable or
+     * overloaded. Resolves beyond the limit fail right away instead of queueing up behind a
+     * degraded resolver. Disabled by default.
+     *
+     * @param initialLimit limit of concurrent resolves to start with
+     * @param maxLimit upper bound of the limit
+     * @param latencyThreshold latency from which a call lowers the limit
+     * @return this builder
+     */
+    public Builder adaptiveConcurrencyLimit(
+        int initialLimit, int maxLimit, Duration latencyThreshold) {
+      if (initialLimit <= 0 || maxLimit < initialLimit) {
+        throw new IllegalArgumentException(
+            "initialLimit must be positive and maxLimit must be at least initialLimit.");
+      }
+      if (latencyThreshold.isNegative() || latencyThreshold.isZero()) {
+        throw new IllegalArgumentException("latencyThreshold must be positive.");
+      }
+      this.concurrencyInitialLimit = initialLimit;
+      this.concurrencyMaxLimit = maxLimit;
+      this.concurrencyLatencyThreshold = latencyThreshold;
+      return this;
+    }
+
+    /**
+     * Resolves flags in-process with the given local resolver instead of calling the resolver
+     * service. Flags resolved locally are not applied, unless deferred apply is enabled, in which
+     * case applies are still sent to the channel.
+     *
+     * @param localResolver resolver with the flag definitions
+     * @return this builder
+     */
+    public Builder localResolver(LocalResolver localResolver) {
+      this.localResolver = localResolver;
+      return this;
+    }
+
+    /**
+     * Runs the internal work of the provider, such as sending batched resolves and flushing
+     * deferred applies, on virtual threads instead of the provider's scheduler thread. The default
+     * channel then also runs its callbacks on virtual threads; a channel passed to {@link
+     * #channel(ManagedChannel)} keeps its own executor. Blocking evaluations wait for resolves and
+     * batches with {@code java.util.concurrent} futures and locks, which unmount a waiting virtual
+     * thread instead of pinning its carrier thread. The concurrent maps of the provider still use
+     * short monitor locks internally, but nothing blocks while holding one. Ignored on runtimes
+     * without virtual threads, which were added in Java 21.
+     *
+     * @return this builder
+     */
+    public Builder virtualThreads() {
+      this.virtualThreads = true;
+      return this;
+    }
+
+    /**
+     * Makes the blocking evaluations return an evaluation with the default value, the reason {@code
+     * ERROR} and an error code when a flag is missing, has a value of the wrong type or can't be
+     * resolved, instead of throwing an error. The OpenFeature client reports both in the same way,
+     * except that it only runs the error hooks for thrown errors.
+     *
+     * @return this builder
+     */
+    public Builder errorEvaluations() {
+      this.errorEvaluations = true;
+      return this;
+    }
+
+    public ConfidenceFeatureProvider build() {
+      return new ConfidenceFeatureProvider(this);
+    }
+  }
 }
@@ -0,0 +1,402 @@
+package com.spotify.confidence;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.protobuf.Struct;
+import com.spotify.confidence.EvaluationErrors.Sink;
+import com.spotify.confidence.flags.types.v1.FlagSchema;
+import com.spotify.confidence.flags.types.v1.FlagSchema.StructFlagSchema;
+import dev.openfeature.sdk.ErrorCode;
+import dev.openfeature.sdk.MutableStructure;
+import dev.openfeature.sdk.Value;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Converts flag values to OpenFeature values following a {@link StructFlagSchema}. The schema is
+ * compiled once into an array of field converters, specialized by schema type. Plans are kept by
+ * flag name, since every resolve of a flag parses a new instance of its schema, and a kept plan is
+ * reused as long as it matches the schema of the flag. A plan only depends on the field names and
+ * schema types, so matching a schema checks these against the compiled converters, which is cheaper
+ * than both compiling a plan and comparing or hashing the schemas as protobuf messages.
+ */
+final class ConversionPlan {
+
+  // one plan per flag is kept, and the least recently used are evicted beyond this limit
+  static final int MAX_CACHED_PLANS = 1024;
+  private static final Cache<String, ConversionPlan> PLANS =
+      CacheBuilder.newBuilder().maximumSize(MAX_CACHED_PLANS).build();
+  private static final String MISMATCH_PREFIX = "Mismatch between schema and value:";
+
+  private final StructFlagSchema schema;
+  private final String[] fieldNames;
+  private final Converter[] converters;
+  private final Map<String, Converter> convertersByName;
+
+  private ConversionPlan(StructFlagSchema schema) {
+    this.schema = schema;
+    final Map<String, FlagSchema> fields = schema.getSchemaMap();
+    this.fieldNames = new String[fields.size()];
+    this.converters = new Converter[fields.size()];
+    this.convertersByName = new HashMap<>(fields.size() * 4 / 3 + 1);
+    int i = 0;
+    for (Map.Entry<String, FlagSchema> field : fields.entrySet()) {
+      fieldNames[i] = field.getKey();
+      converters[i] = converter(field.getValue());
+      convertersByName.put(fieldNames[i], converters[i]);
+      i++;
+    }
+  }
+
+  /** Compiles a plan for the schema */
+  static ConversionPlan compile(StructFlagSchema schema) {
+    return new ConversionPlan(schema);
+  }
+
+  /**
+   * Returns the kept plan of the flag if it matches the schema, and otherwise compiles a plan and
+   * keeps it
+   */
+  static ConversionPlan forFlag(String flagName, StructFlagSchema schema) {
+    final ConversionPlan plan = PLANS.getIfPresent(flagName);
+    if (plan != null && plan.matches(schema)) {
+      return plan;
+    }
+    final ConversionPlan compiled = new ConversionPlan(schema);
+    PLANS.put(flagName, compiled);
+    return compiled;
+  }
+
+  /** Whether the plan converts values the way a plan compiled from the schema would */
+  boolean matches(StructFlagSchema schema) {
+    if (schema == this.schema) {
+      return true;
+    }
+    final Map<String, FlagSchema> fields = schema.getSchemaMap();
+    if (fields.size() != fieldNames.length) {
+      return false;
+    }
+    for (int i = 0; i < fieldNames.length; i++) {
+      final FlagSchema field = fields.get(fieldNames[i]);
+      if (field == null || !converters[i].matches(field)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  Value convert(Struct struct) {
+    return convert(struct, (Sink) null);
+  }
+
+  /**
+   * Converts the struct, or returns null and records the error in the sink if it doesn't match the
+   * schema
+   */
+  @Nullable
+  Value convert(Struct struct, @Nullable Sink sink) {
+    final Map<String, com.google.protobuf.Value> fields = struct.getFieldsMap();
+    final Map<String, Value> values = new HashMap<>(fields.size() * 4 / 3 + 1);
+    for (int i = 0; i < fieldNames.length && values.size() < fields.size(); i++) {
+      final com.google.protobuf.Value value = fields.get(fieldNames[i]);
+      if (value != null) {
+        final Value converted = converters[i].convert(value, sink);
+        if (converted == null) {
+          return null;
+        }
+        values.put(fieldNames[i], converted);
+      }
+    }
+    if (values.size() < fields.size()) {
+      for (String field : fields.keySet()) {
+        if (!values.containsKey(field)) {
+          return EvaluationErrors.fail(
+              sink, ErrorCode.PARSE_ERROR, "Lacking schema for field '%s'", field);
+        }
+      }
+    }
+    return new Value(new MutableStructure(values));
+  }
+
+  Value convert(Struct struct, List<String> path) {
+    return convert(struct, path, null);
+  }
+
+  /**
+   * Converts the value at a path of field names into the struct, or the whole struct if the path is
+   * empty. Only the structs along the path and the value at its end are converted. Returns null and
+   * records the error in the sink if the path or value doesn't match the schema.
+   */
+  @Nullable
+  Value convert(Struct struct, List<String> path, @Nullable Sink sink) {
+    ConversionPlan plan = this;
+    Struct current = struct;
+    for (int i = 0; i < path.size(); i++) {
+      final String fieldName = path.get(i);
+      final com.google.protobuf.Value value = current.getFieldsMap().get(fieldName);
+      if (value == null) {
+        final ConversionPlan structPlan = plan;
+        final Struct structValue = current;
+        return EvaluationErrors.fail(
+            sink,
+            ErrorCode.TYPE_MISMATCH,
+            "Illegal attempt to derive non-existing field '%s' on structure value '%s'",
+            fieldName,
+            EvaluationErrors.lazy(() -> structPlan.convert(structValue).asStructure()));
+      }
+      final Converter converter = plan.convertersByName.get(fieldName);
+      if (converter == null) {
+        return EvaluationErrors.fail(
+            sink, ErrorCode.PARSE_ERROR, "Lacking schema for field '%s'", fieldName);
+      }
+      if (i == path.size() - 1) {
+        return converter.convert(value, sink);
+      }
+      if (!(converter instanceof StructConverter)
+          || value.getKindCase() != com.google.protobuf.Value.KindCase.STRUCT_VALUE) {
+        return EvaluationErrors.fail(
+            sink,
+            ErrorCode.TYPE_MISMATCH,
+            "Illegal attempt to derive field '%s' on non-structure value '%s'",
+            path.get(i + 1),
+            EvaluationErrors.lazy(() -> converter.convert(value, null)));
+      }
+      plan = ((StructConverter) converter).plan;
+      current = value.getStructValue();
+    }
+    return plan.convert(current, sink);
+  }
+
+  private static Converter converter(FlagSchema schema) {
+    switch (schema.getSchemaTypeCase()) {
+      case INT_SCHEMA:
+        return new IntConverter();
+      case DOUBLE_SCHEMA:
+        return new DoubleConverter();
+      case STRING_SCHEMA:
+        return new StringConverter();
+      case BOOL_SCHEMA:
+        return new BoolConverter();
+      case STRUCT_SCHEMA:
+        return new StructConverter(new ConversionPlan(schema.getStructSchema()));
+      case LIST_SCHEMA:
+        return new ListConverter(converter(schema.getListSchema().getElementSchema()));
+      default:
+        return new UnsetConverter();
+    }
+  }
+
+  /**
+   * Converts a value of the kind expected by the schema type, and handles null values and values
+   * that don't match the schema type
+   */
+  abstract static class Converter {
+
+    private final FlagSchema.SchemaTypeCase schemaType;
+    private final com.google.protobuf.Value.KindCase expectedKind;
+
+    Converter(
+        FlagSchema.SchemaTypeCase schemaType, com.google.protobuf.Value.KindCase expectedKind) {
+      this.schemaType = schemaType;
+      this.expectedKind = expectedKind;
+    }
+
+    /** Whether the converter was compiled from a schema like the given one */
+    boolean matches(FlagSchema schema) {
+      return schema.getSchemaTypeCase() == schemaType;
+    }
+
+    /** Converts the value, or returns null and records the error in the sink if it fails */
+    @Nullable
+    Value convert(com.google.protobuf.Value value, @Nullable Sink sink) {
+      final com.google.protobuf.Value.KindCase kind = value.getKindCase();
+      if (kind == expectedKind) {
+        return convertExpected(value, sink);
+      }
+      if (kind == com.google.protobuf.Value.KindCase.NULL_VALUE) {
+        try {
+          return new Value((Object) null);
+        } catch (InstantiationException e) {
+          throw new RuntimeException(e);
+        }
+      }
+      return mismatch(kind, sink);
+    }
+
+    @Nullable
+    abstract Value convertExpected(com.google.protobuf.Value value, @Nullable Sink sink);
+
+    @Nullable
+    private static Value mismatch(com.google.protobuf.Value.KindCase kind, @Nullable Sink sink) {
+      switch (kind) {
+        case NUMBER_VALUE:
+          return EvaluationErrors.fail(
+              sink, ErrorCode.PARSE_ERROR, "Number field must have schema type int or double");
+        case STRING_VALUE:
+          return EvaluationErrors.fail(
+              sink,
+              ErrorCode.PARSE_ERROR,
+              "%s value is a String, but it should be something else",
+              MISMATCH_PREFIX);
+        case BOOL_VALUE:
+          return EvaluationErrors.fail(
+              sink,
+              ErrorCode.PARSE_ERROR,
+              "%s value is a bool, but should be something else",
+              MISMATCH_PREFIX);
+        case STRUCT_VALUE:
+          return EvaluationErrors.fail(
+              sink,
+              ErrorCode.PARSE_ERROR,
+              "%s value is a struct, but should be something else",
+              MISMATCH_PREFIX);
+        case LIST_VALUE:
+          return EvaluationErrors.fail(
+              sink,
+              ErrorCode.PARSE_ERROR,
+              "%s value is a list, but should be something else",
+              MISMATCH_PREFIX);
+        case KIND_NOT_SET:
+          return EvaluationErrors.fail(
+              sink, ErrorCode.PARSE_ERROR, "kind not set in com.google.protobuf.Value");
+        default:
+          return EvaluationErrors.fail(sink, ErrorCode.PARSE_ERROR, "Unknown value type");
+      }
+    }
+  }
+
+  static final class IntConverter extends Converter {
+
+    IntConverter() {
+      super(FlagSchema.SchemaTypeCase.INT_SCHEMA, com.google.protobuf.Value.KindCase.NUMBER_VALUE);
+    }
+
+    @Override
+    Value convertExpected(com.google.protobuf.Value value, @Nullable Sink sink) {
+      final int intVal = (int) value.getNumberValue();
+      if (intVal != value.getNumberValue()) {
+        return EvaluationErrors.fail(
+            sink,
+            ErrorCode.PARSE_ERROR,
+            "%s value should be an int, but it is a double/long",
+            MISMATCH_PREFIX);
+      }
+      return new Value(intVal);
+    }
+  }
+
+  static final class DoubleConverter extends Converter {
+
+    DoubleConverter() {
+      super(
+          FlagSchema.SchemaTypeCase.DOUBLE_SCHEMA, com.google.protobuf.Value.KindCase.NUMBER_VALUE);
+    }
+
+    @Override
+    Value convertExpected(com.google.protobuf.Value value, @Nullable Sink sink) {
+      return new Value(value.getNumberValue());
+    }
+  }
+
+  static final class StringConverter extends Converter {
+
+    StringConverter() {
+      super(
+          FlagSchema.SchemaTypeCase.STRING_SCHEMA, com.google.protobuf.Value.KindCase.STRING_VALUE);
+    }
+
+    @Override
+    Value convertExpected(com.google.protobuf.Value value, @Nullable Sink sink) {
+      return new Value(value.getStringValue());
+    }
+  }
+
+  static final class BoolConverter extends Converter {
+
+    BoolConverter() {
+      super(FlagSchema.SchemaTypeCase.BOOL_SCHEMA, com.google.protobuf.Value.KindCase.BOOL_VALUE);
+    }
+
+    @Override
+    Value convertExpected(com.google.protobuf.Value value, @Nullable Sink sink) {
+      return new Value(value.getBoolValue());
+    }
+  }
+
+  static final class StructConverter extends Converter {
+
+    private final ConversionPlan plan;
+
+    StructConverter(ConversionPlan plan) {
+      super(
+          FlagSchema.SchemaTypeCase.STRUCT_SCHEMA, com.google.protobuf.Value.KindCase.STRUCT_VALUE);
+      this.plan = plan;
+    }
+
+    @Override
+    boolean matches(FlagSchema schema) {
+      return super.matches(schema) && plan.matches(schema.getStructSchema());
+    }
+
+    @Override
+    @Nullable
+    Value convertExpected(com.google.protobuf.Value value, @Nullable Sink sink) {
+      return plan.convert(value.getStructValue(), sink);
+    }
+  }
+
+  static final class ListConverter extends Converter {
+
+    private final Converter elements;
+
+    ListConverter(Converter elements) {
+      super(FlagSchema.SchemaTypeCase.LIST_SCHEMA, com.google.protobuf.Value.KindCase.LIST_VALUE);
+      this.elements = elements;
+    }
+
+    @Override
+    boolean matches(FlagSchema schema) {
+      return super.matches(schema) && elements.matches(schema.getListSchema().getElementSchema());
+    }
+
+    @Override
+    @Nullable
+    Value convertExpected(com.google.protobuf.Value value, @Nullable Sink sink) {
+      final List<com.google.protobuf.Value> values = value.getListValue().getValuesList();
+      final List<Value> mapped = new ArrayList<>(values.size());
+      for (com.google.protobuf.Value element : values) {
+        final Value converted = elements.convert(element, sink);
+        if (converted == null) {
+          return null;
+        }
+        mapped.add(converted);
+      }
+      return new Value(mapped);
+    }
+  }
+
+  /** A field whose schema has no type, which fails for every value */
+  static final class UnsetConverter extends Converter {
+
+    UnsetConverter() {
+      super(
+          FlagSchema.SchemaTypeCase.SCHEMATYPE_NOT_SET,
+          com.google.protobuf.Value.KindCase.KIND_NOT_SET);
+    }
+
+    @Override
+    @Nullable
+    Value convert(com.google.protobuf.Value value, @Nullable Sink sink) {
+      return convertExpected(value, sink);
+    }
+
+    @Override
+    @Nullable
+    Value convertExpected(com.google.protobuf.Value value, @Nullable Sink sink) {
+      return EvaluationErrors.fail(sink, ErrorCode.PARSE_ERROR, "schemaType not set in FlagSchema");
+    }
+  }
+}
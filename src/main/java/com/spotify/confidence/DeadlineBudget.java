@@ -0,0 +1,92 @@
+package com.spotify.confidence;
+
+import io.grpc.Context;
+import io.grpc.Deadline;
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * A total time budget shared by the flag evaluations made while handling one inbound request.
+ * Evaluations made inside {@link #run(Runnable)} or {@link #call(Callable)} resolve flags with a
+ * deadline of at most the remaining budget, and once the budget is spent they are served from
+ * prefetched, cached or previously resolved flags without calling the resolver, or fail like a
+ * resolve that exceeded its deadline.
+ *
+ * <p>The budget applies to the evaluations made on the thread that runs the task; it is not passed
+ * on to other threads.
+ */
+public final class DeadlineBudget {
+
+  private static final Context.Key<DeadlineBudget> CURRENT =
+      Context.key("confidence-deadline-budget");
+
+  private final Deadline deadline;
+
+  private DeadlineBudget(Deadline deadline) {
+    this.deadline = deadline;
+  }
+
+  /**
+   * Starts a budget that is spent after the given duration.
+   *
+   * @param budget total time of the evaluations
+   * @return a budget that starts now
+   */
+  public static DeadlineBudget start(Duration budget) {
+    if (budget.isNegative()) {
+      throw new IllegalArgumentException("budget must not be negative.");
+    }
+    return new DeadlineBudget(Deadline.after(budget.toNanos(), TimeUnit.NANOSECONDS));
+  }
+
+  /**
+   * Runs the task with this budget for its flag evaluations.
+   *
+   * @param task task that evaluates flags
+   */
+  public void run(Runnable task) {
+    Context.current().withValue(CURRENT, this).run(task);
+  }
+
+  /**
+   * Calls the task with this budget for its flag evaluations.
+   *
+   * @param task task that evaluates flags
+   * @param <T> result type of the task
+   * @return the result of the task
+   * @throws Exception if the task throws
+   */
+  public <T> T call(Callable<T> task) throws Exception {
+    return Context.current().withValue(CURRENT, this).call(task);
+  }
+
+  /**
+   * Returns whether the budget is spent.
+   *
+   * @return true if no time is left
+   */
+  public boolean isExpired() {
+    return deadline.isExpired();
+  }
+
+  /**
+   * Returns the time left of the budget.
+   *
+   * @return the remaining time, or zero if the budget is spent
+   */
+  public Duration remaining() {
+    return Duration.ofNanos(Math.max(0, deadline.timeRemaining(TimeUnit.NANOSECONDS)));
+  }
+
+  Deadline deadline() {
+    return deadline;
+  }
+
+  /** Returns the budget of the current evaluations, or null if they have none */
+  @Nullable
+  static DeadlineBudget current() {
+    return CURRENT.get();
+  }
+}
@@ -0,0 +1,117 @@
+package com.spotify.confidence;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.protobuf.Struct;
+import com.google.protobuf.util.Values;
+import dev.openfeature.sdk.EvaluationContext;
+import dev.openfeature.sdk.ImmutableContext;
+import dev.openfeature.sdk.Value;
+import io.grpc.netty.shaded.io.netty.util.internal.StringUtil;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import javax.annotation.Nullable;
+
+/**
+ * Converts evaluation contexts into the {@link Struct} sent to the resolver. Conversions of {@link
+ * ImmutableContext}s are remembered by content. An ImmutableContext copies its structures into
+ * immutable ones and only hands out copies of its values, but it copies a list element by element
+ * without copying what the elements hold, so a structure or list inside a list is still shared with
+ * whoever created the context. A fingerprint can't change afterwards only if there is none, so
+ * contexts with such lists are converted every time, like contexts of other types, which may be
+ * mutated between evaluations.
+ *
+ * <p>Equal but distinct contexts, such as the context that the OpenFeature client merges for every
+ * evaluation, share one conversion. The resolve cache, the batcher and the prefetched snapshots key
+ * on that Struct rather than on the fingerprint, since it is what they send and protobuf memoizes
+ * its hash code, so a lookup with a shared Struct is as cheap as one with a fingerprint would be.
+ */
+final class EvaluationContextConverter {
+
+  private final Cache<ContextFingerprint, Struct> byContent;
+
+  EvaluationContextConverter(int maxContexts) {
+    this.byContent = CacheBuilder.newBuilder().maximumSize(maxContexts).build();
+  }
+
+  Struct convert(EvaluationContext ctx) {
+    final String targetingKey = ctx.getTargetingKey();
+    // a copy for an ImmutableContext, whose values can't be reached or changed by anyone else
+    final Map<String, Value> attributes = ctx.asMap();
+    if (!(ctx instanceof ImmutableContext) || !isImmutable(attributes.values())) {
+      return toStruct(targetingKey, attributes);
+    }
+    final ContextFingerprint fingerprint = new ContextFingerprint(targetingKey, attributes);
+    Struct struct = byContent.getIfPresent(fingerprint);
+    if (struct == null) {
+      struct = toStruct(targetingKey, attributes);
+      byContent.put(fingerprint, struct);
+    }
+    return struct;
+  }
+
+  /** Returns whether the values hold no list with structures or lists in it */
+  private static boolean isImmutable(Collection<Value> values) {
+    for (Value value : values) {
+      if (value.isList()) {
+        for (Value element : value.asList()) {
+          if (element.isStructure() || element.isList()) {
+            return false;
+          }
+        }
+      } else if (value.isStructure() && !isImmutable(value.asStructure().asMap().values())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static Struct toStruct(@Nullable String targetingKey, Map<String, Value> attributes) {
+    final Struct.Builder evaluationContext = Struct.newBuilder();
+    attributes.forEach(
+        (mapKey, mapValue) -> evaluationContext.putFields(mapKey, TypeMapper.from(mapValue)));
+
+    // add targeting key as a regular value to proto struct
+    if (!StringUtil.isNullOrEmpty(targetingKey)) {
+      evaluationContext.putFields(ConfidenceFeatureProvider.TARGETING_KEY, Values.of(targetingKey));
+    }
+    return evaluationContext.build();
+  }
+
+  /**
+   * The targeting key and attributes of an immutable context. Values compare and hash their nested
+   * structures and lists deeply, and the hash is computed once.
+   */
+  private static final class ContextFingerprint {
+
+    @Nullable private final String targetingKey;
+    private final Map<String, Value> attributes;
+    private final int hash;
+
+    ContextFingerprint(@Nullable String targetingKey, Map<String, Value> attributes) {
+      this.targetingKey = targetingKey;
+      this.attributes = attributes;
+      this.hash = 31 * Objects.hashCode(targetingKey) + attributes.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof ContextFingerprint)) {
+        return false;
+      }
+      final ContextFingerprint other = (ContextFingerprint) o;
+      return hash == other.hash
+          && Objects.equals(targetingKey, other.targetingKey)
+          && attributes.equals(other.attributes);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+}
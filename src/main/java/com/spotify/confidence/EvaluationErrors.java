@@ -0,0 +1,191 @@
+package com.spotify.confidence;
+
+import dev.openfeature.sdk.ErrorCode;
+import dev.openfeature.sdk.ProviderEvaluation;
+import dev.openfeature.sdk.Reason;
+import dev.openfeature.sdk.exceptions.FlagNotFoundError;
+import dev.openfeature.sdk.exceptions.GeneralError;
+import dev.openfeature.sdk.exceptions.OpenFeatureError;
+import dev.openfeature.sdk.exceptions.ParseError;
+import dev.openfeature.sdk.exceptions.TypeMismatchError;
+import java.util.function.Supplier;
+import javax.annotation.Nullable;
+
+/**
+ * Errors of evaluations that fail in ordinary ways, such as a missing flag, a value of the wrong
+ * type or an unavailable backend. Code that can fail in these ways takes a nullable {@link Sink}:
+ * without one the error is thrown, and with one it is recorded in the sink and the failing method
+ * returns null, so that the evaluation can be returned as an error evaluation without throwing.
+ * Thrown errors have no stack trace, since they are created for every failing evaluation and always
+ * originate in the provider, and their messages are only formatted when read.
+ */
+final class EvaluationErrors {
+
+  private EvaluationErrors() {}
+
+  static FlagNotFoundError flagNotFound(String format, Object... arguments) {
+    return new FlagNotFound(format, arguments);
+  }
+
+  static TypeMismatchError typeMismatch(String format, Object... arguments) {
+    return new TypeMismatch(format, arguments);
+  }
+
+  static GeneralError generalError(String format, Object... arguments) {
+    return new General(format, arguments);
+  }
+
+  /**
+   * Throws the error if there is no sink, and otherwise records it in the sink and returns null
+   *
+   * @param sink receives the error instead of it being thrown, or null
+   * @param errorCode the kind of error, which is FLAG_NOT_FOUND, TYPE_MISMATCH, PARSE_ERROR or
+   *     GENERAL
+   * @param format format of the error message
+   * @param arguments arguments of the message
+   * @return null, if the error is recorded in the sink
+   */
+  @Nullable
+  static <T> T fail(@Nullable Sink sink, ErrorCode errorCode, String format, Object... arguments) {
+    if (sink == null) {
+      throw error(errorCode, format, arguments);
+    }
+    sink.errorCode = errorCode;
+    sink.format = format;
+    sink.arguments = arguments;
+    return null;
+  }
+
+  private static OpenFeatureError error(ErrorCode errorCode, String format, Object[] arguments) {
+    switch (errorCode) {
+      case FLAG_NOT_FOUND:
+        return new FlagNotFound(format, arguments);
+      case TYPE_MISMATCH:
+        return new TypeMismatch(format, arguments);
+      case PARSE_ERROR:
+        return new Parse(format, arguments);
+      default:
+        return new General(format, arguments);
+    }
+  }
+
+  /** Returns a message argument that is only computed if the message is formatted */
+  static Object lazy(Supplier<?> argument) {
+    return new Object() {
+      @Override
+      public String toString() {
+        return String.valueOf(argument.get());
+      }
+    };
+  }
+
+  private static String format(String format, Object[] arguments) {
+    return arguments.length == 0 ? format : String.format(format, arguments);
+  }
+
+  /** Receives the error of a failed evaluation instead of it being thrown */
+  static final class Sink {
+
+    @Nullable private ErrorCode errorCode;
+    private String format;
+    private Object[] arguments;
+
+    /** Returns the evaluation of the default value with the recorded error */
+    <T> ProviderEvaluation<T> evaluation(T defaultValue) {
+      return ProviderEvaluation.<T>builder()
+          .value(defaultValue)
+          .reason(Reason.ERROR.toString())
+          .errorCode(errorCode)
+          .errorMessage(format(format, arguments))
+          .build();
+    }
+  }
+
+  private static final class FlagNotFound extends FlagNotFoundError {
+
+    private static final long serialVersionUID = 1L;
+    private final String format;
+    private final Object[] arguments;
+
+    private FlagNotFound(String format, Object[] arguments) {
+      this.format = format;
+      this.arguments = arguments;
+    }
+
+    @Override
+    public String getMessage() {
+      return format(format, arguments);
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+      return this;
+    }
+  }
+
+  private static final class TypeMismatch extends TypeMismatchError {
+
+    private static final long serialVersionUID = 1L;
+    private final String format;
+    private final Object[] arguments;
+
+    private TypeMismatch(String format, Object[] arguments) {
+      this.format = format;
+      this.arguments = arguments;
+    }
+
+    @Override
+    public String getMessage() {
+      return format(format, arguments);
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+      return this;
+    }
+  }
+
+  private static final class Parse extends ParseError {
+
+    private static final long serialVersionUID = 1L;
+    private final String format;
+    private final Object[] arguments;
+
+    private Parse(String format, Object[] arguments) {
+      this.format = format;
+      this.arguments = arguments;
+    }
+
+    @Override
+    public String getMessage() {
+      return format(format, arguments);
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+      return this;
+    }
+  }
+
+  private static final class General extends GeneralError {
+
+    private static final long serialVersionUID = 1L;
+    private final String format;
+    private final Object[] arguments;
+
+    private General(String format, Object[] arguments) {
+      this.format = format;
+      this.arguments = arguments;
+    }
+
+    @Override
+    public String getMessage() {
+      return format(format, arguments);
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+      return this;
+    }
+  }
+}
@@ -0,0 +1,36 @@
+package com.spotify.confidence;
+
+import com.google.protobuf.Struct;
+
+/**
+ * The evaluation context of a single resolve, together with the results of the shared criteria that
+ * have been evaluated so far. A scope is used by one thread at a time.
+ */
+final class EvaluationScope {
+
+  private static final byte UNKNOWN = 0;
+  private static final byte MATCH = 1;
+  private static final byte NO_MATCH = 2;
+
+  private final Struct context;
+  private final byte[] results;
+
+  EvaluationScope(Struct context, int sharedCriteria) {
+    this.context = context;
+    this.results = new byte[sharedCriteria];
+  }
+
+  Struct context() {
+    return context;
+  }
+
+  boolean test(int slot, TargetingPredicate predicate) {
+    final byte result = results[slot];
+    if (result != UNKNOWN) {
+      return result == MATCH;
+    }
+    final boolean matches = predicate.test(this);
+    results[slot] = matches ? MATCH : NO_MATCH;
+    return matches;
+  }
+}
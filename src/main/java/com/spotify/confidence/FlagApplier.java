@@ -0,0 +1,290 @@
+package com.spotify.confidence;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Timestamp;
+import com.spotify.confidence.flags.resolver.v1.AppliedFlag;
+import com.spotify.confidence.flags.resolver.v1.ApplyFlagsRequest;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Buffers flag applies and sends them in batches, so that resolves can be made with apply set to
+ * false and exposure is only recorded for the flags that actually get evaluated. Each flag is
+ * applied once per resolve token. The buffer is flushed every flush interval, and as soon as it
+ * holds a full batch. Flushes are timed by the scheduler and run on the dispatcher. Applies that
+ * are dropped or fail to be sent are forgotten, so that the next evaluation of the flag applies it.
+ * With the {@link ApplyBackpressurePolicy#BLOCK} policy, only callers that may block wait for room
+ * in the buffer, the others drop the oldest pending apply.
+ */
+class FlagApplier {
+
+  // upper bound of remembered (resolve token, flag) pairs, the least recently applied are forgotten
+  private static final int MAX_DEDUPLICATION_ENTRIES = 100_000;
+
+  private final int capacity;
+  private final int batchSize;
+  private final ApplyBackpressurePolicy backpressurePolicy;
+  private final ApplyFlagsRequest requestPrototype;
+  private final Function<ApplyFlagsRequest, CompletableFuture<?>> sender;
+  private final Executor dispatcher;
+  private final Clock clock;
+
+  private final Queue<PendingApply> buffer = new ConcurrentLinkedQueue<>();
+  // permits are the free slots of the buffer
+  private final Semaphore freeSlots;
+  private final Cache<ApplyKey, Boolean> applied =
+      CacheBuilder.newBuilder().maximumSize(MAX_DEDUPLICATION_ENTRIES).build();
+  private final AtomicBoolean flushScheduled = new AtomicBoolean();
+  private final Set<CompletableFuture<?>> inFlight = ConcurrentHashMap.newKeySet();
+
+  private final LongAdder sent = new LongAdder();
+  private final LongAdder dropped = new LongAdder();
+  private final LongAdder failed = new LongAdder();
+
+  FlagApplier(
+      int capacity,
+      int batchSize,
+      Duration flushInterval,
+      ApplyBackpressurePolicy backpressurePolicy,
+      ApplyFlagsRequest requestPrototype,
+      Function<ApplyFlagsRequest, CompletableFuture<?>> sender,
+      ScheduledExecutorService scheduler,
+      Executor dispatcher,
+      Clock clock) {
+    this.capacity = capacity;
+    this.batchSize = batchSize;
+    this.backpressurePolicy = backpressurePolicy;
+    this.requestPrototype = requestPrototype;
+    this.sender = sender;
+    this.dispatcher = dispatcher;
+    this.clock = clock;
+    this.freeSlots = new Semaphore(capacity);
+    final long intervalNanos = flushInterval.toNanos();
+    scheduler.scheduleWithFixedDelay(
+        () -> dispatcher.execute(this::flush), intervalNanos, intervalNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /** Queues an apply of the flag, unless it was already applied for the resolve token */
+  void apply(ByteString resolveToken, String requestFlagName) {
+    apply(resolveToken, requestFlagName, true);
+  }
+
+  /**
+   * Queues an apply of the flag, unless it was already applied for the resolve token. If the buffer
+   * is full and the caller may not block, such as a gRPC or executor thread that completes an
+   * asynchronous evaluation, the oldest pending apply is dropped whatever the policy.
+   */
+  void apply(ByteString resolveToken, String requestFlagName, boolean mayBlock) {
+    if (applied.asMap().putIfAbsent(new ApplyKey(resolveToken, requestFlagName), true) != null) {
+      return;
+    }
+
+    if (!freeSlots.tryAcquire()) {
+      if (backpressurePolicy == ApplyBackpressurePolicy.BLOCK && mayBlock) {
+        requestFlush();
+        try {
+          freeSlots.acquire();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          drop(resolveToken, requestFlagName);
+          return;
+        }
+      } else {
+        final PendingApply oldest = buffer.poll();
+        if (oldest != null) {
+          // reuse the slot of the dropped apply
+          drop(oldest.resolveToken, oldest.requestFlagName);
+        } else if (!freeSlots.tryAcquire()) {
+          // the slots are taken by concurrent applies that are still queueing, and evaluations
+          // must not wait for them
+          drop(resolveToken, requestFlagName);
+          return;
+        }
+      }
+    }
+
+    final Instant now = clock.instant();
+    buffer.add(new PendingApply(resolveToken, requestFlagName, toTimestamp(now)));
+    if (capacity - freeSlots.availablePermits() >= batchSize) {
+      requestFlush();
+    }
+  }
+
+  /** Sends all pending applies, and returns a future that completes when they have been sent */
+  CompletableFuture<Void> flush() {
+    final List<CompletableFuture<?>> sends = new ArrayList<>();
+    List<PendingApply> batch = drain();
+    while (!batch.isEmpty()) {
+      sends.addAll(send(batch));
+      batch = drain();
+    }
+    return CompletableFuture.allOf(sends.toArray(new CompletableFuture<?>[0]));
+  }
+
+  /** Flushes the pending applies and waits for all sends, up to the given timeout */
+  void close(Duration timeout) {
+    flush();
+    final CompletableFuture<Void> all =
+        CompletableFuture.allOf(inFlight.toArray(new CompletableFuture<?>[0]));
+    try {
+      all.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException | TimeoutException e) {
+      // failed sends are already counted, and there is nothing left to do when shutting down
+    }
+  }
+
+  ApplyStats stats() {
+    return new ApplyStats(sent.sum(), dropped.sum(), failed.sum());
+  }
+
+  /** Counts the dropped apply and forgets it, so that it is queued again if evaluated again */
+  private void drop(ByteString resolveToken, String requestFlagName) {
+    dropped.increment();
+    applied.invalidate(new ApplyKey(resolveToken, requestFlagName));
+  }
+
+  private void requestFlush() {
+    if (flushScheduled.compareAndSet(false, true)) {
+      dispatcher.execute(
+          () -> {
+            flushScheduled.set(false);
+            flush();
+          });
+    }
+  }
+
+  private List<PendingApply> drain() {
+    final List<PendingApply> batch = new ArrayList<>(batchSize);
+    while (batch.size() < batchSize) {
+      final PendingApply pending = buffer.poll();
+      if (pending == null) {
+        break;
+      }
+      batch.add(pending);
+    }
+    freeSlots.release(batch.size());
+    return batch;
+  }
+
+  private List<CompletableFuture<?>> send(List<PendingApply> batch) {
+    // an apply request carries a single resolve token
+    final Map<ByteString, List<AppliedFlag>> byToken = new LinkedHashMap<>();
+    for (PendingApply pending : batch) {
+      byToken
+          .computeIfAbsent(pending.resolveToken, token -> new ArrayList<>())
+          .add(
+              AppliedFlag.newBuilder()
+                  .setFlag(pending.requestFlagName)
+                  .setApplyTime(pending.applyTime)
+                  .build());
+    }
+
+    final Timestamp sendTime = toTimestamp(clock.instant());
+    final List<CompletableFuture<?>> sends = new ArrayList<>(byToken.size());
+    byToken.forEach(
+        (resolveToken, appliedFlags) -> {
+          CompletableFuture<?> future;
+          try {
+            future =
+                sender.apply(
+                    requestPrototype.toBuilder()
+                        .setResolveToken(resolveToken)
+                        .addAllFlags(appliedFlags)
+                        .setSendTime(sendTime)
+                        .build());
+          } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+          }
+          final CompletableFuture<?> tracked =
+              future.whenComplete(
+                  (response, throwable) -> {
+                    if (throwable == null) {
+                      sent.add(appliedFlags.size());
+                      return;
+                    }
+                    failed.add(appliedFlags.size());
+                    // the exposure isn't recorded, so the next evaluation applies the flags again
+                    for (AppliedFlag appliedFlag : appliedFlags) {
+                      applied.invalidate(new ApplyKey(resolveToken, appliedFlag.getFlag()));
+                    }
+                  });
+          inFlight.add(tracked);
+          tracked.whenComplete((response, throwable) -> inFlight.remove(tracked));
+          sends.add(tracked);
+        });
+    return sends;
+  }
+
+  private static Timestamp toTimestamp(Instant instant) {
+    return Timestamp.newBuilder()
+        .setSeconds(instant.getEpochSecond())
+        .setNanos(instant.getNano())
+        .build();
+  }
+
+  private static final class PendingApply {
+
+    private final ByteString resolveToken;
+    private final String requestFlagName;
+    private final Timestamp applyTime;
+
+    PendingApply(ByteString resolveToken, String requestFlagName, Timestamp applyTime) {
+      this.resolveToken = resolveToken;
+      this.requestFlagName = requestFlagName;
+      this.applyTime = applyTime;
+    }
+  }
+
+  private static final class ApplyKey {
+
+    private final ByteString resolveToken;
+    private final String requestFlagName;
+
+    ApplyKey(ByteString resolveToken, String requestFlagName) {
+      this.resolveToken = resolveToken;
+      this.requestFlagName = requestFlagName;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof ApplyKey)) {
+        return false;
+      }
+      final ApplyKey other = (ApplyKey) o;
+      return resolveToken.equals(other.resolveToken)
+          && requestFlagName.equals(other.requestFlagName);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(resolveToken, requestFlagName);
+    }
+  }
+}
@@ -0,0 +1,42 @@
+package com.spotify.confidence;
+
+import com.google.protobuf.Struct;
+
+/** Identifies the resolve of a single flag for an evaluation context */
+final class FlagKey {
+
+  private final String flag;
+  private final Struct context;
+  private final int hash;
+
+  FlagKey(String flag, Struct context) {
+    this.flag = flag;
+    this.context = context;
+    this.hash = 31 * flag.hashCode() + context.hashCode();
+  }
+
+  String getFlag() {
+    return flag;
+  }
+
+  Struct getContext() {
+    return context;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof FlagKey)) {
+      return false;
+    }
+    final FlagKey other = (FlagKey) o;
+    return hash == other.hash && flag.equals(other.flag) && context.equals(other.context);
+  }
+
+  @Override
+  public int hashCode() {
+    return hash;
+  }
+}
@@ -0,0 +1,97 @@
+package com.spotify.confidence;
+
+import com.google.protobuf.ByteString;
+import com.spotify.confidence.flags.resolver.v1.ResolvedFlag;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.annotation.Nullable;
+
+/** A resolved flag together with the token of the resolve it came from, needed to apply it */
+final class FlagResolution {
+
+  private final ResolvedFlag resolvedFlag;
+  private final ByteString resolveToken;
+  // when the flag was resolved, in milliseconds since the epoch
+  private final long resolveTimeMillis;
+  private final boolean stale;
+  // set for flags that were resolved without applying them, until the flag is applied
+  @Nullable private final AtomicBoolean unapplied;
+  // the plan that converts the flag value, looked up when the flag is first evaluated
+  @Nullable private volatile ConversionPlan conversionPlan;
+
+  FlagResolution(ResolvedFlag resolvedFlag, ByteString resolveToken) {
+    this(resolvedFlag, resolveToken, System.currentTimeMillis());
+  }
+
+  /** Returns the resolution of a flag that was resolved at the given time, such as a loaded one */
+  FlagResolution(ResolvedFlag resolvedFlag, ByteString resolveToken, long resolveTimeMillis) {
+    this(resolvedFlag, resolveToken, resolveTimeMillis, false, null);
+  }
+
+  private FlagResolution(
+      ResolvedFlag resolvedFlag,
+      ByteString resolveToken,
+      long resolveTimeMillis,
+      boolean stale,
+      @Nullable AtomicBoolean unapplied) {
+    this.resolvedFlag = resolvedFlag;
+    this.resolveToken = resolveToken;
+    this.resolveTimeMillis = resolveTimeMillis;
+    this.stale = stale;
+    this.unapplied = unapplied;
+  }
+
+  /** Returns the resolution of a flag that was resolved with apply set to false */
+  static FlagResolution unapplied(ResolvedFlag resolvedFlag, ByteString resolveToken) {
+    return new FlagResolution(
+        resolvedFlag, resolveToken, System.currentTimeMillis(), false, new AtomicBoolean(true));
+  }
+
+  ResolvedFlag getResolvedFlag() {
+    return resolvedFlag;
+  }
+
+  ByteString getResolveToken() {
+    return resolveToken;
+  }
+
+  /** Returns when the flag was resolved, in milliseconds since the epoch */
+  long getResolveTimeMillis() {
+    return resolveTimeMillis;
+  }
+
+  /** Whether the resolution may be outdated, such as one loaded from a persisted snapshot */
+  boolean isStale() {
+    return stale;
+  }
+
+  FlagResolution asStale() {
+    if (stale) {
+      return this;
+    }
+    final FlagResolution staleResolution =
+        new FlagResolution(resolvedFlag, resolveToken, resolveTimeMillis, true, unapplied);
+    staleResolution.conversionPlan = conversionPlan;
+    return staleResolution;
+  }
+
+  /**
+   * Returns the plan that converts the flag value, so that evaluations of a cached, prefetched or
+   * batched resolution don't look it up again
+   */
+  ConversionPlan conversionPlan() {
+    ConversionPlan plan = conversionPlan;
+    if (plan == null) {
+      plan = ConversionPlan.forFlag(resolvedFlag.getFlag(), resolvedFlag.getFlagSchema());
+      conversionPlan = plan;
+    }
+    return plan;
+  }
+
+  /**
+   * Returns true to the first caller if the flag was resolved without applying it, in which case
+   * the caller applies it
+   */
+  boolean claimApply() {
+    return unapplied != null && unapplied.compareAndSet(true, false);
+  }
+}
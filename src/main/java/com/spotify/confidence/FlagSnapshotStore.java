@@ -0,0 +1,113 @@
+package com.spotify.confidence;
+
+import com.google.protobuf.Struct;
+import com.spotify.confidence.flags.resolver.v1.ResolveFlagsResponse;
+import com.spotify.confidence.flags.resolver.v1.ResolvedFlag;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+import javax.annotation.Nullable;
+
+/**
+ * Holds the prefetched resolve responses, one snapshot per evaluation context. A snapshot either
+ * covers a given set of flags, or all flags when it was fetched without naming any flags. The flags
+ * are resolved with apply set to false, so each one is applied when it is first evaluated.
+ */
+class FlagSnapshotStore {
+
+  private final int maxContexts;
+  private final long ttlNanos;
+  private final LongSupplier nanoTime;
+
+  private final ConcurrentHashMap<Struct, FlagSnapshot> snapshots = new ConcurrentHashMap<>();
+  private final Queue<FlagSnapshot> writeOrder = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger writeOrderSize = new AtomicInteger();
+
+  FlagSnapshotStore(int maxContexts, Duration ttl) {
+    this(maxContexts, ttl, System::nanoTime);
+  }
+
+  FlagSnapshotStore(int maxContexts, Duration ttl, LongSupplier nanoTime) {
+    this.maxContexts = maxContexts;
+    this.ttlNanos = ttl.toNanos();
+    this.nanoTime = nanoTime;
+  }
+
+  /** Returns the live snapshot of the context, or null if nothing has been prefetched for it */
+  @Nullable
+  FlagSnapshot get(Struct context) {
+    if (snapshots.isEmpty()) {
+      return null;
+    }
+    final FlagSnapshot snapshot = snapshots.get(context);
+    if (snapshot == null) {
+      return null;
+    }
+    if (nanoTime.getAsLong() - snapshot.expiresAtNanos >= 0) {
+      snapshots.remove(context, snapshot);
+      return null;
+    }
+    return snapshot;
+  }
+
+  void put(Struct context, ResolveFlagsResponse response, boolean allFlags) {
+    final FlagSnapshot snapshot =
+        new FlagSnapshot(context, response, allFlags, nanoTime.getAsLong() + ttlNanos);
+    snapshots.put(context, snapshot);
+    writeOrder.add(snapshot);
+    writeOrderSize.incrementAndGet();
+    // the queue also references replaced snapshots, so it is kept within twice the maximum size
+    while (snapshots.size() > maxContexts || writeOrderSize.get() > maxContexts * 2) {
+      final FlagSnapshot oldest = writeOrder.poll();
+      if (oldest == null) {
+        return;
+      }
+      writeOrderSize.decrementAndGet();
+      snapshots.remove(oldest.context, oldest);
+    }
+  }
+
+  void remove(Struct context) {
+    snapshots.remove(context);
+  }
+
+  static final class FlagSnapshot {
+
+    private final Struct context;
+    private final Map<String, FlagResolution> flags;
+    private final boolean allFlags;
+    private final long expiresAtNanos;
+
+    private FlagSnapshot(
+        Struct context, ResolveFlagsResponse response, boolean allFlags, long expiresAtNanos) {
+      this.context = context;
+      this.allFlags = allFlags;
+      this.expiresAtNanos = expiresAtNanos;
+      this.flags = new HashMap<>(response.getResolvedFlagsCount() * 2);
+      for (ResolvedFlag resolvedFlag : response.getResolvedFlagsList()) {
+        flags.put(
+            resolvedFlag.getFlag(),
+            FlagResolution.unapplied(resolvedFlag, response.getResolveToken()));
+      }
+    }
+
+    /** Returns the resolved flag, or null if the flag is not part of the snapshot */
+    @Nullable
+    FlagResolution get(String requestFlagName) {
+      return flags.get(requestFlagName);
+    }
+
+    /**
+     * Whether the snapshot was fetched for all flags, in which case a missing flag means that no
+     * such active flag exists.
+     */
+    boolean coversAllFlags() {
+      return allFlags;
+    }
+  }
+}
@@ -0,0 +1,48 @@
+package com.spotify.confidence;
+
+/** Point-in-time counters of the hedging of resolves in {@link ConfidenceFeatureProvider} */
+public final class HedgeStats {
+
+  static final HedgeStats EMPTY = new HedgeStats(0, 0, 0, 0);
+
+  private final long resolveCount;
+  private final long hedgeCount;
+  private final long hedgeWinCount;
+  private final long throttledCount;
+
+  HedgeStats(long resolveCount, long hedgeCount, long hedgeWinCount, long throttledCount) {
+    this.resolveCount = resolveCount;
+    this.hedgeCount = hedgeCount;
+    this.hedgeWinCount = hedgeWinCount;
+    this.throttledCount = throttledCount;
+  }
+
+  /** Number of resolve calls that could be hedged */
+  public long getResolveCount() {
+    return resolveCount;
+  }
+
+  /** Number of hedged requests that were sent because the first attempt was slow */
+  public long getHedgeCount() {
+    return hedgeCount;
+  }
+
+  /**
+   * Number of hedged requests whose response was used, after which the first attempt is cancelled
+   */
+  public long getHedgeWinCount() {
+    return hedgeWinCount;
+  }
+
+  /** Number of hedged requests that were not sent because the hedge rate was at its maximum */
+  public long getThrottledCount() {
+    return throttledCount;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "HedgeStats{resolveCount=%d, hedgeCount=%d, hedgeWinCount=%d, throttledCount=%d}",
+        resolveCount, hedgeCount, hedgeWinCount, throttledCount);
+  }
+}
@@ -0,0 +1,37 @@
+package com.spotify.confidence;
+
+import com.spotify.confidence.flags.resolver.v1.ApplyFlagsRequest;
+import com.spotify.confidence.flags.resolver.v1.ApplyFlagsResponse;
+import com.spotify.confidence.flags.resolver.v1.FlagResolverServiceGrpc.FlagResolverServiceImplBase;
+import com.spotify.confidence.flags.resolver.v1.ResolveFlagsRequest;
+import com.spotify.confidence.flags.resolver.v1.ResolveFlagsResponse;
+import io.grpc.stub.StreamObserver;
+
+/**
+ * A stand-in for the Confidence resolver service that resolves flags with a {@link LocalResolver}.
+ * It can be served from a local or in-process gRPC server, for example in tests or in environments
+ * without access to the Confidence backend. Applied flags are acknowledged and discarded.
+ */
+public class LocalFlagResolverService extends FlagResolverServiceImplBase {
+
+  private final LocalResolver resolver;
+
+  public LocalFlagResolverService(LocalResolver resolver) {
+    this.resolver = resolver;
+  }
+
+  @Override
+  public void resolveFlags(
+      ResolveFlagsRequest request, StreamObserver<ResolveFlagsResponse> responseObserver) {
+    responseObserver.onNext(
+        resolver.resolve(request.getEvaluationContext(), request.getFlagsList()));
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void applyFlags(
+      ApplyFlagsRequest request, StreamObserver<ApplyFlagsResponse> responseObserver) {
+    responseObserver.onNext(ApplyFlagsResponse.getDefaultInstance());
+    responseObserver.onCompleted();
+  }
+}
@@ -0,0 +1,174 @@
+package com.spotify.confidence;
+
+import com.google.protobuf.Struct;
+import com.google.protobuf.util.JsonFormat;
+import com.spotify.confidence.flags.resolver.v1.FlagDefinition;
+import com.spotify.confidence.flags.resolver.v1.FlagDefinition.Rule;
+import com.spotify.confidence.flags.resolver.v1.FlagDefinition.Variant;
+import com.spotify.confidence.flags.resolver.v1.FlagDefinitions;
+import com.spotify.confidence.flags.resolver.v1.ResolveFlagsResponse;
+import com.spotify.confidence.flags.resolver.v1.ResolveReason;
+import com.spotify.confidence.flags.resolver.v1.ResolvedFlag;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resolves flags in-process from a set of {@link FlagDefinitions}, without calling the resolver
+ * service. The rules of a flag are evaluated in order against the evaluation context, and the first
+ * rule with matching targeting assigns its variant.
+ *
+ * <p>The definitions can be replaced at any time with {@link #update(FlagDefinitions)}; resolves
+ * that are in progress complete against the definitions they started with.
+ */
+public final class LocalResolver {
+
+  private volatile State state;
+
+  private LocalResolver(FlagDefinitions definitions) {
+    this.state = new State(definitions);
+  }
+
+  /**
+   * Creates a local resolver for the given flag definitions.
+   *
+   * @param definitions the flags that can be resolved
+   * @return a local resolver
+   */
+  public static LocalResolver create(FlagDefinitions definitions) {
+    return new LocalResolver(definitions);
+  }
+
+  /**
+   * Creates a local resolver from flag definitions stored in a file. Files with a ".json" extension
+   * are read as the JSON representation of {@link FlagDefinitions}, other files as the binary
+   * protobuf encoding.
+   *
+   * @param path file with the flag definitions
+   * @return a local resolver
+   * @throws IOException if the file can't be read or parsed
+   */
+  public static LocalResolver fromFile(Path path) throws IOException {
+    return new LocalResolver(readDefinitions(path));
+  }
+
+  /**
+   * Replaces the flag definitions of the resolver.
+   *
+   * @param definitions the flags that can be resolved
+   */
+  public void update(FlagDefinitions definitions) {
+    // the targeting is only recompiled when the definitions change
+    if (!definitions.equals(state.definitions)) {
+      this.state = new State(definitions);
+    }
+  }
+
+  /**
+   * Resolves flags for an evaluation context. Flags that are not defined are left out of the
+   * response.
+   *
+   * @param evaluationContext the evaluation context to resolve for
+   * @param flags names of the flags, on the form "flags/&lt;flag&gt;", or empty to resolve all
+   *     flags
+   * @return the resolved flags
+   */
+  public ResolveFlagsResponse resolve(Struct evaluationContext, List<String> flags) {
+    final State current = state;
+    // one scope for all flags, so that segments they share are evaluated once
+    final EvaluationScope scope = current.compiler.newScope(evaluationContext);
+    final ResolveFlagsResponse.Builder response = ResolveFlagsResponse.newBuilder();
+    if (flags.isEmpty()) {
+      for (CompiledFlag flag : current.flags.values()) {
+        response.addResolvedFlags(flag.resolve(scope));
+      }
+    } else {
+      for (String flagName : flags) {
+        final CompiledFlag flag = current.flags.get(flagName);
+        if (flag != null) {
+          response.addResolvedFlags(flag.resolve(scope));
+        }
+      }
+    }
+    return response.build();
+  }
+
+  static FlagDefinitions readDefinitions(Path path) throws IOException {
+    final FlagDefinitions.Builder definitions = FlagDefinitions.newBuilder();
+    if (path.getFileName().toString().endsWith(".json")) {
+      try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+        JsonFormat.parser().ignoringUnknownFields().merge(reader, definitions);
+      }
+    } else {
+      try (InputStream inputStream = Files.newInputStream(path)) {
+        definitions.mergeFrom(inputStream);
+      }
+    }
+    return definitions.build();
+  }
+
+  private static final class State {
+
+    private final FlagDefinitions definitions;
+    private final Map<String, CompiledFlag> flags = new LinkedHashMap<>();
+    private final TargetingCompiler compiler;
+
+    State(FlagDefinitions definitions) {
+      this.definitions = definitions;
+      this.compiler = new TargetingCompiler(definitions.getSegmentsMap());
+      for (FlagDefinition flag : definitions.getFlagsList()) {
+        flags.put(flag.getName(), new CompiledFlag(flag, compiler));
+      }
+    }
+  }
+
+  /** A flag with the targeting of its rules compiled, and the variants they assign looked up */
+  private static final class CompiledFlag {
+
+    private final FlagDefinition flag;
+    private final TargetingPredicate[] targeting;
+    // null where a rule refers to a variant that doesn't exist
+    private final Variant[] variants;
+
+    CompiledFlag(FlagDefinition flag, TargetingCompiler compiler) {
+      this.flag = flag;
+      final Map<String, Variant> variantsByName = new HashMap<>();
+      for (Variant variant : flag.getVariantsList()) {
+        variantsByName.put(variant.getName(), variant);
+      }
+      final List<Rule> rules = flag.getRulesList();
+      this.targeting = new TargetingPredicate[rules.size()];
+      this.variants = new Variant[rules.size()];
+      for (int i = 0; i < rules.size(); i++) {
+        targeting[i] = compiler.compile(rules.get(i).getTargeting());
+        variants[i] = variantsByName.get(rules.get(i).getVariant());
+      }
+    }
+
+    ResolvedFlag resolve(EvaluationScope scope) {
+      final ResolvedFlag.Builder resolvedFlag =
+          ResolvedFlag.newBuilder().setFlag(flag.getName()).setFlagSchema(flag.getSchema());
+      for (int i = 0; i < targeting.length; i++) {
+        if (targeting[i].test(scope)) {
+          final Variant variant = variants[i];
+          if (variant == null) {
+            return resolvedFlag.setReason(ResolveReason.RESOLVE_REASON_ERROR).build();
+          }
+          return resolvedFlag
+              .setVariant(variant.getName())
+              .setValue(variant.getValue())
+              .setReason(ResolveReason.RESOLVE_REASON_MATCH)
+              .build();
+        }
+      }
+      return resolvedFlag.setReason(ResolveReason.RESOLVE_REASON_NO_SEGMENT_MATCH).build();
+    }
+  }
+}
@@ -0,0 +1,210 @@
+package com.spotify.confidence;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.ExtensionRegistryLite;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Struct;
+import com.google.protobuf.util.Timestamps;
+import com.spotify.confidence.flags.resolver.v1.PersistedResolve;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A file with flag resolutions, so that a restarted provider can serve flags before its first
+ * resolve. The file starts with a magic number, the format version and the number of entries, all
+ * little-endian 32-bit integers, followed by the entries as length-delimited {@link
+ * PersistedResolve} messages. Entries hold the resolved flag, its resolve token and resolve time,
+ * and either the evaluation context or only its {@link #digest(Struct) digest}, depending on
+ * whether contexts are persisted. Nothing in the file is encrypted. Entries resolved longer ago
+ * than the maximum age, or without a resolve time, are neither read nor written.
+ *
+ * <p>The file is replaced atomically, by writing and syncing a temporary file in the same directory
+ * and renaming it, so a crash while writing leaves the previous file in place. Files that are
+ * missing, truncated or of another format version are read as empty, which includes the files of
+ * the first version, written before entries had a resolve time.
+ */
+final class PersistentSnapshot {
+
+  static final int MAGIC = 0x53524643; // "CFRS"
+  // version 1 had no resolve times
+  static final int VERSION = 2;
+  private static final int HEADER_BYTES = 12;
+
+  private final Path file;
+  private final boolean persistContexts;
+  private final long maxAgeMillis;
+  private final Clock clock;
+
+  /**
+   * @param file the snapshot file
+   * @param persistContexts whether evaluation contexts are written, rather than their digests
+   * @param maxAge how long after their resolve entries are kept
+   * @param clock the clock that the age of entries is measured with
+   */
+  PersistentSnapshot(Path file, boolean persistContexts, Duration maxAge, Clock clock) {
+    this.file = file;
+    this.persistContexts = persistContexts;
+    this.maxAgeMillis = maxAge.toMillis();
+    this.clock = clock;
+  }
+
+  List<PersistedResolve> read() throws IOException {
+    final byte[] bytes;
+    try {
+      bytes = Files.readAllBytes(file);
+    } catch (NoSuchFileException e) {
+      return List.of();
+    }
+    if (bytes.length < HEADER_BYTES) {
+      return List.of();
+    }
+    final ByteBuffer header =
+        ByteBuffer.wrap(bytes, 0, HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+      return List.of();
+    }
+    final int count = header.getInt();
+    if (count < 0) {
+      return List.of();
+    }
+    final CodedInputStream input =
+        CodedInputStream.newInstance(bytes, HEADER_BYTES, bytes.length - HEADER_BYTES);
+    final List<PersistedResolve> entries = new ArrayList<>(Math.min(count, bytes.length));
+    final long oldestMillis = oldestMillis();
+    try {
+      for (int i = 0; i < count; i++) {
+        final PersistedResolve entry =
+            input.readMessage(PersistedResolve.parser(), ExtensionRegistryLite.getEmptyRegistry());
+        if (Timestamps.toMillis(entry.getResolveTime()) >= oldestMillis) {
+          entries.add(entry);
+        }
+      }
+    } catch (InvalidProtocolBufferException e) {
+      return List.of();
+    }
+    return entries;
+  }
+
+  /**
+   * Replaces the file with the resolutions. Entries that were read and not resolved since are
+   * carried over, and the resolutions are written after them, so that they win when both have the
+   * same flag and context.
+   */
+  void write(Map<FlagKey, FlagResolution> resolutions, Collection<PersistedResolve> carriedOver)
+      throws IOException {
+    final Path directory = file.toAbsolutePath().getParent();
+    final Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+    try {
+      try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+        final OutputStream stream = Channels.newOutputStream(channel);
+        final CodedOutputStream output = CodedOutputStream.newInstance(stream, 1 << 16);
+        // the map may change while it is written, so the count is written last
+        output.writeFixed32NoTag(MAGIC);
+        output.writeFixed32NoTag(VERSION);
+        output.writeFixed32NoTag(0);
+        int count = 0;
+        final long oldestMillis = oldestMillis();
+        for (PersistedResolve entry : carriedOver) {
+          if (Timestamps.toMillis(entry.getResolveTime()) < oldestMillis) {
+            continue;
+          }
+          if (!persistContexts && entry.hasEvaluationContext()) {
+            output.writeMessageNoTag(
+                entry.toBuilder()
+                    .clearEvaluationContext()
+                    .setEvaluationContextSha256(digest(entry.getEvaluationContext()))
+                    .build());
+          } else {
+            output.writeMessageNoTag(entry);
+          }
+          count++;
+        }
+        for (Map.Entry<FlagKey, FlagResolution> entry : resolutions.entrySet()) {
+          final FlagResolution resolution = entry.getValue();
+          if (resolution.getResolveTimeMillis() < oldestMillis) {
+            continue;
+          }
+          final PersistedResolve.Builder persisted =
+              PersistedResolve.newBuilder()
+                  .setResolvedFlag(resolution.getResolvedFlag())
+                  .setResolveToken(resolution.getResolveToken())
+                  .setResolveTime(Timestamps.fromMillis(resolution.getResolveTimeMillis()));
+          if (persistContexts) {
+            persisted.setEvaluationContext(entry.getKey().getContext());
+          } else {
+            persisted.setEvaluationContextSha256(digest(entry.getKey().getContext()));
+          }
+          output.writeMessageNoTag(persisted.build());
+          count++;
+        }
+        output.flush();
+        channel.write(
+            ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN).putInt(0, count),
+            HEADER_BYTES - Integer.BYTES);
+        channel.force(true);
+      }
+      Files.move(
+          temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+  }
+
+  /** Returns the resolve time of the oldest entries that are kept */
+  private long oldestMillis() {
+    return clock.millis() - maxAgeMillis;
+  }
+
+  /** Returns the digest of the context of the entry, whether the context itself was written */
+  static ByteString contextDigest(PersistedResolve entry) {
+    return entry.hasEvaluationContext()
+        ? digest(entry.getEvaluationContext())
+        : entry.getEvaluationContextSha256();
+  }
+
+  /**
+   * Returns the SHA-256 of the deterministic serialization of the context, which is equal for equal
+   * contexts
+   */
+  static ByteString digest(Struct context) {
+    final MessageDigest sha256;
+    try {
+      sha256 = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      // every Java platform implements SHA-256
+      throw new IllegalStateException(e);
+    }
+    final CodedOutputStream output =
+        CodedOutputStream.newInstance(
+            new DigestOutputStream(OutputStream.nullOutputStream(), sha256));
+    output.useDeterministicSerialization();
+    try {
+      context.writeTo(output);
+      output.flush();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return ByteString.copyFrom(sha256.digest());
+  }
+}
@@ -0,0 +1,178 @@
+package com.spotify.confidence;
+
+import com.google.protobuf.Struct;
+import com.spotify.confidence.flags.resolver.v1.ResolveFlagsResponse;
+import com.spotify.confidence.flags.resolver.v1.ResolvedFlag;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+
+/**
+ * Collects concurrent single flag resolves and sends them as one resolve call per evaluation
+ * context. A batch is sent when the batching window has passed since its first flag was added, or
+ * as soon as it holds the maximum number of flags. Identical resolves that are already in flight
+ * share the same result instead of being added to a batch again.
+ *
+ * <p>The futures complete with the flag resolution, or with null if the resolver did not return the
+ * flag. The scheduler only times the batching windows, and all batches are sent from the
+ * dispatcher, since a batch is shared by evaluations that each may have a deadline or be cancelled.
+ */
+class ResolveBatcher {
+
+  private final long windowNanos;
+  private final int maxBatchSize;
+  private final BiFunction<Struct, List<String>, CompletableFuture<ResolveFlagsResponse>> resolver;
+  private final ScheduledExecutorService scheduler;
+  private final Executor dispatcher;
+
+  // batches that are not sent yet, guarded by a ReentrantLock rather than a monitor, so that a
+  // virtual thread waiting for the lock doesn't pin its carrier thread
+  private final ReentrantLock pendingLock = new ReentrantLock();
+  private final Map<Struct, Batch> pending = new HashMap<>();
+  private final ConcurrentHashMap<FlagKey, CompletableFuture<FlagResolution>> inFlight =
+      new ConcurrentHashMap<>();
+
+  ResolveBatcher(
+      Duration window,
+      int maxBatchSize,
+      BiFunction<Struct, List<String>, CompletableFuture<ResolveFlagsResponse>> resolver,
+      ScheduledExecutorService scheduler,
+      Executor dispatcher) {
+    this.windowNanos = window.toNanos();
+    this.maxBatchSize = maxBatchSize;
+    this.resolver = resolver;
+    this.scheduler = scheduler;
+    this.dispatcher = dispatcher;
+  }
+
+  CompletableFuture<FlagResolution> resolve(String requestFlagName, Struct evaluationContext) {
+    final FlagKey key = new FlagKey(requestFlagName, evaluationContext);
+    final CompletableFuture<FlagResolution> existing = inFlight.get(key);
+    if (existing != null) {
+      return existing;
+    }
+    final CompletableFuture<FlagResolution> future = new CompletableFuture<>();
+    final CompletableFuture<FlagResolution> raced = inFlight.putIfAbsent(key, future);
+    if (raced != null) {
+      return raced;
+    }
+    future.whenComplete((resolution, throwable) -> inFlight.remove(key, future));
+
+    final Batch batch;
+    final boolean created;
+    final boolean full;
+    pendingLock.lock();
+    try {
+      final Batch current = pending.get(evaluationContext);
+      created = current == null;
+      batch = created ? new Batch(evaluationContext) : current;
+      batch.add(requestFlagName, future);
+      full = batch.size() >= maxBatchSize;
+      if (full) {
+        if (!created) {
+          pending.remove(evaluationContext);
+        }
+      } else if (created) {
+        pending.put(evaluationContext, batch);
+      }
+    } finally {
+      pendingLock.unlock();
+    }
+
+    if (full) {
+      // sent from the dispatcher like any other batch, so that the call isn't bound to the context,
+      // deadline or cancellation, of the evaluation that happened to fill the batch
+      dispatcher.execute(() -> send(batch));
+    } else if (created) {
+      scheduler.schedule(
+          () -> {
+            if (removePending(batch)) {
+              dispatcher.execute(() -> send(batch));
+            }
+          },
+          windowNanos,
+          TimeUnit.NANOSECONDS);
+    }
+    return future;
+  }
+
+  /** Removes the batch from the pending batches, and returns whether it was still pending */
+  private boolean removePending(Batch batch) {
+    pendingLock.lock();
+    try {
+      return pending.remove(batch.context, batch);
+    } finally {
+      pendingLock.unlock();
+    }
+  }
+
+  private void send(Batch batch) {
+    final CompletableFuture<ResolveFlagsResponse> response;
+    try {
+      response = resolver.apply(batch.context, batch.flags);
+    } catch (RuntimeException e) {
+      batch.fail(e);
+      return;
+    }
+    response.whenComplete(
+        (resolveFlagsResponse, throwable) -> {
+          if (throwable != null) {
+            batch.fail(throwable);
+          } else {
+            batch.complete(resolveFlagsResponse);
+          }
+        });
+  }
+
+  private static final class Batch {
+
+    private final Struct context;
+    // only mutated while holding the pending lock, and read after the batch left the map
+    private final List<String> flags = new ArrayList<>();
+    private final List<CompletableFuture<FlagResolution>> futures = new ArrayList<>();
+
+    Batch(Struct context) {
+      this.context = context;
+    }
+
+    void add(String requestFlagName, CompletableFuture<FlagResolution> future) {
+      flags.add(requestFlagName);
+      futures.add(future);
+    }
+
+    int size() {
+      return flags.size();
+    }
+
+    void complete(ResolveFlagsResponse response) {
+      final Map<String, ResolvedFlag> byName = new HashMap<>(response.getResolvedFlagsCount() * 2);
+      for (ResolvedFlag resolvedFlag : response.getResolvedFlagsList()) {
+        byName.put(resolvedFlag.getFlag(), resolvedFlag);
+      }
+      for (int i = 0; i < flags.size(); i++) {
+        final ResolvedFlag resolvedFlag = byName.get(flags.get(i));
+        futures
+            .get(i)
+            .complete(
+                resolvedFlag != null
+                    ? new FlagResolution(resolvedFlag, response.getResolveToken())
+                    : null);
+      }
+    }
+
+    void fail(Throwable throwable) {
+      for (CompletableFuture<FlagResolution> future : futures) {
+        future.completeExceptionally(throwable);
+      }
+    }
+  }
+}
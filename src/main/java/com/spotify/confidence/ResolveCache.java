@@ -0,0 +1,197 @@
+package com.spotify.confidence;
+
+import com.google.protobuf.Struct;
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.LongSupplier;
+import javax.annotation.Nullable;
+
+/**
+ * Bounded cache of resolved flags keyed by flag name and evaluation context. Entries expire after a
+ * fixed time-to-live, and when the cache is full the oldest written entries are evicted first.
+ *
+ * <p>With a refresher, entries older than the refresh interval are stale: they are still served
+ * until they expire, while a single background refresh per entry resolves the flag again and
+ * replaces the entry. A failed refresh is retried on the next stale hit.
+ */
+class ResolveCache {
+
+  private final int maxSize;
+  private final long refreshAfterNanos;
+  private final long ttlNanos;
+  @Nullable private final BiFunction<String, Struct, CompletableFuture<FlagResolution>> refresher;
+  @Nullable private final Executor refreshExecutor;
+  private final LongSupplier nanoTime;
+
+  private final ConcurrentHashMap<FlagKey, Entry> entries = new ConcurrentHashMap<>();
+  // insertion order of the entries, used for size based eviction
+  private final Queue<Entry> writeOrder = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger writeOrderSize = new AtomicInteger();
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+  private final LongAdder staleHits = new LongAdder();
+  private final LongAdder refreshes = new LongAdder();
+  private final LongAdder refreshFailures = new LongAdder();
+
+  ResolveCache(int maxSize, Duration ttl) {
+    this(maxSize, ttl, ttl, null, null, System::nanoTime);
+  }
+
+  /**
+   * @param refreshAfter age after which entries are refreshed, at most the ttl
+   * @param refresher resolves a flag again, given the flag name and evaluation context
+   * @param refreshExecutor runs the refresher
+   */
+  ResolveCache(
+      int maxSize,
+      Duration refreshAfter,
+      Duration ttl,
+      @Nullable BiFunction<String, Struct, CompletableFuture<FlagResolution>> refresher,
+      @Nullable Executor refreshExecutor,
+      LongSupplier nanoTime) {
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("maxSize must be positive.");
+    }
+    if (ttl.isNegative() || ttl.isZero()) {
+      throw new IllegalArgumentException("ttl must be positive.");
+    }
+    if (refreshAfter.isNegative() || refreshAfter.isZero() || refreshAfter.compareTo(ttl) > 0) {
+      throw new IllegalArgumentException("refreshAfter must be positive and at most ttl.");
+    }
+    this.maxSize = maxSize;
+    this.refreshAfterNanos = refreshAfter.toNanos();
+    this.ttlNanos = ttl.toNanos();
+    this.refresher = refresher;
+    this.refreshExecutor = refreshExecutor;
+    this.nanoTime = nanoTime;
+  }
+
+  /** Returns the cached flag, or null if there is no live entry for the key */
+  FlagResolution get(String flag, Struct context) {
+    final FlagKey key = new FlagKey(flag, context);
+    final Entry entry = entries.get(key);
+    if (entry == null) {
+      misses.increment();
+      return null;
+    }
+    final long now = nanoTime.getAsLong();
+    if (entry.isExpired(now)) {
+      if (entries.remove(key, entry)) {
+        evictions.increment();
+      }
+      misses.increment();
+      return null;
+    }
+    hits.increment();
+    if (refresher != null && entry.isStale(now)) {
+      staleHits.increment();
+      refresh(entry);
+    }
+    return entry.resolution;
+  }
+
+  void put(String flag, Struct context, FlagResolution resolution) {
+    final FlagKey key = new FlagKey(flag, context);
+    final long now = nanoTime.getAsLong();
+    final Entry entry = new Entry(key, resolution, now + refreshAfterNanos, now + ttlNanos);
+    entries.put(key, entry);
+    writeOrder.add(entry);
+    writeOrderSize.incrementAndGet();
+    evictIfFull();
+  }
+
+  CacheStats stats() {
+    return new CacheStats(
+        hits.sum(),
+        misses.sum(),
+        evictions.sum(),
+        entries.size(),
+        staleHits.sum(),
+        refreshes.sum(),
+        refreshFailures.sum());
+  }
+
+  private void refresh(Entry entry) {
+    if (!entry.refreshing.compareAndSet(false, true)) {
+      return;
+    }
+    refreshes.increment();
+    try {
+      refreshExecutor.execute(
+          () -> {
+            CompletableFuture<FlagResolution> resolution;
+            try {
+              resolution = refresher.apply(entry.key.getFlag(), entry.key.getContext());
+            } catch (RuntimeException e) {
+              resolution = CompletableFuture.failedFuture(e);
+            }
+            resolution.whenComplete(
+                (refreshed, throwable) -> {
+                  if (throwable != null || refreshed == null) {
+                    refreshFailed(entry);
+                  } else {
+                    put(entry.key.getFlag(), entry.key.getContext(), refreshed);
+                  }
+                });
+          });
+    } catch (RejectedExecutionException e) {
+      refreshFailed(entry);
+    }
+  }
+
+  private void refreshFailed(Entry entry) {
+    refreshFailures.increment();
+    entry.refreshing.set(false);
+  }
+
+  private void evictIfFull() {
+    // the queue also holds entries that have since been overwritten, so it is drained until the
+    // map is within bounds and the queue itself does not grow beyond twice the maximum size
+    while (entries.size() > maxSize || writeOrderSize.get() > maxSize * 2) {
+      final Entry oldest = writeOrder.poll();
+      if (oldest == null) {
+        return;
+      }
+      writeOrderSize.decrementAndGet();
+      if (entries.remove(oldest.key, oldest)) {
+        evictions.increment();
+      }
+    }
+  }
+
+  private static final class Entry {
+
+    private final FlagKey key;
+    private final FlagResolution resolution;
+    private final long staleAtNanos;
+    private final long expiresAtNanos;
+    // set while a refresh of the entry is in flight
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    Entry(FlagKey key, FlagResolution resolution, long staleAtNanos, long expiresAtNanos) {
+      this.key = key;
+      this.resolution = resolution;
+      this.staleAtNanos = staleAtNanos;
+      this.expiresAtNanos = expiresAtNanos;
+    }
+
+    boolean isStale(long now) {
+      return now - staleAtNanos >= 0;
+    }
+
+    boolean isExpired(long now) {
+      return now - expiresAtNanos >= 0;
+    }
+  }
+}
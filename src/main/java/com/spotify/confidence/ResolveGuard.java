@@ -0,0 +1,160 @@
+package com.spotify.confidence;
+
+import io.grpc.Status;
+import io.grpc.Status.Code;
+import io.grpc.StatusRuntimeException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import javax.annotation.Nullable;
+
+/**
+ * Guards calls to the resolver with a circuit breaker and a concurrency limit, either of which may
+ * be disabled. Rejected calls fail right away with {@code UNAVAILABLE}, like calls to a resolver
+ * that can't be reached, so that evaluations fall back to the resolve history or the default value.
+ */
+class ResolveGuard {
+
+  @Nullable private final CircuitBreaker circuitBreaker;
+  @Nullable private final ConcurrencyLimiter concurrencyLimiter;
+  private final LongSupplier nanoTime;
+
+  ResolveGuard(
+      @Nullable CircuitBreaker circuitBreaker,
+      @Nullable ConcurrencyLimiter concurrencyLimiter,
+      LongSupplier nanoTime) {
+    this.circuitBreaker = circuitBreaker;
+    this.concurrencyLimiter = concurrencyLimiter;
+    this.nanoTime = nanoTime;
+  }
+
+  /**
+   * Makes the call if it isn't rejected
+   *
+   * @param byCaller whether the call has the caller's deadline, which is shorter than the
+   *     configured deadline, so that exceeding it doesn't count against the resolver
+   */
+  <T> CompletableFuture<T> call(Supplier<CompletableFuture<T>> call, boolean byCaller) {
+    final CircuitState acquiredIn;
+    try {
+      acquiredIn = acquire();
+    } catch (StatusRuntimeException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+    final long start = nanoTime.getAsLong();
+    final CompletableFuture<T> future;
+    try {
+      future = call.get();
+    } catch (RuntimeException e) {
+      release(acquiredIn, start, e, byCaller);
+      throw e;
+    }
+    future.whenComplete((value, throwable) -> release(acquiredIn, start, throwable, byCaller));
+    return future;
+  }
+
+  /** Makes the call like {@link #call(Supplier, boolean)}, blocking until it completes */
+  <T> T callBlocking(Supplier<T> call, boolean byCaller) {
+    final CircuitState acquiredIn = acquire();
+    final long start = nanoTime.getAsLong();
+    try {
+      final T value = call.get();
+      release(acquiredIn, start, null, byCaller);
+      return value;
+    } catch (RuntimeException e) {
+      release(acquiredIn, start, e, byCaller);
+      throw e;
+    }
+  }
+
+  CircuitState circuitState() {
+    return circuitBreaker != null ? circuitBreaker.state() : CircuitState.CLOSED;
+  }
+
+  int concurrencyLimit() {
+    return concurrencyLimiter != null ? concurrencyLimiter.limit() : Integer.MAX_VALUE;
+  }
+
+  @Nullable
+  private CircuitState acquire() {
+    final CircuitState acquiredIn;
+    if (circuitBreaker != null) {
+      acquiredIn = circuitBreaker.tryAcquire();
+      if (acquiredIn == null) {
+        throw Status.UNAVAILABLE.withDescription("Circuit breaker is open").asRuntimeException();
+      }
+    } else {
+      acquiredIn = null;
+    }
+    if (concurrencyLimiter != null && !concurrencyLimiter.tryAcquire()) {
+      if (circuitBreaker != null) {
+        circuitBreaker.onIgnored(acquiredIn);
+      }
+      throw Status.UNAVAILABLE
+          .withDescription("Concurrency limit of resolves reached")
+          .asRuntimeException();
+    }
+    return acquiredIn;
+  }
+
+  private void release(
+      @Nullable CircuitState acquiredIn,
+      long start,
+      @Nullable Throwable throwable,
+      boolean byCaller) {
+    final long latencyNanos = nanoTime.getAsLong() - start;
+    Code code = throwable == null ? Code.OK : code(throwable);
+    if (byCaller && code == Code.DEADLINE_EXCEEDED) {
+      // the resolver was given less time than it is configured to have
+      code = Code.CANCELLED;
+    }
+    if (circuitBreaker != null) {
+      if (code == Code.OK) {
+        circuitBreaker.onSuccess(acquiredIn, latencyNanos);
+      } else if (isBackendFailure(code)) {
+        circuitBreaker.onFailure(acquiredIn);
+      } else {
+        circuitBreaker.onIgnored(acquiredIn);
+      }
+    }
+    if (concurrencyLimiter != null) {
+      if (code == Code.OK) {
+        concurrencyLimiter.onSuccess(latencyNanos);
+      } else if (isOverload(code)) {
+        concurrencyLimiter.onDropped();
+      } else {
+        concurrencyLimiter.onIgnored();
+      }
+    }
+  }
+
+  /**
+   * Returns the status code of the failure, with CANCELLED for cancellations and UNKNOWN for errors
+   * that aren't from gRPC
+   */
+  private static Code code(Throwable throwable) {
+    Throwable cause = throwable;
+    while (cause instanceof CompletionException && cause.getCause() != null) {
+      cause = cause.getCause();
+    }
+    if (cause instanceof StatusRuntimeException) {
+      return ((StatusRuntimeException) cause).getStatus().getCode();
+    }
+    return cause instanceof CancellationException ? Code.CANCELLED : Code.UNKNOWN;
+  }
+
+  /**
+   * Whether the failure says that the resolver is unhealthy, rather than the request being wrong
+   */
+  private static boolean isBackendFailure(Code code) {
+    return isOverload(code) || code == Code.INTERNAL || code == Code.UNKNOWN;
+  }
+
+  private static boolean isOverload(Code code) {
+    return code == Code.UNAVAILABLE
+        || code == Code.DEADLINE_EXCEEDED
+        || code == Code.RESOURCE_EXHAUSTED;
+  }
+}
@@ -0,0 +1,165 @@
+package com.spotify.confidence;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import javax.annotation.Nullable;
+
+/**
+ * Sends a second, identical attempt of a call that hasn't completed after the hedging delay. The
+ * first successful response wins and the other attempt is cancelled; the call only fails once all
+ * sent attempts have failed. Hedges are throttled with a token bucket: each call earns a fraction
+ * of a hedge given by the maximum hedge rate, and at most {@link #MAX_SAVED_HEDGES} are saved up
+ * for bursts of slow calls. The scheduler only times the hedging delays, and hedges are sent from
+ * the dispatcher.
+ */
+class ResolveHedger {
+
+  static final int MAX_SAVED_HEDGES = 10;
+  // tokens per hedge, so that fractional hedge rates can be counted with integers
+  private static final long HEDGE_COST = 1000;
+
+  private final long delayNanos;
+  private final long tokensPerCall;
+  private final ScheduledExecutorService scheduler;
+  private final Executor dispatcher;
+
+  private final AtomicLong tokens = new AtomicLong();
+  private final LongAdder calls = new LongAdder();
+  private final LongAdder hedges = new LongAdder();
+  private final LongAdder hedgeWins = new LongAdder();
+  private final LongAdder throttled = new LongAdder();
+
+  ResolveHedger(
+      Duration delay,
+      double maxHedgeRate,
+      ScheduledExecutorService scheduler,
+      Executor dispatcher) {
+    this.delayNanos = delay.toNanos();
+    this.tokensPerCall = Math.round(maxHedgeRate * HEDGE_COST);
+    this.scheduler = scheduler;
+    this.dispatcher = dispatcher;
+  }
+
+  /** Makes the call with the attempt, and hedges it if it is slow */
+  <T> CompletableFuture<T> call(Supplier<CompletableFuture<T>> attempt) {
+    calls.increment();
+    tokens.getAndUpdate(t -> Math.min(t + tokensPerCall, MAX_SAVED_HEDGES * HEDGE_COST));
+    final HedgedCall<T> call = new HedgedCall<>(attempt);
+    call.start();
+    return call.result;
+  }
+
+  HedgeStats stats() {
+    return new HedgeStats(calls.sum(), hedges.sum(), hedgeWins.sum(), throttled.sum());
+  }
+
+  private boolean tryAcquireHedge() {
+    return tokens.getAndUpdate(t -> t >= HEDGE_COST ? t - HEDGE_COST : t) >= HEDGE_COST;
+  }
+
+  private static <T> CompletableFuture<T> send(Supplier<CompletableFuture<T>> attempt) {
+    try {
+      return attempt.get();
+    } catch (RuntimeException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+  }
+
+  private final class HedgedCall<T> {
+
+    private final Supplier<CompletableFuture<T>> attempt;
+    private final CompletableFuture<T> result = new CompletableFuture<>();
+    // attempts that are sent and not completed, and zero once the call is settled
+    private final AtomicInteger running = new AtomicInteger(1);
+    // set by the first successful attempt, before it zeroes the running attempts
+    private final AtomicBoolean won = new AtomicBoolean();
+    @Nullable private CompletableFuture<T> first;
+    @Nullable private volatile CompletableFuture<T> hedge;
+
+    HedgedCall(Supplier<CompletableFuture<T>> attempt) {
+      this.attempt = attempt;
+    }
+
+    void start() {
+      final CompletableFuture<T> first = send(attempt);
+      this.first = first;
+      final Future<?> timer =
+          scheduler.schedule(
+              () -> dispatcher.execute(this::hedge), delayNanos, TimeUnit.NANOSECONDS);
+      first.whenComplete(
+          (value, throwable) -> {
+            timer.cancel(false);
+            settle(value, throwable, hedge, false);
+          });
+      result.whenComplete(
+          (value, throwable) -> {
+            if (result.isCancelled()) {
+              first.cancel(true);
+              final CompletableFuture<T> hedge = this.hedge;
+              if (hedge != null) {
+                hedge.cancel(true);
+              }
+            }
+          });
+    }
+
+    private void hedge() {
+      if (result.isDone()) {
+        return;
+      }
+      if (!tryAcquireHedge()) {
+        throttled.increment();
+        return;
+      }
+      if (running.getAndUpdate(n -> n == 0 ? 0 : n + 1) == 0) {
+        // the first attempt failed in the meantime
+        return;
+      }
+      hedges.increment();
+      final CompletableFuture<T> hedge = send(attempt);
+      this.hedge = hedge;
+      if (result.isDone()) {
+        hedge.cancel(true);
+        return;
+      }
+      hedge.whenComplete((value, throwable) -> settle(value, throwable, first, true));
+    }
+
+    /**
+     * Completes the call with the outcome of an attempt. The win of a hedge is counted before the
+     * call completes, so that it is visible to whoever observes the result.
+     */
+    private void settle(
+        @Nullable T value,
+        @Nullable Throwable throwable,
+        @Nullable Future<T> other,
+        boolean isHedge) {
+      if (throwable == null) {
+        if (won.compareAndSet(false, true)) {
+          running.set(0);
+          if (isHedge) {
+            hedgeWins.increment();
+          }
+          result.complete(value);
+          if (other != null) {
+            other.cancel(true);
+          }
+        }
+        return;
+      }
+      // a failed attempt only fails the call if no other attempt can still succeed
+      if (running.updateAndGet(n -> n > 0 ? n - 1 : 0) == 0 && !won.get()) {
+        result.completeExceptionally(throwable);
+      }
+    }
+  }
+}
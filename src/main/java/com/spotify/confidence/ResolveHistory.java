@@ -0,0 +1,34 @@
+package com.spotify.confidence;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.protobuf.Struct;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * The last resolve of flags from the resolver, per flag and evaluation context, for when the
+ * resolver can't be reached. Bounded to the most recently used entries; lookups don't lock.
+ */
+final class ResolveHistory {
+
+  private final Cache<FlagKey, FlagResolution> resolutions;
+
+  ResolveHistory(int maxSize) {
+    this.resolutions = CacheBuilder.newBuilder().maximumSize(maxSize).build();
+  }
+
+  void put(String flag, Struct context, FlagResolution resolution) {
+    resolutions.put(new FlagKey(flag, context), resolution);
+  }
+
+  @Nullable
+  FlagResolution get(String flag, Struct context) {
+    return resolutions.getIfPresent(new FlagKey(flag, context));
+  }
+
+  /** A live view of the kept resolutions */
+  Map<FlagKey, FlagResolution> asMap() {
+    return resolutions.asMap();
+  }
+}
@@ -0,0 +1,196 @@
+package com.spotify.confidence;
+
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.Nullable;
+
+/**
+ * A semantic version such as 1.2.3 or 1.2.3-beta.1, used for version targeting. Versions are
+ * ordered by the precedence rules of Semantic Versioning 2.0.0, with pre-release identifiers split
+ * and classified when the version is parsed.
+ */
+final class SemanticVersion implements Comparable<SemanticVersion> {
+
+  // the same few app versions are sent with most evaluation contexts
+  static final int MAX_CACHED_VERSIONS = 1024;
+  private static final ConcurrentHashMap<String, SemanticVersion> CACHE = new ConcurrentHashMap<>();
+  private static final String[] NO_PRE_RELEASE = new String[0];
+  // marks a pre-release identifier that is not numeric
+  private static final long ALPHANUMERIC = -1;
+  // cached for strings that are not versions, since null can't be stored in the cache
+  private static final SemanticVersion INVALID = new SemanticVersion(-1, -1, -1, null);
+
+  private final int major;
+  private final int minor;
+  private final int patch;
+  private final String[] preRelease;
+  // numeric value of each pre-release identifier, or ALPHANUMERIC
+  private final long[] preReleaseNumbers;
+
+  private SemanticVersion(int major, int minor, int patch, @Nullable String preRelease) {
+    this.major = major;
+    this.minor = minor;
+    this.patch = patch;
+    this.preRelease = preRelease == null ? NO_PRE_RELEASE : preRelease.split("\\.", -1);
+    this.preReleaseNumbers = new long[this.preRelease.length];
+    for (int i = 0; i < this.preRelease.length; i++) {
+      preReleaseNumbers[i] = numericIdentifier(this.preRelease[i]);
+    }
+  }
+
+  /** Parses a version on the form major.minor.patch, returning null if it is not a version */
+  @Nullable
+  static SemanticVersion parse(String version) {
+    // build metadata does not take part in comparisons
+    final int plus = version.indexOf('+');
+    final String withoutBuild = plus >= 0 ? version.substring(0, plus) : version;
+    final int dash = withoutBuild.indexOf('-');
+    final String core = dash >= 0 ? withoutBuild.substring(0, dash) : withoutBuild;
+    final String preRelease = dash >= 0 ? withoutBuild.substring(dash + 1) : null;
+
+    final int firstDot = core.indexOf('.');
+    final int secondDot = firstDot < 0 ? -1 : core.indexOf('.', firstDot + 1);
+    if (secondDot < 0 || core.indexOf('.', secondDot + 1) >= 0) {
+      return null;
+    }
+    final int major = parseComponent(core, 0, firstDot);
+    final int minor = parseComponent(core, firstDot + 1, secondDot);
+    final int patch = parseComponent(core, secondDot + 1, core.length());
+    if (major < 0 || minor < 0 || patch < 0 || (preRelease != null && hasEmpty(preRelease))) {
+      return null;
+    }
+    return new SemanticVersion(major, minor, patch, preRelease);
+  }
+
+  /**
+   * Like {@link #parse(String)}, but remembers the versions of recently seen strings. Used for the
+   * versions of evaluation contexts, which are parsed on every evaluation.
+   */
+  @Nullable
+  static SemanticVersion parseCached(String version) {
+    SemanticVersion parsed = CACHE.get(version);
+    if (parsed == null) {
+      final SemanticVersion result = parse(version);
+      parsed = result == null ? INVALID : result;
+      if (CACHE.size() >= MAX_CACHED_VERSIONS) {
+        // rather than tracking usage, start over when the cache is full
+        CACHE.clear();
+      }
+      CACHE.put(version, parsed);
+    }
+    return parsed == INVALID ? null : parsed;
+  }
+
+  // pre-release identifiers are separated by dots and must not be empty
+  private static boolean hasEmpty(String preRelease) {
+    return preRelease.isEmpty()
+        || preRelease.charAt(0) == '.'
+        || preRelease.charAt(preRelease.length() - 1) == '.'
+        || preRelease.contains("..");
+  }
+
+  // returns -1 if the range isn't a non-negative int
+  private static int parseComponent(String core, int start, int end) {
+    if (start == end || end - start > 10) {
+      return -1;
+    }
+    long value = 0;
+    for (int i = start; i < end; i++) {
+      final char c = core.charAt(i);
+      if (c < '0' || c > '9') {
+        return -1;
+      }
+      value = value * 10 + (c - '0');
+    }
+    return value > Integer.MAX_VALUE ? -1 : (int) value;
+  }
+
+  private static long numericIdentifier(String identifier) {
+    if (identifier.isEmpty() || identifier.length() > 18) {
+      return ALPHANUMERIC;
+    }
+    long value = 0;
+    for (int i = 0; i < identifier.length(); i++) {
+      final char c = identifier.charAt(i);
+      if (c < '0' || c > '9') {
+        return ALPHANUMERIC;
+      }
+      value = value * 10 + (c - '0');
+    }
+    return value;
+  }
+
+  @Override
+  public int compareTo(SemanticVersion other) {
+    if (major != other.major) {
+      return Integer.compare(major, other.major);
+    }
+    if (minor != other.minor) {
+      return Integer.compare(minor, other.minor);
+    }
+    if (patch != other.patch) {
+      return Integer.compare(patch, other.patch);
+    }
+    // a pre-release version has lower precedence than the release itself
+    if (preRelease.length == 0 || other.preRelease.length == 0) {
+      return Integer.compare(other.preRelease.length, preRelease.length);
+    }
+    final int identifiers = Math.min(preRelease.length, other.preRelease.length);
+    for (int i = 0; i < identifiers; i++) {
+      final int result = compareIdentifiers(i, other);
+      if (result != 0) {
+        return result;
+      }
+    }
+    // a longer list of identifiers has higher precedence when the shared ones are equal
+    return Integer.compare(preRelease.length, other.preRelease.length);
+  }
+
+  private int compareIdentifiers(int i, SemanticVersion other) {
+    final long number = preReleaseNumbers[i];
+    final long otherNumber = other.preReleaseNumbers[i];
+    if (number != ALPHANUMERIC && otherNumber != ALPHANUMERIC) {
+      return Long.compare(number, otherNumber);
+    }
+    if (number != ALPHANUMERIC || otherNumber != ALPHANUMERIC) {
+      // numeric identifiers have lower precedence than alphanumeric ones
+      return number != ALPHANUMERIC ? -1 : 1;
+    }
+    return preRelease[i].compareTo(other.preRelease[i]);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof SemanticVersion)) {
+      return false;
+    }
+    return compareTo((SemanticVersion) o) == 0;
+  }
+
+  @Override
+  public int hashCode() {
+    // numeric identifiers with leading zeros compare equal, so hash their values
+    int result = 31 * (31 * major + minor) + patch;
+    for (int i = 0; i < preRelease.length; i++) {
+      result =
+          31 * result
+              + (preReleaseNumbers[i] == ALPHANUMERIC
+                  ? preRelease[i].hashCode()
+                  : Long.hashCode(preReleaseNumbers[i]));
+    }
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    final String version = major + "." + minor + "." + patch;
+    return preRelease.length == 0 ? version : version + "-" + String.join(".", preRelease);
+  }
+
+  // visible for tests
+  static int cacheSize() {
+    return CACHE.size();
+  }
+}
@@ -0,0 +1,272 @@
+package com.spotify.confidence;
+
+import com.spotify.confidence.flags.types.v1.Expression;
+import com.spotify.confidence.flags.types.v1.Targeting;
+import com.spotify.confidence.flags.types.v1.Targeting.Criterion;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compiles {@link Targeting} into {@link TargetingPredicate}s. Branches that are always true or
+ * always false are folded away, and segments as well as criteria that are referenced more than once
+ * are evaluated at most once per {@link EvaluationScope}.
+ *
+ * <p>A compiler is used for one set of flag definitions; scopes for the compiled predicates are
+ * created with {@link #newScope(com.google.protobuf.Struct)}.
+ */
+final class TargetingCompiler {
+
+  private final Map<String, Targeting> segments;
+  private final Map<String, TargetingPredicate> compiledSegments = new HashMap<>();
+  // segments being compiled, a reference back to one of them is a cycle that never matches
+  private final Set<String> compiling = new HashSet<>();
+  private int sharedCriteria;
+
+  TargetingCompiler(Map<String, Targeting> segments) {
+    this.segments = segments;
+  }
+
+  /** Targeting without an expression matches every evaluation context */
+  TargetingPredicate compile(Targeting targeting) {
+    if (!targeting.hasExpression()) {
+      return Constant.TRUE;
+    }
+    final Map<String, Integer> references = new HashMap<>();
+    countReferences(targeting.getExpression(), references);
+
+    final Map<String, TargetingPredicate> criteria = new HashMap<>();
+    references.forEach(
+        (ref, count) -> {
+          final Criterion criterion = targeting.getCriteriaMap().get(ref);
+          final TargetingPredicate predicate =
+              criterion == null ? Constant.FALSE : compile(criterion);
+          criteria.put(ref, count > 1 ? share(predicate) : predicate);
+        });
+    return compile(targeting.getExpression(), criteria);
+  }
+
+  EvaluationScope newScope(com.google.protobuf.Struct context) {
+    return new EvaluationScope(context, sharedCriteria);
+  }
+
+  private TargetingPredicate compile(Criterion criterion) {
+    switch (criterion.getCriterionCase()) {
+      case ATTRIBUTE:
+        final ValueMatcher matcher = ValueMatchers.compile(criterion.getAttribute());
+        if (matcher == null) {
+          return Constant.FALSE;
+        }
+        return new AttributeMatch(criterion.getAttribute().getAttributeName(), matcher);
+      case SEGMENT:
+        return segment(criterion.getSegment().getSegment());
+      default:
+        return Constant.FALSE;
+    }
+  }
+
+  private TargetingPredicate segment(String name) {
+    final TargetingPredicate compiled = compiledSegments.get(name);
+    if (compiled != null) {
+      return compiled;
+    }
+    final Targeting segment = segments.get(name);
+    if (segment == null || !compiling.add(name)) {
+      return Constant.FALSE;
+    }
+    final TargetingPredicate predicate = share(compile(segment));
+    compiling.remove(name);
+    compiledSegments.put(name, predicate);
+    return predicate;
+  }
+
+  private TargetingPredicate compile(
+      Expression expression, Map<String, TargetingPredicate> criteria) {
+    switch (expression.getExpressionCase()) {
+      case REF:
+        return criteria.get(expression.getRef());
+      case NOT:
+        return not(compile(expression.getNot(), criteria));
+      case AND:
+        final List<TargetingPredicate> and = new ArrayList<>();
+        for (Expression operand : expression.getAnd().getOperandsList()) {
+          final TargetingPredicate predicate = compile(operand, criteria);
+          if (predicate == Constant.FALSE) {
+            return Constant.FALSE;
+          }
+          if (predicate != Constant.TRUE) {
+            and.add(predicate);
+          }
+        }
+        if (and.isEmpty()) {
+          return Constant.TRUE;
+        }
+        return and.size() == 1 ? and.get(0) : new And(and);
+      case OR:
+        final List<TargetingPredicate> or = new ArrayList<>();
+        for (Expression operand : expression.getOr().getOperandsList()) {
+          final TargetingPredicate predicate = compile(operand, criteria);
+          if (predicate == Constant.TRUE) {
+            return Constant.TRUE;
+          }
+          if (predicate != Constant.FALSE) {
+            or.add(predicate);
+          }
+        }
+        if (or.isEmpty()) {
+          return Constant.FALSE;
+        }
+        return or.size() == 1 ? or.get(0) : new Or(or);
+      default:
+        return Constant.TRUE;
+    }
+  }
+
+  private static TargetingPredicate not(TargetingPredicate predicate) {
+    if (predicate == Constant.TRUE) {
+      return Constant.FALSE;
+    }
+    if (predicate == Constant.FALSE) {
+      return Constant.TRUE;
+    }
+    if (predicate instanceof Not) {
+      return ((Not) predicate).operand;
+    }
+    return new Not(predicate);
+  }
+
+  private TargetingPredicate share(TargetingPredicate predicate) {
+    if (predicate instanceof Constant || predicate instanceof Shared) {
+      return predicate;
+    }
+    return new Shared(sharedCriteria++, predicate);
+  }
+
+  private static void countReferences(Expression expression, Map<String, Integer> references) {
+    switch (expression.getExpressionCase()) {
+      case REF:
+        references.merge(expression.getRef(), 1, Integer::sum);
+        break;
+      case NOT:
+        countReferences(expression.getNot(), references);
+        break;
+      case AND:
+        expression.getAnd().getOperandsList().forEach(e -> countReferences(e, references));
+        break;
+      case OR:
+        expression.getOr().getOperandsList().forEach(e -> countReferences(e, references));
+        break;
+      default:
+        break;
+    }
+  }
+
+  static final class Constant implements TargetingPredicate {
+
+    static final Constant TRUE = new Constant(true);
+    static final Constant FALSE = new Constant(false);
+
+    private final boolean value;
+
+    private Constant(boolean value) {
+      this.value = value;
+    }
+
+    @Override
+    public boolean test(EvaluationScope scope) {
+      return value;
+    }
+  }
+
+  static final class Not implements TargetingPredicate {
+
+    private final TargetingPredicate operand;
+
+    Not(TargetingPredicate operand) {
+      this.operand = operand;
+    }
+
+    @Override
+    public boolean test(EvaluationScope scope) {
+      return !operand.test(scope);
+    }
+  }
+
+  static final class And implements TargetingPredicate {
+
+    private final TargetingPredicate[] operands;
+
+    And(List<TargetingPredicate> operands) {
+      this.operands = operands.toArray(new TargetingPredicate[0]);
+    }
+
+    @Override
+    public boolean test(EvaluationScope scope) {
+      for (TargetingPredicate operand : operands) {
+        if (!operand.test(scope)) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  static final class Or implements TargetingPredicate {
+
+    private final TargetingPredicate[] operands;
+
+    Or(List<TargetingPredicate> operands) {
+      this.operands = operands.toArray(new TargetingPredicate[0]);
+    }
+
+    @Override
+    public boolean test(EvaluationScope scope) {
+      for (TargetingPredicate operand : operands) {
+        if (operand.test(scope)) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  static final class AttributeMatch implements TargetingPredicate {
+
+    private final String attributeName;
+    private final ValueMatcher matcher;
+    private final boolean matchesMissing;
+
+    AttributeMatch(String attributeName, ValueMatcher matcher) {
+      this.attributeName = attributeName;
+      this.matcher = matcher;
+      this.matchesMissing = matcher.matchesMissing();
+    }
+
+    @Override
+    public boolean test(EvaluationScope scope) {
+      final com.google.protobuf.Value value =
+          TargetingValues.attributeValue(scope.context(), attributeName);
+      return value != null ? matcher.matches(value) : matchesMissing;
+    }
+  }
+
+  /** A predicate evaluated at most once per scope */
+  static final class Shared implements TargetingPredicate {
+
+    private final int slot;
+    private final TargetingPredicate predicate;
+
+    Shared(int slot, TargetingPredicate predicate) {
+      this.slot = slot;
+      this.predicate = predicate;
+    }
+
+    @Override
+    public boolean test(EvaluationScope scope) {
+      return scope.test(slot, predicate);
+    }
+  }
+}
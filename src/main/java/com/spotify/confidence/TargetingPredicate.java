@@ -0,0 +1,9 @@
+package com.spotify.confidence;
+
+/**
+ * A {@link com.spotify.confidence.flags.types.v1.Targeting} compiled by {@link TargetingCompiler}
+ */
+interface TargetingPredicate {
+
+  boolean test(EvaluationScope scope);
+}
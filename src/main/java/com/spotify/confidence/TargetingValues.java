@@ -0,0 +1,132 @@
+package com.spotify.confidence;
+
+import com.google.protobuf.Struct;
+import com.google.protobuf.Timestamp;
+import com.spotify.confidence.flags.types.v1.Targeting;
+import com.spotify.confidence.flags.types.v1.Targeting.RangeRule;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import javax.annotation.Nullable;
+
+/**
+ * Comparisons between the values of targeting rules and the values of an evaluation context. The
+ * type of the rule value decides how the context value is interpreted; timestamps and semantic
+ * versions are passed as strings in the evaluation context.
+ */
+final class TargetingValues {
+
+  private TargetingValues() {}
+
+  /**
+   * Looks up an attribute of the evaluation context. Nested attributes are addressed with dots,
+   * such as "user.country", unless the context has a top level field with the full name.
+   */
+  @Nullable
+  static com.google.protobuf.Value attributeValue(Struct context, String attributeName) {
+    final com.google.protobuf.Value value = context.getFieldsMap().get(attributeName);
+    if (value != null || attributeName.indexOf('.') < 0) {
+      return value;
+    }
+
+    Struct current = context;
+    int start = 0;
+    while (true) {
+      final int dot = attributeName.indexOf('.', start);
+      final String fieldName =
+          dot < 0 ? attributeName.substring(start) : attributeName.substring(start, dot);
+      final com.google.protobuf.Value field = current.getFieldsMap().get(fieldName);
+      if (field == null || dot < 0) {
+        return field;
+      }
+      if (field.getKindCase() != com.google.protobuf.Value.KindCase.STRUCT_VALUE) {
+        return null;
+      }
+      current = field.getStructValue();
+      start = dot + 1;
+    }
+  }
+
+  static boolean inRange(RangeRule rangeRule, com.google.protobuf.Value actual) {
+    switch (rangeRule.getStartCase()) {
+      case START_INCLUSIVE:
+        final Integer startInclusive = compare(actual, rangeRule.getStartInclusive());
+        if (startInclusive == null || startInclusive < 0) {
+          return false;
+        }
+        break;
+      case START_EXCLUSIVE:
+        final Integer startExclusive = compare(actual, rangeRule.getStartExclusive());
+        if (startExclusive == null || startExclusive <= 0) {
+          return false;
+        }
+        break;
+      default:
+        break;
+    }
+    switch (rangeRule.getEndCase()) {
+      case END_INCLUSIVE:
+        final Integer endInclusive = compare(actual, rangeRule.getEndInclusive());
+        return endInclusive != null && endInclusive <= 0;
+      case END_EXCLUSIVE:
+        final Integer endExclusive = compare(actual, rangeRule.getEndExclusive());
+        return endExclusive != null && endExclusive < 0;
+      default:
+        // a range without any bounds matches nothing
+        return rangeRule.getStartCase() != RangeRule.StartCase.START_NOT_SET;
+    }
+  }
+
+  /**
+   * Compares a context value with a rule value, returning null if the values are not comparable.
+   */
+  @Nullable
+  static Integer compare(com.google.protobuf.Value actual, Targeting.Value expected) {
+    switch (expected.getValueCase()) {
+      case NUMBER_VALUE:
+        if (actual.getKindCase() != com.google.protobuf.Value.KindCase.NUMBER_VALUE) {
+          return null;
+        }
+        return Double.compare(actual.getNumberValue(), expected.getNumberValue());
+      case STRING_VALUE:
+        if (actual.getKindCase() != com.google.protobuf.Value.KindCase.STRING_VALUE) {
+          return null;
+        }
+        return actual.getStringValue().compareTo(expected.getStringValue());
+      case TIMESTAMP_VALUE:
+        final Instant instant = toInstant(actual);
+        if (instant == null) {
+          return null;
+        }
+        return instant.compareTo(toInstant(expected.getTimestampValue()));
+      case VERSION_VALUE:
+        if (actual.getKindCase() != com.google.protobuf.Value.KindCase.STRING_VALUE) {
+          return null;
+        }
+        final SemanticVersion version = SemanticVersion.parseCached(actual.getStringValue());
+        final SemanticVersion expectedVersion =
+            SemanticVersion.parse(expected.getVersionValue().getVersion());
+        if (version == null || expectedVersion == null) {
+          return null;
+        }
+        return version.compareTo(expectedVersion);
+      default:
+        return null;
+    }
+  }
+
+  @Nullable
+  static Instant toInstant(com.google.protobuf.Value value) {
+    if (value.getKindCase() != com.google.protobuf.Value.KindCase.STRING_VALUE) {
+      return null;
+    }
+    try {
+      return Instant.parse(value.getStringValue());
+    } catch (DateTimeParseException e) {
+      return null;
+    }
+  }
+
+  static Instant toInstant(Timestamp timestamp) {
+    return Instant.ofEpochSecond(timestamp.getSeconds(), timestamp.getNanos());
+  }
+}
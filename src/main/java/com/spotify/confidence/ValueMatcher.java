@@ -0,0 +1,12 @@
+package com.spotify.confidence;
+
+/** Matches a value of the evaluation context against a compiled targeting rule */
+interface ValueMatcher {
+
+  boolean matches(com.google.protobuf.Value value);
+
+  /** Whether the rule matches an evaluation context that doesn't have the attribute */
+  default boolean matchesMissing() {
+    return false;
+  }
+}
@@ -0,0 +1,364 @@
+package com.spotify.confidence;
+
+import com.spotify.confidence.flags.types.v1.Targeting;
+import com.spotify.confidence.flags.types.v1.Targeting.Criterion.AttributeCriterion;
+import com.spotify.confidence.flags.types.v1.Targeting.InnerRule;
+import com.spotify.confidence.flags.types.v1.Targeting.RangeRule;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import javax.annotation.Nullable;
+
+/**
+ * Compiles the rules of attribute criteria into {@link ValueMatcher}s. Rule values are converted
+ * when the rule is compiled, so that matching only has to convert the value of the context.
+ */
+final class ValueMatchers {
+
+  static final ValueMatcher NONE = value -> false;
+
+  private ValueMatchers() {}
+
+  /** Returns null if the criterion has no rule, in which case it matches nothing */
+  @Nullable
+  static ValueMatcher compile(AttributeCriterion criterion) {
+    switch (criterion.getRuleCase()) {
+      case EQ_RULE:
+        return new SetMatcher(List.of(criterion.getEqRule().getValue()));
+      case SET_RULE:
+        return new SetMatcher(criterion.getSetRule().getValuesList());
+      case RANGE_RULE:
+        return range(criterion.getRangeRule());
+      case ANY_RULE:
+        return new AnyMatcher(compile(criterion.getAnyRule().getRule()));
+      case ALL_RULE:
+        return new AllMatcher(compile(criterion.getAllRule().getRule()));
+      default:
+        return null;
+    }
+  }
+
+  static ValueMatcher compile(InnerRule rule) {
+    switch (rule.getRuleCase()) {
+      case EQ_RULE:
+        return new SetMatcher(List.of(rule.getEqRule().getValue()));
+      case SET_RULE:
+        return new SetMatcher(rule.getSetRule().getValuesList());
+      case RANGE_RULE:
+        return range(rule.getRangeRule());
+      default:
+        return NONE;
+    }
+  }
+
+  static ValueMatcher range(RangeRule rangeRule) {
+    final Targeting.Value lower = lowerBound(rangeRule);
+    final Targeting.Value upper = upperBound(rangeRule);
+    if (lower == null && upper == null) {
+      // a range without any bounds matches nothing
+      return NONE;
+    }
+    if (lower != null && upper != null && lower.getValueCase() != upper.getValueCase()) {
+      return new MixedRangeMatcher(rangeRule);
+    }
+    final boolean lowerInclusive = rangeRule.getStartCase() != RangeRule.StartCase.START_EXCLUSIVE;
+    final boolean upperInclusive = rangeRule.getEndCase() != RangeRule.EndCase.END_EXCLUSIVE;
+    switch ((lower != null ? lower : upper).getValueCase()) {
+      case NUMBER_VALUE:
+        return new NumberRangeMatcher(
+            lower != null ? lower.getNumberValue() : Double.NEGATIVE_INFINITY,
+            lowerInclusive,
+            upper != null ? upper.getNumberValue() : Double.POSITIVE_INFINITY,
+            upperInclusive);
+      case STRING_VALUE:
+        return new ComparableRangeMatcher<>(
+            value ->
+                value.getKindCase() == com.google.protobuf.Value.KindCase.STRING_VALUE
+                    ? value.getStringValue()
+                    : null,
+            lower != null ? lower.getStringValue() : null,
+            lowerInclusive,
+            upper != null ? upper.getStringValue() : null,
+            upperInclusive);
+      case TIMESTAMP_VALUE:
+        return new ComparableRangeMatcher<>(
+            TargetingValues::toInstant,
+            lower != null ? TargetingValues.toInstant(lower.getTimestampValue()) : null,
+            lowerInclusive,
+            upper != null ? TargetingValues.toInstant(upper.getTimestampValue()) : null,
+            upperInclusive);
+      case VERSION_VALUE:
+        final SemanticVersion lowerVersion = lower != null ? version(lower) : null;
+        final SemanticVersion upperVersion = upper != null ? version(upper) : null;
+        if ((lower != null && lowerVersion == null) || (upper != null && upperVersion == null)) {
+          return NONE;
+        }
+        return new ComparableRangeMatcher<>(
+            value ->
+                value.getKindCase() == com.google.protobuf.Value.KindCase.STRING_VALUE
+                    ? SemanticVersion.parseCached(value.getStringValue())
+                    : null,
+            lowerVersion,
+            lowerInclusive,
+            upperVersion,
+            upperInclusive);
+      default:
+        // booleans and lists are not ordered
+        return NONE;
+    }
+  }
+
+  @Nullable
+  private static Targeting.Value lowerBound(RangeRule rangeRule) {
+    switch (rangeRule.getStartCase()) {
+      case START_INCLUSIVE:
+        return rangeRule.getStartInclusive();
+      case START_EXCLUSIVE:
+        return rangeRule.getStartExclusive();
+      default:
+        return null;
+    }
+  }
+
+  @Nullable
+  private static Targeting.Value upperBound(RangeRule rangeRule) {
+    switch (rangeRule.getEndCase()) {
+      case END_INCLUSIVE:
+        return rangeRule.getEndInclusive();
+      case END_EXCLUSIVE:
+        return rangeRule.getEndExclusive();
+      default:
+        return null;
+    }
+  }
+
+  @Nullable
+  private static SemanticVersion version(Targeting.Value value) {
+    return SemanticVersion.parse(value.getVersionValue().getVersion());
+  }
+
+  /**
+   * Matches values equal to any of a set of rule values. The rule values are indexed by type, so
+   * that matching takes the same time for small and large sets.
+   */
+  static final class SetMatcher implements ValueMatcher {
+
+    private final boolean matchesTrue;
+    private final boolean matchesFalse;
+    // sorted, without NaN and with -0.0 normalized to 0.0
+    private final double[] numbers;
+    private final Set<String> strings = new HashSet<>();
+    private final Set<Instant> timestamps = new HashSet<>();
+    private final Set<SemanticVersion> versions = new HashSet<>();
+
+    SetMatcher(List<Targeting.Value> values) {
+      boolean anyTrue = false;
+      boolean anyFalse = false;
+      final double[] numberValues = new double[values.size()];
+      int numberCount = 0;
+      for (Targeting.Value value : values) {
+        switch (value.getValueCase()) {
+          case BOOL_VALUE:
+            anyTrue |= value.getBoolValue();
+            anyFalse |= !value.getBoolValue();
+            break;
+          case NUMBER_VALUE:
+            if (!Double.isNaN(value.getNumberValue())) {
+              numberValues[numberCount++] = normalize(value.getNumberValue());
+            }
+            break;
+          case STRING_VALUE:
+            strings.add(value.getStringValue());
+            break;
+          case TIMESTAMP_VALUE:
+            timestamps.add(TargetingValues.toInstant(value.getTimestampValue()));
+            break;
+          case VERSION_VALUE:
+            final SemanticVersion version =
+                SemanticVersion.parse(value.getVersionValue().getVersion());
+            if (version != null) {
+              versions.add(version);
+            }
+            break;
+          default:
+            // lists are never equal to a context value
+            break;
+        }
+      }
+      this.matchesTrue = anyTrue;
+      this.matchesFalse = anyFalse;
+      this.numbers = Arrays.copyOf(numberValues, numberCount);
+      Arrays.sort(this.numbers);
+    }
+
+    @Override
+    public boolean matches(com.google.protobuf.Value value) {
+      switch (value.getKindCase()) {
+        case BOOL_VALUE:
+          return value.getBoolValue() ? matchesTrue : matchesFalse;
+        case NUMBER_VALUE:
+          return numbers.length > 0
+              && Arrays.binarySearch(numbers, normalize(value.getNumberValue())) >= 0;
+        case STRING_VALUE:
+          final String string = value.getStringValue();
+          if (strings.contains(string)) {
+            return true;
+          }
+          if (!timestamps.isEmpty()) {
+            final Instant instant = TargetingValues.toInstant(value);
+            if (instant != null && timestamps.contains(instant)) {
+              return true;
+            }
+          }
+          if (!versions.isEmpty()) {
+            final SemanticVersion version = SemanticVersion.parseCached(string);
+            return version != null && versions.contains(version);
+          }
+          return false;
+        default:
+          return false;
+      }
+    }
+
+    private static double normalize(double number) {
+      return number == 0.0 ? 0.0 : number;
+    }
+  }
+
+  /** A range over numbers, with a missing bound given as an infinity */
+  static final class NumberRangeMatcher implements ValueMatcher {
+
+    private final double lower;
+    private final boolean lowerInclusive;
+    private final double upper;
+    private final boolean upperInclusive;
+
+    NumberRangeMatcher(double lower, boolean lowerInclusive, double upper, boolean upperInclusive) {
+      this.lower = lower;
+      this.lowerInclusive = lowerInclusive;
+      this.upper = upper;
+      this.upperInclusive = upperInclusive;
+    }
+
+    @Override
+    public boolean matches(com.google.protobuf.Value value) {
+      if (value.getKindCase() != com.google.protobuf.Value.KindCase.NUMBER_VALUE) {
+        return false;
+      }
+      final double number = value.getNumberValue();
+      return (lowerInclusive ? number >= lower : number > lower)
+          && (upperInclusive ? number <= upper : number < upper);
+    }
+  }
+
+  /** A range over strings, timestamps or versions, with bounds converted up front */
+  static final class ComparableRangeMatcher<T extends Comparable<T>> implements ValueMatcher {
+
+    private final Function<com.google.protobuf.Value, T> converter;
+    @Nullable private final T lower;
+    private final boolean lowerInclusive;
+    @Nullable private final T upper;
+    private final boolean upperInclusive;
+
+    ComparableRangeMatcher(
+        Function<com.google.protobuf.Value, T> converter,
+        @Nullable T lower,
+        boolean lowerInclusive,
+        @Nullable T upper,
+        boolean upperInclusive) {
+      this.converter = converter;
+      this.lower = lower;
+      this.lowerInclusive = lowerInclusive;
+      this.upper = upper;
+      this.upperInclusive = upperInclusive;
+    }
+
+    @Override
+    public boolean matches(com.google.protobuf.Value value) {
+      final T converted = converter.apply(value);
+      if (converted == null) {
+        return false;
+      }
+      if (lower != null) {
+        final int comparison = converted.compareTo(lower);
+        if (lowerInclusive ? comparison < 0 : comparison <= 0) {
+          return false;
+        }
+      }
+      if (upper != null) {
+        final int comparison = converted.compareTo(upper);
+        return upperInclusive ? comparison <= 0 : comparison < 0;
+      }
+      return true;
+    }
+  }
+
+  /** A range with bounds of different types, compared value by value */
+  static final class MixedRangeMatcher implements ValueMatcher {
+
+    private final RangeRule rangeRule;
+
+    MixedRangeMatcher(RangeRule rangeRule) {
+      this.rangeRule = rangeRule;
+    }
+
+    @Override
+    public boolean matches(com.google.protobuf.Value value) {
+      return TargetingValues.inRange(rangeRule, value);
+    }
+  }
+
+  static final class AnyMatcher implements ValueMatcher {
+
+    private final ValueMatcher element;
+
+    AnyMatcher(ValueMatcher element) {
+      this.element = element;
+    }
+
+    @Override
+    public boolean matches(com.google.protobuf.Value value) {
+      if (value.getKindCase() != com.google.protobuf.Value.KindCase.LIST_VALUE) {
+        return false;
+      }
+      for (com.google.protobuf.Value item : value.getListValue().getValuesList()) {
+        if (element.matches(item)) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  static final class AllMatcher implements ValueMatcher {
+
+    private final ValueMatcher element;
+
+    AllMatcher(ValueMatcher element) {
+      this.element = element;
+    }
+
+    @Override
+    public boolean matches(com.google.protobuf.Value value) {
+      if (value.getKindCase() != com.google.protobuf.Value.KindCase.LIST_VALUE) {
+        return false;
+      }
+      for (com.google.protobuf.Value item : value.getListValue().getValuesList()) {
+        if (!element.matches(item)) {
+          return false;
+        }
+      }
+      // an empty list matches an all rule
+      return true;
+    }
+
+    @Override
+    public boolean matchesMissing() {
+      // like an empty list, a missing attribute matches an all rule
+      return true;
+    }
+  }
+}
@@ -0,0 +1,65 @@
+package com.spotify.confidence;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import javax.annotation.Nullable;
+
+/**
+ * Creates executors that run each task on a new virtual thread. Virtual threads are looked up
+ * reflectively, so that the provider can still be compiled for and run on Java 11; on runtimes
+ * without virtual threads no executor is created.
+ */
+final class VirtualThreads {
+
+  @Nullable private static final Method OF_VIRTUAL = ofVirtual();
+
+  private VirtualThreads() {}
+
+  static boolean isAvailable() {
+    return OF_VIRTUAL != null;
+  }
+
+  /**
+   * Returns an executor that starts a virtual thread per task, named with the prefix and a counter,
+   * or null if the runtime has no virtual threads
+   */
+  @Nullable
+  static ExecutorService newThreadPerTaskExecutor(String namePrefix) {
+    if (OF_VIRTUAL == null) {
+      return null;
+    }
+    try {
+      final Object builder = OF_VIRTUAL.invoke(null);
+      // Thread.Builder is public, while the builder implementation classes are not
+      final Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+      final Object named =
+          builderType.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 0L);
+      final ThreadFactory factory = (ThreadFactory) builderType.getMethod("factory").invoke(named);
+      return (ExecutorService)
+          Executors.class
+              .getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+              .invoke(null, factory);
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException("Can't create virtual threads", unwrap(e));
+    }
+  }
+
+  private static Throwable unwrap(ReflectiveOperationException e) {
+    return e instanceof InvocationTargetException ? e.getCause() : e;
+  }
+
+  @Nullable
+  private static Method ofVirtual() {
+    try {
+      final Method ofVirtual = Thread.class.getMethod("ofVirtual");
+      // fails on runtimes where virtual threads are a preview feature that is not enabled
+      ofVirtual.invoke(null);
+      return ofVirtual;
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      return null;
+    }
+  }
+}
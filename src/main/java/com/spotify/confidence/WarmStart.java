@@ -0,0 +1,181 @@
+package com.spotify.confidence;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Struct;
+import com.google.protobuf.util.Timestamps;
+import com.spotify.confidence.flags.resolver.v1.PersistedResolve;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import javax.annotation.Nullable;
+
+/**
+ * Flag resolutions loaded at startup, served as stale until they have been resolved again. The
+ * first lookup of an entry starts a single resolve on the executor, and the entry is dropped once
+ * that resolve succeeds, so that later lookups go through the regular resolve path. Entries are
+ * keyed by the digest of their evaluation context, since the snapshot may not hold the contexts
+ * themselves. The digest is computed once per converted context. The warm start is retired when its
+ * lifetime has passed, dropping the entries whose contexts never came back, so that lookups stop
+ * paying for them.
+ */
+final class WarmStart {
+
+  // converted contexts whose digests are kept, each evaluated flag of a context shares its digest
+  private static final int MAX_DIGESTS = 1000;
+
+  private final ConcurrentHashMap<Key, Entry> entries;
+  // the flags of the loaded entries, so that other flags are looked up without a digest
+  private final Set<String> flags;
+  // weak keys make the cache compare the converted contexts by identity
+  private final Cache<Struct, ByteString> digests =
+      CacheBuilder.newBuilder().weakKeys().maximumSize(MAX_DIGESTS).build();
+  private final BiFunction<String, Struct, CompletableFuture<FlagResolution>> resolver;
+  private final Executor executor;
+  private final long retireAtNanos;
+  private final LongSupplier nanoTime;
+
+  /**
+   * @param loaded the loaded resolutions
+   * @param resolver resolves a flag again, given the flag name and evaluation context
+   * @param executor runs the resolves, so that they aren't bound to the evaluation that starts them
+   * @param lifetime how long the loaded resolutions are served
+   * @param nanoTime the time source of the lifetime
+   */
+  WarmStart(
+      List<PersistedResolve> loaded,
+      BiFunction<String, Struct, CompletableFuture<FlagResolution>> resolver,
+      Executor executor,
+      Duration lifetime,
+      LongSupplier nanoTime) {
+    this.entries = new ConcurrentHashMap<>(loaded.size() * 4 / 3 + 1);
+    this.flags = ConcurrentHashMap.newKeySet();
+    for (PersistedResolve persisted : loaded) {
+      final String flag = persisted.getResolvedFlag().getFlag();
+      entries.put(new Key(flag, PersistentSnapshot.contextDigest(persisted)), new Entry(persisted));
+      flags.add(flag);
+    }
+    this.resolver = resolver;
+    this.executor = executor;
+    this.nanoTime = nanoTime;
+    this.retireAtNanos = nanoTime.getAsLong() + lifetime.toNanos();
+  }
+
+  @Nullable
+  FlagResolution get(String flag, Struct context) {
+    if (entries.isEmpty() || !flags.contains(flag)) {
+      return null;
+    }
+    if (nanoTime.getAsLong() - retireAtNanos >= 0) {
+      retire();
+      return null;
+    }
+    ByteString digest = digests.getIfPresent(context);
+    if (digest == null) {
+      digest = PersistentSnapshot.digest(context);
+      digests.put(context, digest);
+    }
+    final Key key = new Key(flag, digest);
+    final Entry entry = entries.get(key);
+    if (entry == null) {
+      return null;
+    }
+    if (entry.refreshing.compareAndSet(false, true)) {
+      CompletableFuture<FlagResolution> refreshed;
+      try {
+        refreshed =
+            CompletableFuture.supplyAsync(() -> resolver.apply(flag, context), executor)
+                .thenCompose(Function.identity());
+      } catch (RuntimeException e) {
+        refreshed = CompletableFuture.failedFuture(e);
+      }
+      refreshed.whenComplete(
+          (resolution, throwable) -> {
+            if (throwable == null) {
+              entries.remove(key, entry);
+            } else {
+              // retried on the next lookup
+              entry.refreshing.set(false);
+            }
+          });
+    }
+    return entry.resolution;
+  }
+
+  int size() {
+    return entries.size();
+  }
+
+  private void retire() {
+    entries.clear();
+    flags.clear();
+    digests.invalidateAll();
+  }
+
+  /** Returns the loaded entries that haven't been resolved again yet */
+  Collection<PersistedResolve> remaining() {
+    if (nanoTime.getAsLong() - retireAtNanos >= 0) {
+      retire();
+      return List.of();
+    }
+    final List<PersistedResolve> remaining = new ArrayList<>(entries.size());
+    entries.values().forEach(entry -> remaining.add(entry.persisted));
+    return remaining;
+  }
+
+  private static final class Key {
+
+    private final String flag;
+    private final ByteString contextDigest;
+
+    Key(String flag, ByteString contextDigest) {
+      this.flag = flag;
+      this.contextDigest = contextDigest;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      final Key other = (Key) o;
+      return flag.equals(other.flag) && contextDigest.equals(other.contextDigest);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(flag, contextDigest);
+    }
+  }
+
+  private static final class Entry {
+
+    private final PersistedResolve persisted;
+    private final FlagResolution resolution;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    Entry(PersistedResolve persisted) {
+      this.persisted = persisted;
+      this.resolution =
+          new FlagResolution(
+                  persisted.getResolvedFlag(),
+                  persisted.getResolveToken(),
+                  Timestamps.toMillis(persisted.getResolveTime()))
+              .asStale();
+    }
+  }
+}
@@ -0,0 +1,138 @@
+package com.spotify.confidence;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.grpc.ForwardingChannelBuilder;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.netty.shaded.io.grpc.netty.NettyChannelBuilder;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+final class ChannelConfigurationTest {
+
+  private final List<RecordingChannelBuilder> channelBuilders = new ArrayList<>();
+  private final List<String> targets = new ArrayList<>();
+
+  @Test
+  public void defaultTransportIsNetty() {
+    assertThat(ManagedChannelBuilder.forAddress("localhost", 443))
+        .isInstanceOf(NettyChannelBuilder.class);
+  }
+
+  @Test
+  public void everyPooledChannelIsBuiltForTheTargetWithTheConfiguredSettings() {
+    final Executor executor = Runnable::run;
+    final ConfidenceFeatureProvider provider =
+        ConfidenceFeatureProvider.builder("fake-secret")
+            .target("resolver.example.com", 8443)
+            .channelPool(3, ChannelSelection.ROUND_ROBIN)
+            .keepAlive(Duration.ofSeconds(30), Duration.ofSeconds(5))
+            .channelExecutor(executor)
+            .channelBuilderFactory(this::recording)
+            .build();
+    provider.shutdown();
+
+    assertThat(targets)
+        .containsExactly(
+            "resolver.example.com:8443", "resolver.example.com:8443", "resolver.example.com:8443");
+    assertThat(channelBuilders)
+        .allSatisfy(
+            channelBuilder -> {
+              assertThat(channelBuilder.keepAliveTimeNanos).isEqualTo(TimeUnit.SECONDS.toNanos(30));
+              assertThat(channelBuilder.keepAliveTimeoutNanos)
+                  .isEqualTo(TimeUnit.SECONDS.toNanos(5));
+              assertThat(channelBuilder.executor).isSameAs(executor);
+            });
+  }
+
+  @Test
+  public void keepAliveIsNotSetByDefault() {
+    ConfidenceFeatureProvider.builder("fake-secret")
+        .channelBuilderFactory(this::recording)
+        .build()
+        .shutdown();
+
+    assertThat(channelBuilders).hasSize(1);
+    assertThat(channelBuilders.get(0).keepAliveTimeNanos).isNull();
+    assertThat(channelBuilders.get(0).keepAliveTimeoutNanos).isNull();
+  }
+
+  @Test
+  public void flowControlWindowIsAcceptedByTheNettyTransport() {
+    final List<ManagedChannelBuilder<?>> built = new ArrayList<>();
+    ConfidenceFeatureProvider.builder("fake-secret")
+        .flowControlWindow(1 << 20)
+        .channelBuilderFactory(
+            (host, port) -> {
+              final NettyChannelBuilder channelBuilder = NettyChannelBuilder.forAddress(host, port);
+              built.add(channelBuilder);
+              return channelBuilder;
+            })
+        .build()
+        .shutdown();
+
+    assertThat(built).hasSize(1);
+  }
+
+  @Test
+  public void flowControlWindowFailsOnAnotherTransport() {
+    final ConfidenceFeatureProvider.Builder builder =
+        ConfidenceFeatureProvider.builder("fake-secret")
+            .flowControlWindow(1 << 20)
+            .channelBuilderFactory(this::recording);
+
+    assertThatThrownBy(builder::build)
+        .isInstanceOf(IllegalStateException.class)
+        .hasMessageContaining("flowControlWindow");
+  }
+
+  private ManagedChannelBuilder<?> recording(String host, int port) {
+    targets.add(host + ":" + port);
+    final RecordingChannelBuilder channelBuilder =
+        new RecordingChannelBuilder(InProcessChannelBuilder.forName(host + ":" + port));
+    channelBuilders.add(channelBuilder);
+    return channelBuilder;
+  }
+
+  private static final class RecordingChannelBuilder
+      extends ForwardingChannelBuilder<RecordingChannelBuilder> {
+
+    private final ManagedChannelBuilder<?> delegate;
+    private Long keepAliveTimeNanos;
+    private Long keepAliveTimeoutNanos;
+    private Executor executor;
+
+    RecordingChannelBuilder(ManagedChannelBuilder<?> delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    protected ManagedChannelBuilder<?> delegate() {
+      return delegate;
+    }
+
+    @Override
+    public RecordingChannelBuilder executor(Executor executor) {
+      this.executor = executor;
+      return super.executor(executor);
+    }
+
+    @Override
+    public RecordingChannelBuilder keepAliveTime(long keepAliveTime, TimeUnit timeUnit) {
+      this.keepAliveTimeNanos = timeUnit.toNanos(keepAliveTime);
+      return this;
+    }
+
+    @Override
+    public RecordingChannelBuilder keepAliveTimeout(long keepAliveTimeout, TimeUnit timeUnit) {
+      this.keepAliveTimeoutNanos = timeUnit.toNanos(keepAliveTimeout);
+      return this;
+    }
+  }
+}
@@ -0,0 +1,125 @@
+package com.spotify.confidence;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.spotify.confidence.flags.resolver.v1.FlagResolverServiceGrpc;
+import com.spotify.confidence.flags.resolver.v1.FlagResolverServiceGrpc.FlagResolverServiceFutureStub;
+import com.spotify.confidence.flags.resolver.v1.FlagResolverServiceGrpc.FlagResolverServiceImplBase;
+import com.spotify.confidence.flags.resolver.v1.ResolveFlagsRequest;
+import com.spotify.confidence.flags.resolver.v1.ResolveFlagsResponse;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ManagedChannel;
+import io.grpc.MethodDescriptor;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+final class ChannelPoolTest {
+
+  private final String serverName = InProcessServerBuilder.generateName();
+  private final List<AtomicInteger> calls = new ArrayList<>();
+  private Server server;
+  private ChannelPool pool;
+
+  @BeforeEach
+  void beforeEach() throws IOException {
+    server =
+        InProcessServerBuilder.forName(serverName)
+            .directExecutor()
+            .addService(
+                new FlagResolverServiceImplBase() {
+                  @Override
+                  public void resolveFlags(
+                      ResolveFlagsRequest request,
+                      StreamObserver<ResolveFlagsResponse> responseObserver) {
+                    // never responds, so that calls stay outstanding until cancelled
+                  }
+                })
+            .build()
+            .start();
+  }
+
+  @AfterEach
+  void afterEach() {
+    pool.shutdownNow();
+    server.shutdownNow();
+  }
+
+  @Test
+  public void roundRobinUsesTheChannelsInTurn() {
+    pool = new ChannelPool(channels(3), ChannelSelection.ROUND_ROBIN);
+    final FlagResolverServiceFutureStub stub = FlagResolverServiceGrpc.newFutureStub(pool);
+
+    for (int i = 0; i < 6; i++) {
+      stub.resolveFlags(ResolveFlagsRequest.getDefaultInstance());
+    }
+
+    assertThat(calls).extracting(AtomicInteger::get).containsExactly(2, 2, 2);
+  }
+
+  @Test
+  public void leastOutstandingUsesTheLeastBusyChannel() {
+    pool = new ChannelPool(channels(2), ChannelSelection.LEAST_OUTSTANDING);
+    final FlagResolverServiceFutureStub stub = FlagResolverServiceGrpc.newFutureStub(pool);
+
+    stub.resolveFlags(ResolveFlagsRequest.getDefaultInstance());
+    final ListenableFuture<ResolveFlagsResponse> second =
+        stub.resolveFlags(ResolveFlagsRequest.getDefaultInstance());
+    assertThat(calls).extracting(AtomicInteger::get).containsExactly(1, 1);
+
+    second.cancel(true);
+    stub.resolveFlags(ResolveFlagsRequest.getDefaultInstance());
+    stub.resolveFlags(ResolveFlagsRequest.getDefaultInstance());
+
+    // the second channel had no outstanding call, while round robin would have used both
+    assertThat(calls).extracting(AtomicInteger::get).containsExactly(1, 3);
+  }
+
+  @Test
+  public void shutdownShutsDownAllChannels() {
+    final List<ManagedChannel> channels = channels(2);
+    pool = new ChannelPool(channels, ChannelSelection.ROUND_ROBIN);
+
+    pool.shutdown();
+
+    assertThat(pool.isShutdown()).isTrue();
+    assertThat(channels).allMatch(ManagedChannel::isShutdown);
+  }
+
+  private List<ManagedChannel> channels(int size) {
+    final List<ManagedChannel> channels = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      final AtomicInteger count = new AtomicInteger();
+      calls.add(count);
+      channels.add(
+          InProcessChannelBuilder.forName(serverName)
+              .directExecutor()
+              .intercept(counting(count))
+              .build());
+    }
+    return channels;
+  }
+
+  private static ClientInterceptor counting(AtomicInteger count) {
+    return new ClientInterceptor() {
+      @Override
+      public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(
+          MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+        count.incrementAndGet();
+        return next.newCall(method, callOptions);
+      }
+    };
+  }
+}
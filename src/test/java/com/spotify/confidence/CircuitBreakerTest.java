@@ -0,0 +1,71 @@
+package com.spotify.confidence;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+final class CircuitBreakerTest {
+
+  private final AtomicLong now = new AtomicLong();
+  private final List<String> transitions = new ArrayList<>();
+  private final CircuitBreaker circuitBreaker =
+      new CircuitBreaker(
+          4,
+          0.5,
+          Duration.ofMillis(100),
+          Duration.ofSeconds(10),
+          (from, to) -> transitions.add(from + "->" + to),
+          now::get);
+
+  @Test
+  public void opensWhenTheFailureRateIsReachedAndProbesAfterTheOpenDuration() {
+    record(false);
+    record(true);
+    record(false);
+    assertThat(circuitBreaker.state()).isEqualTo(CircuitState.CLOSED);
+    // slow calls count as failures
+    circuitBreaker.onSuccess(circuitBreaker.tryAcquire(), Duration.ofMillis(100).toNanos());
+    assertThat(circuitBreaker.state()).isEqualTo(CircuitState.OPEN);
+    assertThat(circuitBreaker.tryAcquire()).isNull();
+
+    now.set(Duration.ofSeconds(10).toNanos());
+    final CircuitState probe = circuitBreaker.tryAcquire();
+    assertThat(probe).isEqualTo(CircuitState.HALF_OPEN);
+    assertThat(circuitBreaker.tryAcquire()).isNull();
+    circuitBreaker.onFailure(probe);
+    assertThat(circuitBreaker.state()).isEqualTo(CircuitState.OPEN);
+
+    now.set(Duration.ofSeconds(20).toNanos());
+    circuitBreaker.onSuccess(circuitBreaker.tryAcquire(), 0);
+    assertThat(circuitBreaker.state()).isEqualTo(CircuitState.CLOSED);
+    assertThat(transitions)
+        .containsExactly(
+            "CLOSED->OPEN",
+            "OPEN->HALF_OPEN",
+            "HALF_OPEN->OPEN",
+            "OPEN->HALF_OPEN",
+            "HALF_OPEN->CLOSED");
+  }
+
+  @Test
+  public void staysClosedBelowTheFailureRate() {
+    for (int i = 0; i < 100; i++) {
+      record(i % 4 == 0);
+    }
+    assertThat(circuitBreaker.state()).isEqualTo(CircuitState.CLOSED);
+    assertThat(transitions).isEmpty();
+  }
+
+  private void record(boolean failed) {
+    final CircuitState acquiredIn = circuitBreaker.tryAcquire();
+    if (failed) {
+      circuitBreaker.onFailure(acquiredIn);
+    } else {
+      circuitBreaker.onSuccess(acquiredIn, 0);
+    }
+  }
+}
@@ -0,0 +1,46 @@
+package com.spotify.confidence;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+final class ConcurrencyLimiterTest {
+
+  private static final long SLOW = Duration.ofMillis(200).toNanos();
+
+  private final ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 4, Duration.ofMillis(100));
+
+  @Test
+  public void callsBeyondTheLimitAreRejected() {
+    assertThat(limiter.tryAcquire()).isTrue();
+    assertThat(limiter.tryAcquire()).isTrue();
+    assertThat(limiter.tryAcquire()).isFalse();
+
+    limiter.onIgnored();
+    assertThat(limiter.tryAcquire()).isTrue();
+  }
+
+  @Test
+  public void limitGrowsWhileUsedAndBacksOffOnSlowOrDroppedCalls() {
+    for (int i = 0; i < 10; i++) {
+      limiter.tryAcquire();
+      limiter.tryAcquire();
+      limiter.onSuccess(0);
+      limiter.onSuccess(0);
+    }
+    assertThat(limiter.limit()).isEqualTo(4);
+
+    limiter.tryAcquire();
+    limiter.onSuccess(SLOW);
+    limiter.tryAcquire();
+    limiter.onDropped();
+    assertThat(limiter.limit()).isEqualTo(3);
+
+    for (int i = 0; i < 50; i++) {
+      limiter.tryAcquire();
+      limiter.onDropped();
+    }
+    assertThat(limiter.limit()).isEqualTo(1);
+  }
+}
@@ -0,0 +1,126 @@
+package com.spotify.confidence;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.google.protobuf.ListValue;
+import com.google.protobuf.Struct;
+import com.google.protobuf.util.Structs;
+import com.google.protobuf.util.Values;
+import com.spotify.confidence.flags.types.v1.FlagSchema;
+import com.spotify.confidence.flags.types.v1.FlagSchema.IntFlagSchema;
+import com.spotify.confidence.flags.types.v1.FlagSchema.ListFlagSchema;
+import com.spotify.confidence.flags.types.v1.FlagSchema.StringFlagSchema;
+import com.spotify.confidence.flags.types.v1.FlagSchema.StructFlagSchema;
+import dev.openfeature.sdk.Value;
+import dev.openfeature.sdk.exceptions.ParseError;
+import dev.openfeature.sdk.exceptions.TypeMismatchError;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+final class ConversionPlanTest {
+
+  private static final FlagSchema INT =
+      FlagSchema.newBuilder().setIntSchema(IntFlagSchema.getDefaultInstance()).build();
+  private static final FlagSchema STRING =
+      FlagSchema.newBuilder().setStringSchema(StringFlagSchema.getDefaultInstance()).build();
+
+  @Test
+  public void planIsKeptPerFlagUntilItsSchemaChanges() throws Exception {
+    final ConversionPlan plan = ConversionPlan.forFlag("flags/kept", schema());
+
+    // every resolve parses a new instance of the schema
+    assertThat(ConversionPlan.forFlag("flags/kept", schema())).isSameAs(plan);
+    assertThat(ConversionPlan.forFlag("flags/kept", parsed(schema()))).isSameAs(plan);
+    assertThat(ConversionPlan.forFlag("flags/other", schema())).isNotSameAs(plan);
+    assertThat(plan.matches(schema().toBuilder().putSchema("count", STRING).build())).isFalse();
+
+    final StructFlagSchema changed = schema().toBuilder().putSchema("title", STRING).build();
+    final ConversionPlan recompiled = ConversionPlan.forFlag("flags/kept", changed);
+    assertThat(recompiled).isNotSameAs(plan);
+    assertThat(recompiled.convert(Structs.of("title", Values.of("hello"))).asStructure())
+        .isNotNull();
+    assertThat(ConversionPlan.forFlag("flags/kept", changed)).isSameAs(recompiled);
+  }
+
+  @Test
+  public void convertsNestedValues() {
+    final Struct struct =
+        Structs.of(
+            "count",
+            Values.of(3),
+            "nested",
+            Values.of(
+                Structs.of(
+                    "tags",
+                    Values.of(
+                        ListValue.newBuilder()
+                            .addValues(Values.of("a"))
+                            .addValues(Values.ofNull())
+                            .build()))));
+
+    final Value value = ConversionPlan.compile(schema()).convert(struct);
+
+    assertThat(value.asStructure().getValue("count").asInteger()).isEqualTo(3);
+    final List<Value> tags =
+        value.asStructure().getValue("nested").asStructure().getValue("tags").asList();
+    assertThat(tags).hasSize(2);
+    assertThat(tags.get(0).asString()).isEqualTo("a");
+    assertThat(tags.get(1).isNull()).isTrue();
+  }
+
+  @Test
+  public void failsForFieldsWithoutSchemaAndMismatchingValues() {
+    final ConversionPlan plan = ConversionPlan.compile(schema());
+
+    assertThatThrownBy(() -> plan.convert(Structs.of("other", Values.of(1))))
+        .isInstanceOf(ParseError.class)
+        .hasMessage("Lacking schema for field 'other'");
+    assertThatThrownBy(() -> plan.convert(Structs.of("count", Values.of(1.5))))
+        .isInstanceOf(ParseError.class)
+        .hasMessage(
+            "Mismatch between schema and value: value should be an int, but it is a double/long");
+    assertThatThrownBy(() -> plan.convert(Structs.of("count", Values.of("3"))))
+        .isInstanceOf(ParseError.class)
+        .hasMessage(
+            "Mismatch between schema and value: value is a String, but it should be something else");
+  }
+
+  @Test
+  public void pathLookupOnlyConvertsValuesOnThePath() {
+    // "count" doesn't match its schema, but is not on the path
+    final Struct struct =
+        Structs.of(
+            "count",
+            Values.of("not-a-number"),
+            "nested",
+            Values.of(Structs.of("tags", Values.of(ListValue.getDefaultInstance()))));
+    final ConversionPlan plan = ConversionPlan.compile(schema());
+
+    assertThat(plan.convert(struct, List.of("nested", "tags")).asList()).isEmpty();
+    assertThatThrownBy(() -> plan.convert(struct, List.of("nested", "tags", "first")))
+        .isInstanceOf(TypeMismatchError.class)
+        .hasMessage(
+            "Illegal attempt to derive field 'first' on non-structure value '%s'",
+            new Value(List.of()));
+  }
+
+  private static StructFlagSchema parsed(StructFlagSchema schema) throws Exception {
+    return StructFlagSchema.parseFrom(schema.toByteArray());
+  }
+
+  private static StructFlagSchema schema() {
+    final FlagSchema tags =
+        FlagSchema.newBuilder()
+            .setListSchema(ListFlagSchema.newBuilder().setElementSchema(STRING))
+            .build();
+    return StructFlagSchema.newBuilder()
+        .putSchema("count", INT)
+        .putSchema(
+            "nested",
+            FlagSchema.newBuilder()
+                .setStructSchema(StructFlagSchema.newBuilder().putSchema("tags", tags))
+                .build())
+        .build();
+  }
+}
@@ -0,0 +1,115 @@
+package com.spotify.confidence;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.protobuf.Struct;
+import com.google.protobuf.util.Values;
+import dev.openfeature.sdk.ImmutableContext;
+import dev.openfeature.sdk.MutableContext;
+import dev.openfeature.sdk.MutableStructure;
+import dev.openfeature.sdk.Value;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+final class EvaluationContextConverterTest {
+
+  private final EvaluationContextConverter converter = new EvaluationContextConverter(10);
+
+  @Test
+  public void equalContextsAreConvertedToEqualStructs() {
+    final Struct first =
+        converter.convert(new MutableContext("user", Map.of("country", new Value("SE"))));
+    final Struct second =
+        converter.convert(new MutableContext("user", Map.of("country", new Value("SE"))));
+
+    assertThat(second).isEqualTo(first);
+    assertThat(first.getFieldsMap())
+        .containsEntry("country", Values.of("SE"))
+        .containsEntry(ConfidenceFeatureProvider.TARGETING_KEY, Values.of("user"));
+  }
+
+  @Test
+  public void changedContextIsConvertedAgain() {
+    final MutableContext context = new MutableContext("user", Map.of("country", new Value("SE")));
+    final Struct before = converter.convert(context);
+
+    context.add("country", "NO");
+    final Struct after = converter.convert(context);
+
+    assertThat(after).isNotSameAs(before);
+    assertThat(after.getFieldsMap()).containsEntry("country", Values.of("NO"));
+  }
+
+  @Test
+  public void equalImmutableContextsShareAConversion() {
+    final Struct first = converter.convert(immutableContext("user", "SE"));
+
+    // the OpenFeature client merges a new context for every evaluation
+    assertThat(
+            converter.convert(
+                new ImmutableContext("user")
+                    .merge(new ImmutableContext(Map.of("user", nested("SE"))))))
+        .isSameAs(first);
+    assertThat(converter.convert(immutableContext("user", "NO"))).isNotSameAs(first);
+    assertThat(converter.convert(immutableContext("other", "SE"))).isNotSameAs(first);
+    assertThat(first.getFieldsMap())
+        .containsEntry(ConfidenceFeatureProvider.TARGETING_KEY, Values.of("user"));
+  }
+
+  @Test
+  public void mutatingTheStructureOfAnImmutableContextDoesNotChangeItsConversion() {
+    final MutableStructure user = new MutableStructure(Map.of("country", new Value("SE")));
+    final ImmutableContext context = new ImmutableContext("user", Map.of("user", new Value(user)));
+    final Struct before = converter.convert(context);
+
+    user.add("country", "NO");
+
+    assertThat(converter.convert(context)).isSameAs(before);
+    assertThat(converter.convert(immutableContext("user", "NO"))).isNotSameAs(before);
+  }
+
+  @Test
+  public void immutableContextsWithStructuresInListsAreConvertedEveryTime() {
+    final MutableStructure user = new MutableStructure(Map.of("country", new Value("SE")));
+    final ImmutableContext context = contextWithListOf(user);
+    final Struct before = converter.convert(context);
+    assertThat(
+            converter.convert(
+                contextWithListOf(new MutableStructure(Map.of("country", new Value("SE"))))))
+        .isEqualTo(before)
+        .isNotSameAs(before);
+
+    // the list is copied element by element, so the structure in it is shared with the context
+    user.add("country", "NO");
+    final Struct after = converter.convert(context);
+
+    assertThat(after).isNotSameAs(before);
+    assertThat(
+            after
+                .getFieldsOrThrow("nested")
+                .getStructValue()
+                .getFieldsOrThrow("users")
+                .getListValue()
+                .getValues(0)
+                .getStructValue()
+                .getFieldsMap())
+        .containsEntry("country", Values.of("NO"));
+  }
+
+  private static ImmutableContext contextWithListOf(MutableStructure user) {
+    return new ImmutableContext(
+        "user",
+        Map.of(
+            "nested",
+            new Value(new MutableStructure(Map.of("users", new Value(List.of(new Value(user))))))));
+  }
+
+  private static ImmutableContext immutableContext(String targetingKey, String country) {
+    return new ImmutableContext(targetingKey, Map.of("user", nested(country)));
+  }
+
+  private static Value nested(String country) {
+    return new Value(new MutableStructure(Map.of("country", new Value(country))));
+  }
+}
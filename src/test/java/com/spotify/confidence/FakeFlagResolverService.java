@@ -0,0 +1,229 @@
+package com.spotify.confidence;
+
+import com.google.common.base.Strings;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Struct;
+import com.google.protobuf.util.Values;
+import com.spotify.confidence.flags.resolver.v1.ApplyFlagsRequest;
+import com.spotify.confidence.flags.resolver.v1.ApplyFlagsResponse;
+import com.spotify.confidence.flags.resolver.v1.FlagResolverServiceGrpc.FlagResolverServiceImplBase;
+import com.spotify.confidence.flags.resolver.v1.ResolveFlagsRequest;
+import com.spotify.confidence.flags.resolver.v1.ResolveFlagsResponse;
+import com.spotify.confidence.flags.resolver.v1.ResolvedFlag;
+import com.spotify.confidence.flags.types.v1.FlagSchema;
+import com.spotify.confidence.flags.types.v1.FlagSchema.StringFlagSchema;
+import com.spotify.confidence.flags.types.v1.FlagSchema.StructFlagSchema;
+import io.grpc.Status.Code;
+import io.grpc.stub.StreamObserver;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * A resolver service for load tests, which resolves every requested flag to a generated value after
+ * an injected latency, or fails with injected errors. Responses are sent from a scheduler rather
+ * than a sleeping thread, so that thousands of concurrent calls can be delayed at once.
+ */
+final class FakeFlagResolverService extends FlagResolverServiceImplBase {
+
+  private final LongSupplier latencyNanos;
+  private final Map<Code, Double> errorRates;
+  private final int fieldsPerFlag;
+  private final int fieldBytes;
+  private final int flagsOfEmptyRequest;
+  private final ScheduledExecutorService scheduler =
+      Executors.newScheduledThreadPool(
+          2,
+          runnable -> {
+            final Thread thread = new Thread(runnable, "fake-resolver");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  private final Map<String, ResolvedFlag> resolvedFlags = new ConcurrentHashMap<>();
+  private final LongAdder resolves = new LongAdder();
+  private final LongAdder errors = new LongAdder();
+  private final LongAdder applies = new LongAdder();
+
+  private FakeFlagResolverService(Builder builder) {
+    this.latencyNanos = builder.latencyNanos;
+    this.errorRates = new EnumMap<>(builder.errorRates);
+    this.fieldsPerFlag = builder.fieldsPerFlag;
+    this.fieldBytes = builder.fieldBytes;
+    this.flagsOfEmptyRequest = builder.flagsOfEmptyRequest;
+  }
+
+  static Builder builder() {
+    return new Builder();
+  }
+
+  /** Latency that is always the same */
+  static LongSupplier fixedLatency(Duration latency) {
+    final long nanos = latency.toNanos();
+    return () -> nanos;
+  }
+
+  /** Log-normally distributed latency, the usual shape of service latencies, with a long tail */
+  static LongSupplier logNormalLatency(Duration median, Duration p99) {
+    final double mu = Math.log(median.toNanos());
+    // the 99th percentile of a standard normal distribution
+    final double sigma = (Math.log(p99.toNanos()) - mu) / 2.326;
+    return () -> (long) Math.exp(mu + sigma * ThreadLocalRandom.current().nextGaussian());
+  }
+
+  long resolveCount() {
+    return resolves.sum();
+  }
+
+  long errorCount() {
+    return errors.sum();
+  }
+
+  long applyCount() {
+    return applies.sum();
+  }
+
+  void shutdown() {
+    scheduler.shutdownNow();
+  }
+
+  @Override
+  public void resolveFlags(
+      ResolveFlagsRequest request, StreamObserver<ResolveFlagsResponse> responseObserver) {
+    resolves.increment();
+    final Code error = injectedError();
+    final Runnable respond;
+    if (error != null) {
+      errors.increment();
+      respond =
+          () ->
+              responseObserver.onError(
+                  error.toStatus().withDescription("Injected error").asRuntimeException());
+    } else {
+      final ResolveFlagsResponse response = response(request);
+      respond =
+          () -> {
+            responseObserver.onNext(response);
+            responseObserver.onCompleted();
+          };
+    }
+    final long delay = latencyNanos.getAsLong();
+    if (delay <= 0) {
+      respond.run();
+    } else {
+      scheduler.schedule(respond, delay, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  @Override
+  public void applyFlags(
+      ApplyFlagsRequest request, StreamObserver<ApplyFlagsResponse> responseObserver) {
+    applies.increment();
+    responseObserver.onNext(ApplyFlagsResponse.getDefaultInstance());
+    responseObserver.onCompleted();
+  }
+
+  private Code injectedError() {
+    double draw = ThreadLocalRandom.current().nextDouble();
+    for (Map.Entry<Code, Double> errorRate : errorRates.entrySet()) {
+      draw -= errorRate.getValue();
+      if (draw < 0) {
+        return errorRate.getKey();
+      }
+    }
+    return null;
+  }
+
+  private ResolveFlagsResponse response(ResolveFlagsRequest request) {
+    final ResolveFlagsResponse.Builder response =
+        ResolveFlagsResponse.newBuilder().setResolveToken(ByteString.copyFromUtf8("token"));
+    if (request.getFlagsCount() == 0) {
+      for (int i = 0; i < flagsOfEmptyRequest; i++) {
+        response.addResolvedFlags(resolvedFlag("flags/flag-" + i));
+      }
+    }
+    for (String flag : request.getFlagsList()) {
+      response.addResolvedFlags(resolvedFlag(flag));
+    }
+    return response.build();
+  }
+
+  private ResolvedFlag resolvedFlag(String flag) {
+    return resolvedFlags.computeIfAbsent(
+        flag,
+        name -> {
+          final Struct.Builder value = Struct.newBuilder();
+          final StructFlagSchema.Builder schema = StructFlagSchema.newBuilder();
+          final FlagSchema string =
+              FlagSchema.newBuilder()
+                  .setStringSchema(StringFlagSchema.getDefaultInstance())
+                  .build();
+          for (int i = 0; i < fieldsPerFlag; i++) {
+            final String field = i == 0 ? "title" : "field-" + i;
+            value.putFields(field, Values.of(Strings.repeat("x", fieldBytes)));
+            schema.putSchema(field, string);
+          }
+          return ResolvedFlag.newBuilder()
+              .setFlag(name)
+              .setVariant(name + "/variants/fake")
+              .setValue(value)
+              .setFlagSchema(schema)
+              .build();
+        });
+  }
+
+  static final class Builder {
+
+    private LongSupplier latencyNanos = () -> 0;
+    private final Map<Code, Double> errorRates = new EnumMap<>(Code.class);
+    private int fieldsPerFlag = 1;
+    private int fieldBytes = 8;
+    private int flagsOfEmptyRequest = 10;
+
+    private Builder() {}
+
+    /** Sets the latency of each call, in nanoseconds. Defaults to responding right away. */
+    Builder latency(LongSupplier latencyNanos) {
+      this.latencyNanos = latencyNanos;
+      return this;
+    }
+
+    /** Fails the given fraction of the resolves with the status code */
+    Builder errorRate(Code code, double rate) {
+      if (code == Code.OK || rate < 0 || rate > 1) {
+        throw new IllegalArgumentException("code must be an error and rate between 0 and 1.");
+      }
+      errorRates.put(code, rate);
+      return this;
+    }
+
+    /**
+     * Sets the size of the responses: the string fields of each flag value and their length, and
+     * the number of flags returned for a resolve of all flags
+     */
+    Builder responseSize(int fieldsPerFlag, int fieldBytes, int flagsOfEmptyRequest) {
+      if (fieldsPerFlag <= 0 || fieldBytes < 0 || flagsOfEmptyRequest < 0) {
+        throw new IllegalArgumentException("Response sizes must not be negative.");
+      }
+      this.fieldsPerFlag = fieldsPerFlag;
+      this.fieldBytes = fieldBytes;
+      this.flagsOfEmptyRequest = flagsOfEmptyRequest;
+      return this;
+    }
+
+    FakeFlagResolverService build() {
+      final double total = errorRates.values().stream().mapToDouble(Double::doubleValue).sum();
+      if (total > 1) {
+        throw new IllegalArgumentException("The error rates must add up to at most 1.");
+      }
+      return new FakeFlagResolverService(this);
+    }
+  }
+}
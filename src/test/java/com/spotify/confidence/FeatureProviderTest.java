@@ -2,13 +2,17 @@ package com.spotify.confidence;
 
 import static dev.openfeature.sdk.ErrorCode.GENERAL;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 
+import com.google.protobuf.ByteString;
 import com.google.protobuf.Struct;
 import com.google.protobuf.util.Structs;
 import com.google.protobuf.util.Values;
+import com.spotify.confidence.flags.resolver.v1.ApplyFlagsRequest;
+import com.spotify.confidence.flags.resolver.v1.ApplyFlagsResponse;
 import com.spotify.confidence.flags.resolver.v1.FlagResolverServiceGrpc.FlagResolverServiceImplBase;
 import com.spotify.confidence.flags.resolver.v1.ResolveFlagsRequest;
 import com.spotify.confidence.flags.resolver.v1.ResolveFlagsResponse;
@@ -28,21 +32,41 @@ import dev.openfeature.sdk.FlagEvaluationDetails;
 import dev.openfeature.sdk.MutableContext;
 import dev.openfeature.sdk.MutableStructure;
 import dev.openfeature.sdk.OpenFeatureAPI;
+import dev.openfeature.sdk.ProviderEvaluation;
 import dev.openfeature.sdk.ProviderState;
 import dev.openfeature.sdk.Value;
+import dev.openfeature.sdk.exceptions.FlagNotFoundError;
+import dev.openfeature.sdk.exceptions.GeneralError;
+import dev.openfeature.sdk.exceptions.TypeMismatchError;
+import io.grpc.Context;
 import io.grpc.ManagedChannel;
 import io.grpc.Server;
 import io.grpc.Status;
 import io.grpc.inprocess.InProcessChannelBuilder;
 import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 final class FeatureProviderTest {
 
@@ -526,6 +550,661 @@ final class FeatureProviderTest {
     assertThat(evaluationDetails.getValue()).isEqualTo(defaultValue);
   }
 
+  @Test
+  public void cachedResolveShouldOnlyCallBackendOnce() {
+    final AtomicInteger resolveCount = new AtomicInteger();
+    mockResolve(
+        (resolveFlagRequest, streamObserver) -> {
+          resolveCount.incrementAndGet();
+          streamObserver.onNext(generateSampleResponse(Collections.emptyList()));
+          streamObserver.onCompleted();
+        });
+    final ConfidenceFeatureProvider provider =
+        ConfidenceFeatureProvider.builder("fake-secret")
+            .channel(InProcessChannelBuilder.forName(serverName).directExecutor().build())
+            .resolveCache(100, Duration.ofMinutes(1))
+            .build();
+    openFeatureAPI.setProvider(provider);
+
+    assertThat(client.getBooleanValue("flag.prop-A", true, SAMPLE_CONTEXT)).isFalse();
+    assertThat(client.getIntegerValue("flag.prop-E", 1000, SAMPLE_CONTEXT)).isEqualTo(50);
+    assertThat(client.getIntegerValue("flag.prop-E", 1000, SAMPLE_CONTEXT_WITHOUT_TARGETING_KEY))
+        .isEqualTo(50);
+
+    assertThat(resolveCount.get()).isEqualTo(2);
+    assertThat(provider.getCacheStats().getHitCount()).isEqualTo(1);
+    assertThat(provider.getCacheStats().getMissCount()).isEqualTo(2);
+    assertThat(provider.getCacheStats().getSize()).isEqualTo(2);
+  }
+
+  @Test
+  public void prefetchedFlagsShouldBeServedFromSnapshot() {
+    final List<ResolveFlagsRequest> requests = Collections.synchronizedList(new ArrayList<>());
+    mockResolve(
+        (resolveFlagRequest, streamObserver) -> {
+          requests.add(resolveFlagRequest);
+          streamObserver.onNext(generateSampleResponse(Collections.emptyList()));
+          streamObserver.onCompleted();
+        });
+    // replacing the provider shuts down the previous one and its channel
+    final ConfidenceFeatureProvider provider =
+        new ConfidenceFeatureProvider(
+            "fake-secret", InProcessChannelBuilder.forName(serverName).directExecutor().build());
+    openFeatureAPI.setProvider(provider);
+
+    provider.prefetch(SAMPLE_CONTEXT, List.of());
+
+    assertThat(client.getBooleanValue("flag.prop-A", true, SAMPLE_CONTEXT)).isFalse();
+    assertThat(client.getStringValue("flag.prop-B.prop-C", "default", SAMPLE_CONTEXT))
+        .isEqualTo("str-val");
+    final FlagEvaluationDetails<Value> notFound =
+        client.getObjectDetails("other-flag", DEFAULT_VALUE, SAMPLE_CONTEXT);
+    assertThat(notFound.getErrorCode()).isEqualTo(ErrorCode.FLAG_NOT_FOUND);
+    assertThat(requests).hasSize(1);
+    assertThat(requests.get(0).getFlagsList()).isEmpty();
+
+    provider.clearPrefetched(SAMPLE_CONTEXT);
+    assertThat(client.getBooleanValue("flag.prop-A", true, SAMPLE_CONTEXT)).isFalse();
+    assertThat(requests).hasSize(2);
+    assertThat(requests.get(1).getFlagsList()).containsExactly("flags/flag");
+  }
+
+  @Test
+  public void prefetchedFlagsShouldOnlyBeAppliedWhenEvaluated() {
+    final List<ResolveFlagsRequest> resolveRequests =
+        Collections.synchronizedList(new ArrayList<>());
+    mockResolve(
+        (resolveFlagRequest, streamObserver) -> {
+          resolveRequests.add(resolveFlagRequest);
+          streamObserver.onNext(
+              ResolveFlagsResponse.newBuilder()
+                  .addResolvedFlags(generateResolvedFlag(Collections.emptyList()))
+                  .addResolvedFlags(
+                      generateResolvedFlag(Collections.emptyList()).toBuilder()
+                          .setFlag("flags/other-flag"))
+                  .setResolveToken(ByteString.copyFromUtf8("token"))
+                  .build());
+          streamObserver.onCompleted();
+        });
+    final List<ApplyFlagsRequest> applyRequests = Collections.synchronizedList(new ArrayList<>());
+    doAnswer(
+            invocation -> {
+              applyRequests.add(invocation.getArgument(0));
+              final StreamObserver<ApplyFlagsResponse> streamObserver = invocation.getArgument(1);
+              streamObserver.onNext(ApplyFlagsResponse.getDefaultInstance());
+              streamObserver.onCompleted();
+              return null;
+            })
+        .when(serviceImpl)
+        .applyFlags(any(), any());
+    final ConfidenceFeatureProvider provider =
+        new ConfidenceFeatureProvider("fake-secret", channel);
+
+    provider.prefetch(SAMPLE_CONTEXT, List.of());
+    assertThat(resolveRequests).hasSize(1);
+    assertThat(resolveRequests.get(0).getApply()).isFalse();
+    assertThat(applyRequests).isEmpty();
+
+    assertThat(provider.getBooleanEvaluation("flag.prop-A", true, SAMPLE_CONTEXT).getValue())
+        .isFalse();
+    assertThat(provider.getIntegerEvaluation("flag.prop-E", 1000, SAMPLE_CONTEXT).getValue())
+        .isEqualTo(50);
+
+    assertThat(applyRequests).hasSize(1);
+    final ApplyFlagsRequest applyRequest = applyRequests.get(0);
+    assertThat(applyRequest.getResolveToken()).isEqualTo(ByteString.copyFromUtf8("token"));
+    assertThat(applyRequest.getClientSecret()).isEqualTo("fake-secret");
+    assertThat(applyRequest.getFlagsList()).hasSize(1);
+    assertThat(applyRequest.getFlags(0).getFlag()).isEqualTo("flags/flag");
+    assertThat(resolveRequests).hasSize(1);
+  }
+
+  @Test
+  public void concurrentResolvesShouldBeBatched() throws Exception {
+    final List<ResolveFlagsRequest> requests = Collections.synchronizedList(new ArrayList<>());
+    mockResolve(
+        (resolveFlagRequest, streamObserver) -> {
+          requests.add(resolveFlagRequest);
+          final ResolveFlagsResponse.Builder response = ResolveFlagsResponse.newBuilder();
+          resolveFlagRequest
+              .getFlagsList()
+              .forEach(
+                  flag ->
+                      response.addResolvedFlags(
+                          generateResolvedFlag(Collections.emptyList()).toBuilder().setFlag(flag)));
+          streamObserver.onNext(response.build());
+          streamObserver.onCompleted();
+        });
+    final ConfidenceFeatureProvider provider =
+        ConfidenceFeatureProvider.builder("fake-secret")
+            .channel(channel)
+            .batching(Duration.ofMillis(200), 100)
+            .build();
+
+    final List<String> flags = List.of("flag-1", "flag-2", "flag-3", "flag-1");
+    final ExecutorService executor = Executors.newFixedThreadPool(flags.size());
+    try {
+      final List<Future<Integer>> results = new ArrayList<>();
+      for (String flag : flags) {
+        results.add(
+            executor.submit(
+                () ->
+                    provider
+                        .getIntegerEvaluation(flag + ".prop-E", 1000, SAMPLE_CONTEXT)
+                        .getValue()));
+      }
+      for (Future<Integer> result : results) {
+        assertThat(result.get()).isEqualTo(50);
+      }
+    } finally {
+      executor.shutdownNow();
+      provider.shutdown();
+    }
+
+    assertThat(requests).hasSize(1);
+    assertThat(requests.get(0).getFlagsList())
+        .containsExactlyInAnyOrder("flags/flag-1", "flags/flag-2", "flags/flag-3");
+  }
+
+  @Test
+  public void deferredApplyShouldApplyEvaluatedFlagsOncePerResolveToken() {
+    final List<ResolveFlagsRequest> resolveRequests =
+        Collections.synchronizedList(new ArrayList<>());
+    mockResolve(
+        (resolveFlagRequest, streamObserver) -> {
+          resolveRequests.add(resolveFlagRequest);
+          streamObserver.onNext(
+              generateSampleResponse(Collections.emptyList()).toBuilder()
+                  .setResolveToken(ByteString.copyFromUtf8("token"))
+                  .build());
+          streamObserver.onCompleted();
+        });
+    final List<ApplyFlagsRequest> applyRequests = Collections.synchronizedList(new ArrayList<>());
+    doAnswer(
+            invocation -> {
+              applyRequests.add(invocation.getArgument(0));
+              final StreamObserver<ApplyFlagsResponse> streamObserver = invocation.getArgument(1);
+              streamObserver.onNext(ApplyFlagsResponse.getDefaultInstance());
+              streamObserver.onCompleted();
+              return null;
+            })
+        .when(serviceImpl)
+        .applyFlags(any(), any());
+    final ConfidenceFeatureProvider provider =
+        ConfidenceFeatureProvider.builder("fake-secret")
+            .channel(channel)
+            .resolveCache(100, Duration.ofMinutes(1))
+            .deferredApply(Duration.ofHours(1), 100, 1000, ApplyBackpressurePolicy.DROP_OLDEST)
+            .build();
+
+    assertThat(provider.getBooleanEvaluation("flag.prop-A", true, SAMPLE_CONTEXT).getValue())
+        .isFalse();
+    assertThat(provider.getIntegerEvaluation("flag.prop-E", 1000, SAMPLE_CONTEXT).getValue())
+        .isEqualTo(50);
+    assertThat(applyRequests).isEmpty();
+
+    provider.shutdown();
+
+    assertThat(resolveRequests).hasSize(1);
+    assertThat(resolveRequests.get(0).getApply()).isFalse();
+    assertThat(applyRequests).hasSize(1);
+    final ApplyFlagsRequest applyRequest = applyRequests.get(0);
+    assertThat(applyRequest.getResolveToken()).isEqualTo(ByteString.copyFromUtf8("token"));
+    assertThat(applyRequest.getClientSecret()).isEqualTo("fake-secret");
+    assertThat(applyRequest.hasSendTime()).isTrue();
+    assertThat(applyRequest.getFlagsList()).hasSize(1);
+    assertThat(applyRequest.getFlags(0).getFlag()).isEqualTo("flags/flag");
+    assertThat(applyRequest.getFlags(0).hasApplyTime()).isTrue();
+    assertThat(provider.getApplyStats().getSentCount()).isEqualTo(1);
+    assertThat(provider.getApplyStats().getFailedCount()).isZero();
+  }
+
+  @Test
+  public void asyncEvaluationsShouldCompleteWithTypedValues() throws Exception {
+    mockSampleResponse();
+    final ConfidenceFeatureProvider provider =
+        new ConfidenceFeatureProvider("fake-secret", channel);
+
+    assertThat(
+            provider
+                .getBooleanEvaluationAsync("flag.prop-A", true, SAMPLE_CONTEXT)
+                .get(5, TimeUnit.SECONDS)
+                .getValue())
+        .isFalse();
+    assertThat(
+            provider
+                .getStringEvaluationAsync("flag.prop-B.prop-C", "default", SAMPLE_CONTEXT)
+                .get(5, TimeUnit.SECONDS)
+                .getValue())
+        .isEqualTo("str-val");
+    assertThat(
+            provider
+                .getIntegerEvaluationAsync("flag.prop-E", 1000, SAMPLE_CONTEXT)
+                .get(5, TimeUnit.SECONDS)
+                .getValue())
+        .isEqualTo(50);
+    final ProviderEvaluation<Double> evaluation =
+        provider
+            .getDoubleEvaluationAsync("flag.prop-B.prop-D", 1.0, SAMPLE_CONTEXT)
+            .get(5, TimeUnit.SECONDS);
+    assertThat(evaluation.getValue()).isEqualTo(5.3);
+    assertThat(evaluation.getVariant()).isEqualTo("flags/flag/variants/var-A");
+
+    assertThatThrownBy(
+            () ->
+                provider
+                    .getStringEvaluationAsync("flag.prop-E", "default", SAMPLE_CONTEXT)
+                    .get(5, TimeUnit.SECONDS))
+        .hasCauseInstanceOf(TypeMismatchError.class);
+  }
+
+  @Test
+  public void asyncEvaluationShouldFailWithTheErrorsOfBlockingEvaluations() {
+    mockResolve(
+        (request, streamObserver) -> streamObserver.onError(Status.UNAVAILABLE.asException()));
+    final ConfidenceFeatureProvider provider =
+        new ConfidenceFeatureProvider("fake-secret", channel);
+
+    assertThatThrownBy(
+            () ->
+                provider
+                    .getObjectEvaluationAsync("flag", DEFAULT_VALUE, SAMPLE_CONTEXT)
+                    .get(5, TimeUnit.SECONDS))
+        .isInstanceOf(ExecutionException.class)
+        .cause()
+        .isInstanceOf(GeneralError.class)
+        .hasMessage("Provider backend is unavailable");
+  }
+
+  @Test
+  public void cancellingAsyncEvaluationShouldCancelTheResolveCall() throws Exception {
+    final CountDownLatch cancelled = new CountDownLatch(1);
+    mockResolve(
+        (request, streamObserver) ->
+            // never responds
+            ((ServerCallStreamObserver<ResolveFlagsResponse>) streamObserver)
+                .setOnCancelHandler(cancelled::countDown));
+    final ConfidenceFeatureProvider provider =
+        new ConfidenceFeatureProvider("fake-secret", channel);
+
+    final CompletableFuture<ProviderEvaluation<Boolean>> evaluation =
+        provider.getBooleanEvaluationAsync("flag.prop-A", true, SAMPLE_CONTEXT);
+    assertThat(evaluation).isNotDone();
+
+    evaluation.cancel(true);
+
+    assertThat(cancelled.await(5, TimeUnit.SECONDS)).isTrue();
+  }
+
+  @Test
+  public void asyncMultiFlagEvaluationShouldResolveInOneCall() throws Exception {
+    final List<ResolveFlagsRequest> requests = Collections.synchronizedList(new ArrayList<>());
+    mockResolve(
+        (resolveFlagRequest, streamObserver) -> {
+          requests.add(resolveFlagRequest);
+          final ResolveFlagsResponse.Builder response = ResolveFlagsResponse.newBuilder();
+          resolveFlagRequest.getFlagsList().stream()
+              .filter(flag -> !flag.equals("flags/missing"))
+              .forEach(
+                  flag ->
+                      response.addResolvedFlags(
+                          generateResolvedFlag(Collections.emptyList()).toBuilder().setFlag(flag)));
+          streamObserver.onNext(response.build());
+          streamObserver.onCompleted();
+        });
+    final ConfidenceFeatureProvider provider =
+        new ConfidenceFeatureProvider("fake-secret", channel);
+
+    final Map<String, ProviderEvaluation<Value>> evaluations =
+        provider
+            .getObjectEvaluationsAsync(
+                Map.of(
+                    "flag-1.prop-E", new Value(1000),
+                    "flag-1.prop-A", new Value(true),
+                    "flag-2.prop-B.prop-C", new Value("default"),
+                    "missing", DEFAULT_VALUE),
+                SAMPLE_CONTEXT)
+            .get(5, TimeUnit.SECONDS);
+
+    assertThat(requests).hasSize(1);
+    assertThat(requests.get(0).getFlagsList())
+        .containsExactlyInAnyOrder("flags/flag-1", "flags/flag-2", "flags/missing");
+    assertThat(evaluations.get("flag-1.prop-E").getValue().asInteger()).isEqualTo(50);
+    assertThat(evaluations.get("flag-1.prop-A").getValue().asBoolean()).isFalse();
+    assertThat(evaluations.get("flag-2.prop-B.prop-C").getValue().asString()).isEqualTo("str-val");
+    final ProviderEvaluation<Value> missing = evaluations.get("missing");
+    assertThat(missing.getValue()).isEqualTo(DEFAULT_VALUE);
+    assertThat(missing.getReason()).isEqualTo("ERROR");
+    assertThat(missing.getErrorCode()).isEqualTo(ErrorCode.FLAG_NOT_FOUND);
+    assertThat(missing.getErrorMessage()).isEqualTo("No active flag 'missing' was found");
+  }
+
+  @Test
+  public void resolveHistoryShouldServeLastKnownGoodWhenBackendIsUnavailable() throws Exception {
+    mockSampleResponse();
+    final ConfidenceFeatureProvider provider =
+        ConfidenceFeatureProvider.builder("fake-secret")
+            .channel(channel)
+            .resolveHistory(100)
+            .build();
+    assertThat(provider.getIntegerEvaluation("flag.prop-E", 1000, SAMPLE_CONTEXT).getReason())
+        .isNull();
+
+    mockResolve(
+        (request, streamObserver) -> streamObserver.onError(Status.UNAVAILABLE.asException()));
+
+    final ProviderEvaluation<Integer> evaluation =
+        provider.getIntegerEvaluation("flag.prop-E", 1000, SAMPLE_CONTEXT);
+    assertThat(evaluation.getValue()).isEqualTo(50);
+    assertThat(evaluation.getVariant()).isEqualTo("flags/flag/variants/var-A");
+    assertThat(evaluation.getReason()).isEqualTo("STALE");
+    assertThat(
+            provider
+                .getBooleanEvaluationAsync("flag.prop-A", true, SAMPLE_CONTEXT)
+                .get(5, TimeUnit.SECONDS)
+                .getReason())
+        .isEqualTo("STALE");
+    assertThatThrownBy(
+            () -> provider.getIntegerEvaluation("other-flag.prop-E", 1000, SAMPLE_CONTEXT))
+        .isInstanceOf(GeneralError.class)
+        .hasMessage("Provider backend is unavailable");
+
+    mockResolve(
+        (request, streamObserver) -> streamObserver.onError(Status.UNAUTHENTICATED.asException()));
+
+    assertThatThrownBy(() -> provider.getIntegerEvaluation("flag.prop-E", 1000, SAMPLE_CONTEXT))
+        .isInstanceOf(GeneralError.class)
+        .hasMessage("UNAUTHENTICATED");
+  }
+
+  @Test
+  public void perFlagDeadlineShouldOverrideTheDefaultDeadline() {
+    // never responds
+    mockResolve((request, streamObserver) -> {});
+    final ConfidenceFeatureProvider provider =
+        ConfidenceFeatureProvider.builder("fake-secret")
+            .channel(channel)
+            .deadline(Duration.ofMinutes(1))
+            .deadline("flag", Duration.ofMillis(50))
+            .build();
+
+    final long start = System.nanoTime();
+    assertThatThrownBy(() -> provider.getIntegerEvaluation("flag.prop-E", 1000, SAMPLE_CONTEXT))
+        .isInstanceOf(GeneralError.class)
+        .hasMessage("Deadline exceeded when calling provider backend");
+    assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(30));
+  }
+
+  @Test
+  public void spentDeadlineBudgetShouldServeKnownFlagsWithoutResolving() {
+    final AtomicInteger requests = new AtomicInteger();
+    mockResolve(
+        (resolveFlagRequest, streamObserver) -> {
+          requests.incrementAndGet();
+          streamObserver.onNext(generateSampleResponse(Collections.emptyList()));
+          streamObserver.onCompleted();
+        });
+    final ConfidenceFeatureProvider provider =
+        ConfidenceFeatureProvider.builder("fake-secret")
+            .channel(channel)
+            .resolveCache(100, Duration.ofMinutes(1))
+            .build();
+    assertThat(provider.getIntegerEvaluation("flag.prop-E", 1000, SAMPLE_CONTEXT).getValue())
+        .isEqualTo(50);
+
+    final DeadlineBudget budget = DeadlineBudget.start(Duration.ZERO);
+    assertThat(budget.isExpired()).isTrue();
+    assertThat(budget.remaining()).isZero();
+    budget.run(
+        () -> {
+          assertThat(provider.getIntegerEvaluation("flag.prop-E", 1000, SAMPLE_CONTEXT).getValue())
+              .isEqualTo(50);
+          assertThatThrownBy(
+                  () -> provider.getIntegerEvaluation("other-flag.prop-E", 1000, SAMPLE_CONTEXT))
+              .isInstanceOf(GeneralError.class)
+              .hasMessage("Deadline exceeded when calling provider backend");
+          assertThat(provider.getIntegerEvaluationAsync("other-flag.prop-E", 1000, SAMPLE_CONTEXT))
+              .isCompletedExceptionally();
+        });
+
+    assertThat(requests).hasValue(1);
+  }
+
+  @Test
+  public void batchedEvaluationShouldHonorTheDeadlineOfTheGrpcContext() {
+    // never responds
+    mockResolve((request, streamObserver) -> {});
+    final ConfidenceFeatureProvider provider =
+        ConfidenceFeatureProvider.builder("fake-secret")
+            .channel(channel)
+            .deadline(Duration.ofMinutes(1))
+            .batching(Duration.ofMillis(1), 10)
+            .build();
+    final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    final Context.CancellableContext context =
+        Context.current().withDeadlineAfter(50, TimeUnit.MILLISECONDS, executor);
+    try {
+      final long start = System.nanoTime();
+      context.run(
+          () ->
+              assertThatThrownBy(
+                      () -> provider.getIntegerEvaluation("flag.prop-E", 1000, SAMPLE_CONTEXT))
+                  .isInstanceOf(GeneralError.class)
+                  .hasMessage("Deadline exceeded when calling provider backend"));
+      assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(30));
+    } finally {
+      context.cancel(null);
+      executor.shutdownNow();
+      provider.shutdown();
+    }
+  }
+
+  @Test
+  public void batchFilledByACancelledEvaluationShouldStillResolveForOtherEvaluations()
+      throws Exception {
+    mockResolve(
+        (resolveFlagRequest, streamObserver) -> {
+          final ResolveFlagsResponse.Builder response = ResolveFlagsResponse.newBuilder();
+          resolveFlagRequest
+              .getFlagsList()
+              .forEach(
+                  flag ->
+                      response.addResolvedFlags(
+                          generateResolvedFlag(Collections.emptyList()).toBuilder().setFlag(flag)));
+          streamObserver.onNext(response.build());
+          streamObserver.onCompleted();
+        });
+    final ConfidenceFeatureProvider provider =
+        ConfidenceFeatureProvider.builder("fake-secret")
+            .channel(channel)
+            .batching(Duration.ofMinutes(1), 2)
+            .build();
+    final Context.CancellableContext cancelled = Context.current().withCancellation();
+    cancelled.cancel(null);
+    try {
+      final CompletableFuture<ProviderEvaluation<Integer>> waiter =
+          provider.getIntegerEvaluationAsync("flag-1.prop-E", 1000, SAMPLE_CONTEXT);
+      // the second flag fills the batch, from an evaluation that is already cancelled
+      cancelled.run(
+          () -> provider.getIntegerEvaluationAsync("flag-2.prop-E", 1000, SAMPLE_CONTEXT));
+
+      assertThat(waiter.get(5, TimeUnit.SECONDS).getValue()).isEqualTo(50);
+    } finally {
+      provider.shutdown();
+    }
+  }
+
+  @Test
+  public void slowResolveShouldBeHedged() throws Exception {
+    final AtomicInteger requests = new AtomicInteger();
+    final CountDownLatch cancelled = new CountDownLatch(1);
+    mockResolve(
+        (resolveFlagRequest, streamObserver) -> {
+          if (requests.incrementAndGet() == 1) {
+            // the first attempt never responds
+            ((ServerCallStreamObserver<ResolveFlagsResponse>) streamObserver)
+                .setOnCancelHandler(cancelled::countDown);
+            return;
+          }
+          streamObserver.onNext(generateSampleResponse(Collections.emptyList()));
+          streamObserver.onCompleted();
+        });
+    doAnswer(
+            invocation -> {
+              final StreamObserver<ApplyFlagsResponse> streamObserver = invocation.getArgument(1);
+              streamObserver.onNext(ApplyFlagsResponse.getDefaultInstance());
+              streamObserver.onCompleted();
+              return null;
+            })
+        .when(serviceImpl)
+        .applyFlags(any(), any());
+    final ConfidenceFeatureProvider provider =
+        ConfidenceFeatureProvider.builder("fake-secret")
+            .channel(channel)
+            .deferredApply()
+            .hedging(Duration.ofMillis(10), 1)
+            .build();
+    try {
+      assertThat(provider.getIntegerEvaluation("flag.prop-E", 1000, SAMPLE_CONTEXT).getValue())
+          .isEqualTo(50);
+      // the win is counted before the evaluation completes
+      assertThat(provider.getHedgeStats().getHedgeWinCount()).isEqualTo(1);
+      assertThat(requests).hasValue(2);
+      assertThat(cancelled.await(5, TimeUnit.SECONDS)).isTrue();
+    } finally {
+      provider.shutdown();
+    }
+
+    assertThatThrownBy(
+            () ->
+                ConfidenceFeatureProvider.builder("fake-secret")
+                    .channel(channel)
+                    .hedging(Duration.ofMillis(10), 1)
+                    .build())
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  public void shortCallerDeadlinesShouldNotOpenTheCircuit() throws Exception {
+    // the resolver never responds
+    mockResolve((request, streamObserver) -> {});
+    final ConfidenceFeatureProvider provider =
+        ConfidenceFeatureProvider.builder("fake-secret")
+            .channel(channel)
+            .deadline(Duration.ofMillis(100))
+            .circuitBreaker(0.5, 2, Duration.ofSeconds(5), Duration.ofMinutes(1))
+            .build();
+    try {
+      for (int i = 0; i < 4; i++) {
+        final DeadlineBudget budget = DeadlineBudget.start(Duration.ofMillis(10));
+        assertThatThrownBy(
+                () ->
+                    budget.call(
+                        () -> provider.getIntegerEvaluation("flag.prop-E", 1000, SAMPLE_CONTEXT)))
+            .isInstanceOf(GeneralError.class);
+      }
+      assertThat(provider.getCircuitState()).isEqualTo(CircuitState.CLOSED);
+
+      // without a budget the resolver exceeds its configured deadline
+      for (int i = 0; i < 2; i++) {
+        assertThatThrownBy(() -> provider.getIntegerEvaluation("flag.prop-E", 1000, SAMPLE_CONTEXT))
+            .isInstanceOf(GeneralError.class);
+      }
+      assertThat(provider.getCircuitState()).isEqualTo(CircuitState.OPEN);
+    } finally {
+      provider.shutdown();
+    }
+  }
+
+  @Test
+  public void openCircuitShouldFailFastWithoutCallingTheResolver() {
+    mockSampleResponse();
+    final List<CircuitState> transitions = Collections.synchronizedList(new ArrayList<>());
+    final ConfidenceFeatureProvider provider =
+        ConfidenceFeatureProvider.builder("fake-secret")
+            .channel(channel)
+            .resolveHistory(100)
+            .circuitBreaker(0.5, 2, Duration.ofSeconds(5), Duration.ofMinutes(1))
+            .circuitStateListener((from, to) -> transitions.add(to))
+            .build();
+    assertThat(provider.getIntegerEvaluation("flag.prop-E", 1000, SAMPLE_CONTEXT).getReason())
+        .isNull();
+
+    final AtomicInteger requests = new AtomicInteger();
+    mockResolve(
+        (request, streamObserver) -> {
+          requests.incrementAndGet();
+          streamObserver.onError(Status.UNAVAILABLE.asException());
+        });
+    assertThat(provider.getIntegerEvaluation("flag.prop-E", 1000, SAMPLE_CONTEXT).getReason())
+        .isEqualTo("STALE");
+    assertThat(provider.getCircuitState()).isEqualTo(CircuitState.OPEN);
+    assertThat(transitions).containsExactly(CircuitState.OPEN);
+
+    final ProviderEvaluation<Integer> evaluation =
+        provider.getIntegerEvaluation("flag.prop-E", 1000, SAMPLE_CONTEXT);
+    assertThat(evaluation.getValue()).isEqualTo(50);
+    assertThat(evaluation.getReason()).isEqualTo("STALE");
+    assertThatThrownBy(
+            () -> provider.getIntegerEvaluation("other-flag.prop-E", 1000, SAMPLE_CONTEXT))
+        .isInstanceOf(GeneralError.class)
+        .hasMessage("Provider backend is unavailable");
+    assertThat(requests).hasValue(1);
+  }
+
+  @Test
+  public void persistedSnapshotShouldBeServedAfterRestart(@TempDir Path directory)
+      throws Exception {
+    final List<ResolveFlagsRequest> requests = Collections.synchronizedList(new ArrayList<>());
+    mockResolve(
+        (resolveFlagRequest, streamObserver) -> {
+          requests.add(resolveFlagRequest);
+          streamObserver.onNext(generateSampleResponse(Collections.emptyList()));
+          streamObserver.onCompleted();
+        });
+    final Path file = directory.resolve("flags.snapshot");
+    final ConfidenceFeatureProvider first =
+        ConfidenceFeatureProvider.builder("fake-secret")
+            .channel(channel)
+            .persistentSnapshot(file, Duration.ofHours(1))
+            .build();
+    assertThat(first.getIntegerEvaluation("flag.prop-E", 1000, SAMPLE_CONTEXT).getValue())
+        .isEqualTo(50);
+    first.shutdown();
+    assertThat(file).exists();
+    // only a digest of the context is written
+    assertThat(new String(Files.readAllBytes(file), StandardCharsets.ISO_8859_1))
+        .doesNotContain("my-targeting-key");
+
+    final ManagedChannel restartedChannel =
+        InProcessChannelBuilder.forName(serverName).directExecutor().build();
+    final ConfidenceFeatureProvider restarted =
+        ConfidenceFeatureProvider.builder("fake-secret")
+            .channel(restartedChannel)
+            .persistentSnapshot(file, Duration.ofHours(1))
+            .build();
+    try {
+      final ProviderEvaluation<Integer> warm =
+          restarted.getIntegerEvaluation("flag.prop-E", 1000, SAMPLE_CONTEXT);
+      assertThat(warm.getValue()).isEqualTo(50);
+      assertThat(warm.getVariant()).isEqualTo("flags/flag/variants/var-A");
+      assertThat(warm.getReason()).isEqualTo("STALE");
+
+      // the warm flag is resolved again in the background, and stale until that completes
+      final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+      while (restarted.getIntegerEvaluation("flag.prop-E", 1000, SAMPLE_CONTEXT).getReason() != null
+          && System.nanoTime() < deadline) {
+        Thread.sleep(10);
+      }
+      assertThat(restarted.getIntegerEvaluation("flag.prop-E", 1000, SAMPLE_CONTEXT).getReason())
+          .isNull();
+      // the first resolve, the one in the background, and the last two evaluations
+      assertThat(requests).hasSize(4);
+    } finally {
+      restarted.shutdown();
+    }
+  }
+
   //////
   // Utility
   //////
@@ -544,6 +1223,81 @@ final class FeatureProviderTest {
         .resolveFlags(any(), any());
   }
 
+  @Test
+  public void errorEvaluationsAreReturnedInsteadOfThrown() {
+    mockSampleResponse();
+    final ConfidenceFeatureProvider provider =
+        ConfidenceFeatureProvider.builder("fake-secret")
+            .channel(channel)
+            .errorEvaluations()
+            .build();
+
+    final ProviderEvaluation<Integer> mismatch =
+        provider.getIntegerEvaluation("flag.prop-A", 1000, SAMPLE_CONTEXT);
+    assertThat(mismatch.getValue()).isEqualTo(1000);
+    assertThat(mismatch.getErrorCode()).isEqualTo(ErrorCode.TYPE_MISMATCH);
+    assertThat(mismatch.getReason()).isEqualTo("ERROR");
+    assertThat(mismatch.getErrorMessage())
+        .isEqualTo(String.format("Cannot cast value '%s' to expected type", new Value(false)));
+
+    final ProviderEvaluation<Value> derived =
+        provider.getObjectEvaluation("flag.prop-A.field", DEFAULT_VALUE, SAMPLE_CONTEXT);
+    assertThat(derived.getValue()).isEqualTo(DEFAULT_VALUE);
+    assertThat(derived.getErrorCode()).isEqualTo(ErrorCode.TYPE_MISMATCH);
+
+    mockSampleResponse(
+        Collections.singletonList(
+            new ValueSchemaHolder(
+                "prop-X",
+                Values.of(Integer.MAX_VALUE + 1L),
+                FlagSchema.SchemaTypeCase.INT_SCHEMA)));
+    final ProviderEvaluation<Integer> unparsable =
+        provider.getIntegerEvaluation("flag.prop-X", 10, SAMPLE_CONTEXT);
+    assertThat(unparsable.getValue()).isEqualTo(10);
+    assertThat(unparsable.getErrorCode()).isEqualTo(ErrorCode.PARSE_ERROR);
+    assertThat(unparsable.getErrorMessage())
+        .isEqualTo(
+            "Mismatch between schema and value: value should be an int, but it is a double/long");
+
+    mockResolve(
+        (request, streamObserver) -> {
+          streamObserver.onNext(ResolveFlagsResponse.getDefaultInstance());
+          streamObserver.onCompleted();
+        });
+    final ProviderEvaluation<Value> missing =
+        provider.getObjectEvaluation("missing.title", DEFAULT_VALUE, SAMPLE_CONTEXT);
+    assertThat(missing.getValue()).isEqualTo(DEFAULT_VALUE);
+    assertThat(missing.getErrorCode()).isEqualTo(ErrorCode.FLAG_NOT_FOUND);
+    assertThat(missing.getErrorMessage()).isEqualTo("No active flag 'missing' was found");
+
+    mockResolve(
+        (request, streamObserver) -> streamObserver.onError(Status.UNAVAILABLE.asException()));
+    final ProviderEvaluation<String> unavailable =
+        provider.getStringEvaluation("flag.prop-B", "default", SAMPLE_CONTEXT);
+    assertThat(unavailable.getValue()).isEqualTo("default");
+    assertThat(unavailable.getErrorCode()).isEqualTo(GENERAL);
+    assertThat(unavailable.getErrorMessage()).isEqualTo("Provider backend is unavailable");
+    provider.shutdown();
+  }
+
+  @Test
+  public void evaluationErrorsHaveNoStackTrace() {
+    mockResolve(
+        (request, streamObserver) -> {
+          streamObserver.onNext(ResolveFlagsResponse.getDefaultInstance());
+          streamObserver.onCompleted();
+        });
+
+    final ConfidenceFeatureProvider provider =
+        new ConfidenceFeatureProvider("fake-secret", channel);
+
+    assertThatThrownBy(
+            () -> provider.getObjectEvaluation("not-existing", DEFAULT_VALUE, SAMPLE_CONTEXT))
+        .isInstanceOf(FlagNotFoundError.class)
+        .hasMessage("No active flag 'not-existing' was found")
+        .satisfies(e -> assertThat(e.getStackTrace()).isEmpty());
+  }
+
   private void mockSampleResponse() {
     mockSampleResponse(Collections.emptyList());
   }
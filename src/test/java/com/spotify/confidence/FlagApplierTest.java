@@ -0,0 +1,157 @@
+package com.spotify.confidence;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.protobuf.ByteString;
+import com.spotify.confidence.flags.resolver.v1.AppliedFlag;
+import com.spotify.confidence.flags.resolver.v1.ApplyFlagsRequest;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+final class FlagApplierTest {
+
+  private static final ByteString TOKEN = ByteString.copyFromUtf8("token");
+
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+  private final List<ApplyFlagsRequest> sent = new ArrayList<>();
+
+  @AfterEach
+  public void tearDown() {
+    scheduler.shutdownNow();
+  }
+
+  @Test
+  public void dropOldestNeverWaitsForAFullBuffer() {
+    final FlagApplier applier = applier(2, ApplyBackpressurePolicy.DROP_OLDEST);
+
+    applier.apply(TOKEN, "flags/a");
+    applier.apply(TOKEN, "flags/b");
+    applier.apply(TOKEN, "flags/c");
+    applier.flush();
+
+    assertThat(applier.stats().getDroppedCount()).isEqualTo(1);
+    assertThat(applier.stats().getSentCount()).isEqualTo(2);
+    assertThat(sentFlags()).containsExactly("flags/b", "flags/c");
+
+    // the dropped apply is forgotten, so it is queued again
+    applier.apply(TOKEN, "flags/a");
+    applier.flush();
+    assertThat(sentFlags()).containsExactly("flags/b", "flags/c", "flags/a");
+  }
+
+  @Test
+  public void failedAppliesAreSentAgainWhenEvaluatedAgain() {
+    final FlagApplier applier =
+        applier(
+            10,
+            ApplyBackpressurePolicy.DROP_OLDEST,
+            request -> {
+              sent.add(request);
+              return sent.size() == 1
+                  ? CompletableFuture.failedFuture(new RuntimeException("unavailable"))
+                  : CompletableFuture.completedFuture(null);
+            });
+
+    applier.apply(TOKEN, "flags/a");
+    applier.apply(TOKEN, "flags/b");
+    applier.flush();
+    assertThat(applier.stats().getFailedCount()).isEqualTo(2);
+
+    applier.apply(TOKEN, "flags/a");
+    applier.flush();
+    applier.apply(TOKEN, "flags/a");
+    applier.flush();
+
+    assertThat(sentFlags()).containsExactly("flags/a", "flags/b", "flags/a");
+    assertThat(applier.stats().getSentCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void blockDropsTheOldestForCallersThatMayNotBlock() {
+    final FlagApplier applier = applier(2, ApplyBackpressurePolicy.BLOCK);
+
+    applier.apply(TOKEN, "flags/a");
+    applier.apply(TOKEN, "flags/b");
+    applier.apply(TOKEN, "flags/c", false);
+    applier.flush();
+
+    assertThat(applier.stats().getDroppedCount()).isEqualTo(1);
+    assertThat(sentFlags()).containsExactly("flags/b", "flags/c");
+  }
+
+  @Test
+  public void sendersThatThrowCountEveryFlagAsFailed() {
+    final FlagApplier applier =
+        applier(
+            10,
+            ApplyBackpressurePolicy.DROP_OLDEST,
+            request -> {
+              throw new IllegalStateException("shut down");
+            });
+
+    applier.apply(TOKEN, "flags/a");
+    applier.apply(TOKEN, "flags/b");
+    applier.apply(ByteString.copyFromUtf8("other-token"), "flags/a");
+    applier.flush();
+
+    assertThat(applier.stats().getFailedCount()).isEqualTo(3);
+    assertThat(applier.stats().getSentCount()).isZero();
+  }
+
+  @Test
+  public void flagsAreAppliedOncePerResolveToken() {
+    final FlagApplier applier = applier(10, ApplyBackpressurePolicy.DROP_OLDEST);
+
+    applier.apply(TOKEN, "flags/a");
+    applier.apply(TOKEN, "flags/a");
+    applier.flush();
+    applier.apply(TOKEN, "flags/a");
+    applier.apply(ByteString.copyFromUtf8("other-token"), "flags/a");
+    applier.flush();
+
+    assertThat(sentFlags()).containsExactly("flags/a", "flags/a");
+    assertThat(sent.get(1).getResolveToken()).isEqualTo(ByteString.copyFromUtf8("other-token"));
+  }
+
+  private FlagApplier applier(int capacity, ApplyBackpressurePolicy policy) {
+    return applier(
+        capacity,
+        policy,
+        request -> {
+          sent.add(request);
+          return CompletableFuture.completedFuture(null);
+        });
+  }
+
+  private FlagApplier applier(
+      int capacity,
+      ApplyBackpressurePolicy policy,
+      Function<ApplyFlagsRequest, CompletableFuture<?>> sender) {
+    return new FlagApplier(
+        capacity,
+        100,
+        Duration.ofHours(1),
+        policy,
+        ApplyFlagsRequest.getDefaultInstance(),
+        sender,
+        scheduler,
+        Runnable::run,
+        Clock.systemUTC());
+  }
+
+  private List<String> sentFlags() {
+    return sent.stream()
+        .flatMap(request -> request.getFlagsList().stream())
+        .map(AppliedFlag::getFlag)
+        .collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,51 @@
+package com.spotify.confidence;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.spotify.confidence.ConfidenceFeatureProvider.FlagPath;
+import dev.openfeature.sdk.exceptions.GeneralError;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+final class FlagPathTest {
+
+  @Test
+  public void splitsKeysLikeARegexSplit() {
+    for (String key :
+        List.of(
+            "flag", "flag.title", "flag.nested.title", "flag.", "flag..", ".title", "a..b", "")) {
+      final FlagPath flagPath = ConfidenceFeatureProvider.getPath(key);
+      final List<String> parts = Arrays.asList(key.split("\\."));
+
+      assertThat(flagPath.getFlag()).as(key).isEqualTo(parts.get(0));
+      assertThat(flagPath.getPath()).as(key).isEqualTo(parts.subList(1, parts.size()));
+      assertThat(flagPath.getRequestFlagName()).as(key).isEqualTo("flags/" + parts.get(0));
+    }
+  }
+
+  @Test
+  public void keysWithoutAFlagNameAreIllegal() {
+    assertThatThrownBy(() -> ConfidenceFeatureProvider.getPath("..."))
+        .isInstanceOf(GeneralError.class)
+        .hasMessage("Illegal path string '...'");
+  }
+
+  @Test
+  public void parsedKeysAreKept() {
+    final ConfidenceFeatureProvider provider =
+        ConfidenceFeatureProvider.builder("fake-secret")
+            .channel(InProcessChannelBuilder.forName("unused").build())
+            .build();
+    try {
+      final FlagPath flagPath = provider.flagPath("flag.title");
+
+      assertThat(provider.flagPath(new String("flag.title"))).isSameAs(flagPath);
+      assertThat(flagPath.getPath()).containsExactly("title");
+    } finally {
+      provider.shutdown();
+    }
+  }
+}
@@ -0,0 +1,358 @@
+package com.spotify.confidence;
+
+import dev.openfeature.sdk.EvaluationContext;
+import dev.openfeature.sdk.FeatureProvider;
+import dev.openfeature.sdk.MutableContext;
+import dev.openfeature.sdk.ProviderEvaluation;
+import dev.openfeature.sdk.Value;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.Status.Code;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Drives a provider with blocking evaluations from many threads, picking flags and evaluation
+ * contexts at random from fixed sets, and reports the throughput, a latency histogram and the
+ * garbage collections and allocations of the run. {@link #main(String[])} runs it against a {@link
+ * FakeFlagResolverService} in-process, for example:
+ *
+ * <pre>
+ * mvn -Pload-test test-compile exec:exec \
+ *   -Dload.args="threads=500 seconds=30 latencyMedianMs=2 latencyP99Ms=40 errorRate=0.01"
+ * </pre>
+ */
+public final class LoadGenerator {
+
+  private static final Value DEFAULT_VALUE = new Value("default");
+
+  private final FeatureProvider provider;
+  private final int threads;
+  private final List<String> keys = new ArrayList<>();
+  private final List<EvaluationContext> contexts = new ArrayList<>();
+
+  /**
+   * @param provider provider to evaluate flags with
+   * @param threads number of threads evaluating flags concurrently
+   * @param flags number of distinct flags, named flag-0, flag-1 and so on
+   * @param contexts number of distinct evaluation contexts
+   */
+  LoadGenerator(FeatureProvider provider, int threads, int flags, int contexts) {
+    if (threads <= 0 || flags <= 0 || contexts <= 0) {
+      throw new IllegalArgumentException("threads, flags and contexts must be positive.");
+    }
+    this.provider = provider;
+    this.threads = threads;
+    for (int i = 0; i < flags; i++) {
+      keys.add("flag-" + i + ".title");
+    }
+    for (int i = 0; i < contexts; i++) {
+      this.contexts.add(
+          new MutableContext(
+              "user-" + i,
+              Map.of("country", new Value(i % 2 == 0 ? "SE" : "US"), "version", new Value("1.2"))));
+    }
+  }
+
+  /**
+   * Runs until every thread has made its evaluations, or the duration has passed.
+   *
+   * @param evaluationsPerThread evaluations made by each thread
+   * @param maxDuration longest time to run for
+   * @return the results of the run
+   */
+  Report run(int evaluationsPerThread, Duration maxDuration) throws InterruptedException {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    final LongAdder errors = new LongAdder();
+    final LongAdder allocatedBytes = new LongAdder();
+    final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    final boolean measureAllocations =
+        threadBean instanceof com.sun.management.ThreadMXBean
+            && ((com.sun.management.ThreadMXBean) threadBean).isThreadAllocatedMemorySupported();
+    final CountDownLatch start = new CountDownLatch(1);
+    final List<Thread> workers = new ArrayList<>();
+    final long[] deadline = new long[1];
+    for (int i = 0; i < threads; i++) {
+      final Thread worker =
+          new Thread(
+              () -> {
+                final long allocatedBefore = allocatedBytes(threadBean, measureAllocations);
+                try {
+                  start.await();
+                } catch (InterruptedException e) {
+                  return;
+                }
+                final ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int n = 0; n < evaluationsPerThread && System.nanoTime() < deadline[0]; n++) {
+                  final String key = keys.get(random.nextInt(keys.size()));
+                  final EvaluationContext context = contexts.get(random.nextInt(contexts.size()));
+                  final long started = System.nanoTime();
+                  try {
+                    final ProviderEvaluation<Value> evaluation =
+                        provider.getObjectEvaluation(key, DEFAULT_VALUE, context);
+                    if (evaluation.getErrorCode() != null) {
+                      errors.increment();
+                    }
+                  } catch (RuntimeException e) {
+                    errors.increment();
+                  }
+                  histogram.record(System.nanoTime() - started);
+                }
+                allocatedBytes.add(
+                    allocatedBytes(threadBean, measureAllocations) - allocatedBefore);
+              },
+              "load-generator-" + i);
+      worker.setDaemon(true);
+      worker.start();
+      workers.add(worker);
+    }
+    final long gcCountBefore = gcCount();
+    final long gcMillisBefore = gcMillis();
+    final long started = System.nanoTime();
+    deadline[0] = started + maxDuration.toNanos();
+    start.countDown();
+    for (Thread worker : workers) {
+      worker.join();
+    }
+    final Duration elapsed = Duration.ofNanos(System.nanoTime() - started);
+    return new Report(
+        histogram,
+        errors.sum(),
+        elapsed,
+        gcCount() - gcCountBefore,
+        Duration.ofMillis(gcMillis() - gcMillisBefore),
+        measureAllocations ? allocatedBytes.sum() : -1);
+  }
+
+  private static long allocatedBytes(ThreadMXBean threadBean, boolean measureAllocations) {
+    if (!measureAllocations) {
+      return 0;
+    }
+    return ((com.sun.management.ThreadMXBean) threadBean)
+        .getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  private static long gcCount() {
+    long count = 0;
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      count += Math.max(0, gc.getCollectionCount());
+    }
+    return count;
+  }
+
+  private static long gcMillis() {
+    long millis = 0;
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      millis += Math.max(0, gc.getCollectionTime());
+    }
+    return millis;
+  }
+
+  /** The results of a run */
+  static final class Report {
+
+    private final LatencyHistogram latencies;
+    private final long errors;
+    private final Duration elapsed;
+    private final long gcCount;
+    private final Duration gcTime;
+    private final long allocatedBytes;
+
+    private Report(
+        LatencyHistogram latencies,
+        long errors,
+        Duration elapsed,
+        long gcCount,
+        Duration gcTime,
+        long allocatedBytes) {
+      this.latencies = latencies;
+      this.errors = errors;
+      this.elapsed = elapsed;
+      this.gcCount = gcCount;
+      this.gcTime = gcTime;
+      this.allocatedBytes = allocatedBytes;
+    }
+
+    long evaluations() {
+      return latencies.count();
+    }
+
+    long errors() {
+      return errors;
+    }
+
+    double throughputPerSecond() {
+      return evaluations() * 1e9 / Math.max(1, elapsed.toNanos());
+    }
+
+    /** Returns an upper bound of the latency percentile, within 1/16 of its value */
+    Duration latencyPercentile(double percentile) {
+      return Duration.ofNanos(latencies.percentile(percentile));
+    }
+
+    long gcCount() {
+      return gcCount;
+    }
+
+    Duration gcTime() {
+      return gcTime;
+    }
+
+    /** Returns the bytes allocated by the evaluating threads, or -1 if the JVM can't tell */
+    long allocatedBytes() {
+      return allocatedBytes;
+    }
+
+    @Override
+    public String toString() {
+      final StringBuilder report = new StringBuilder();
+      report.append(
+          String.format(
+              "evaluations: %d in %.1f s, %.0f/s, errors: %d%n",
+              evaluations(), elapsed.toNanos() / 1e9, throughputPerSecond(), errors));
+      for (String percentile : new String[] {"50", "90", "99", "99.9", "100"}) {
+        report.append(
+            String.format(
+                "  %-6s %10.1f us%n",
+                percentile.equals("100") ? "max" : "p" + percentile,
+                latencyPercentile(Double.parseDouble(percentile)).toNanos() / 1e3));
+      }
+      report.append(String.format("gc: %d collections, %d ms", gcCount, gcTime.toMillis()));
+      if (allocatedBytes >= 0 && evaluations() > 0) {
+        report.append(
+            String.format(
+                ", allocated %d MB, %d bytes per evaluation",
+                allocatedBytes >> 20, allocatedBytes / evaluations()));
+      }
+      return report.toString();
+    }
+  }
+
+  /**
+   * A log-linear histogram of latencies in nanoseconds: each power of two is split into 16 buckets,
+   * so a recorded value is off by less than 1/16
+   */
+  static final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(64 * SUB_BUCKETS);
+
+    void record(long nanos) {
+      counts.incrementAndGet(index(Math.max(0, nanos)));
+    }
+
+    long count() {
+      long count = 0;
+      for (int i = 0; i < counts.length(); i++) {
+        count += counts.get(i);
+      }
+      return count;
+    }
+
+    long percentile(double percentile) {
+      final long total = count();
+      if (total == 0) {
+        return 0;
+      }
+      final long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+      long seen = 0;
+      for (int i = 0; i < counts.length(); i++) {
+        seen += counts.get(i);
+        if (seen >= rank) {
+          return upperBound(i);
+        }
+      }
+      return upperBound(counts.length() - 1);
+    }
+
+    private static int index(long nanos) {
+      if (nanos < SUB_BUCKETS) {
+        return (int) nanos;
+      }
+      final int magnitude = 63 - Long.numberOfLeadingZeros(nanos);
+      final int shift = magnitude - SUB_BUCKET_BITS;
+      final int subBucket = (int) (nanos >>> shift) & (SUB_BUCKETS - 1);
+      return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long upperBound(int index) {
+      if (index < SUB_BUCKETS) {
+        return index;
+      }
+      final int shift = index / SUB_BUCKETS - 1;
+      final long subBucket = index % SUB_BUCKETS;
+      return ((SUB_BUCKETS + subBucket + 1) << shift) - 1;
+    }
+  }
+
+  /** Runs a load test against a fake resolver, configured by key=value arguments */
+  public static void main(String[] args) throws Exception {
+    final Map<String, String> options = new HashMap<>();
+    for (String arg : args) {
+      final String[] option = arg.split("=", 2);
+      if (option.length != 2) {
+        throw new IllegalArgumentException("Expected key=value, got " + arg);
+      }
+      options.put(option[0], option[1]);
+    }
+    final int threads = Integer.parseInt(options.getOrDefault("threads", "64"));
+    final int seconds = Integer.parseInt(options.getOrDefault("seconds", "10"));
+    final int flags = Integer.parseInt(options.getOrDefault("flags", "100"));
+    final int contexts = Integer.parseInt(options.getOrDefault("contexts", "10000"));
+    final long medianMs = Long.parseLong(options.getOrDefault("latencyMedianMs", "1"));
+    final long p99Ms = Long.parseLong(options.getOrDefault("latencyP99Ms", "10"));
+    final double errorRate = Double.parseDouble(options.getOrDefault("errorRate", "0"));
+    final Code errorCode = Code.valueOf(options.getOrDefault("errorCode", "UNAVAILABLE"));
+    final int fields = Integer.parseInt(options.getOrDefault("fieldsPerFlag", "4"));
+    final int fieldBytes = Integer.parseInt(options.getOrDefault("fieldBytes", "32"));
+    final int cacheSize = Integer.parseInt(options.getOrDefault("cacheSize", "0"));
+
+    final FakeFlagResolverService.Builder fake =
+        FakeFlagResolverService.builder()
+            .latency(
+                FakeFlagResolverService.logNormalLatency(
+                    Duration.ofMillis(medianMs), Duration.ofMillis(Math.max(p99Ms, medianMs))))
+            .responseSize(fields, fieldBytes, flags);
+    if (errorRate > 0) {
+      fake.errorRate(errorCode, errorRate);
+    }
+    final FakeFlagResolverService service = fake.build();
+    final String serverName = InProcessServerBuilder.generateName();
+    final Server server =
+        InProcessServerBuilder.forName(serverName).addService(service).build().start();
+    final ManagedChannel channel = InProcessChannelBuilder.forName(serverName).build();
+    final ConfidenceFeatureProvider.Builder builder =
+        ConfidenceFeatureProvider.builder("fake-secret").channel(channel);
+    if (cacheSize > 0) {
+      builder.resolveCache(cacheSize, Duration.ofMinutes(1));
+    }
+    final ConfidenceFeatureProvider provider = builder.build();
+    try {
+      System.out.println(
+          new LoadGenerator(provider, threads, flags, contexts)
+              .run(Integer.MAX_VALUE, Duration.ofSeconds(seconds)));
+      System.out.printf(
+          "resolver: %d resolves, %d injected errors%n",
+          service.resolveCount(), service.errorCount());
+    } finally {
+      provider.shutdown();
+      channel.shutdownNow();
+      server.shutdownNow();
+      service.shutdown();
+    }
+  }
+}
@@ -0,0 +1,89 @@
+package com.spotify.confidence;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import dev.openfeature.sdk.MutableContext;
+import dev.openfeature.sdk.ProviderEvaluation;
+import dev.openfeature.sdk.Value;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.Status.Code;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import java.io.IOException;
+import java.time.Duration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+final class LoadGeneratorTest {
+
+  private Server server;
+  private ManagedChannel channel;
+  private FakeFlagResolverService service;
+  private ConfidenceFeatureProvider provider;
+
+  @AfterEach
+  public void tearDown() {
+    if (service == null) {
+      return;
+    }
+    provider.shutdown();
+    channel.shutdownNow();
+    server.shutdownNow();
+    service.shutdown();
+  }
+
+  @Test
+  public void reportsEvaluationsLatenciesAndInjectedErrors() throws Exception {
+    start(
+        FakeFlagResolverService.builder()
+            .latency(FakeFlagResolverService.fixedLatency(Duration.ofMillis(1)))
+            .errorRate(Code.UNAVAILABLE, 0.5)
+            .build());
+
+    final LoadGenerator.Report report =
+        new LoadGenerator(provider, 8, 10, 100).run(50, Duration.ofMinutes(1));
+
+    assertThat(report.evaluations()).isEqualTo(400);
+    assertThat(service.resolveCount()).isEqualTo(400);
+    assertThat(report.errors()).isEqualTo(service.errorCount()).isBetween(1L, 399L);
+    assertThat(report.latencyPercentile(50)).isGreaterThanOrEqualTo(Duration.ofMillis(1));
+    assertThat(report.latencyPercentile(100)).isGreaterThanOrEqualTo(report.latencyPercentile(50));
+    assertThat(report.throughputPerSecond()).isPositive();
+    assertThat(report.toString()).contains("evaluations: 400").contains("p99.9").contains("gc:");
+  }
+
+  @Test
+  public void responsesHaveTheConfiguredSize() throws Exception {
+    start(FakeFlagResolverService.builder().responseSize(3, 100, 0).build());
+
+    final ProviderEvaluation<Value> evaluation =
+        provider.getObjectEvaluation("flag-7", new Value(), new MutableContext("user"));
+
+    assertThat(evaluation.getVariant()).isEqualTo("flags/flag-7/variants/fake");
+    assertThat(evaluation.getValue().asStructure().keySet())
+        .containsExactlyInAnyOrder("title", "field-1", "field-2");
+    assertThat(evaluation.getValue().asStructure().getValue("title").asString()).hasSize(100);
+  }
+
+  @Test
+  public void histogramPercentilesAreWithinOneSixteenth() {
+    final LoadGenerator.LatencyHistogram histogram = new LoadGenerator.LatencyHistogram();
+    for (long nanos = 1; nanos <= 100_000; nanos++) {
+      histogram.record(nanos * 1000);
+    }
+
+    assertThat(histogram.count()).isEqualTo(100_000);
+    assertThat(histogram.percentile(50)).isBetween(50_000_000L, 50_000_000L * 17 / 16);
+    assertThat(histogram.percentile(99)).isBetween(99_000_000L, 99_000_000L * 17 / 16);
+    assertThat(histogram.percentile(100)).isBetween(100_000_000L, 100_000_000L * 17 / 16);
+  }
+
+  private void start(FakeFlagResolverService fake) throws IOException {
+    service = fake;
+    final String serverName = InProcessServerBuilder.generateName();
+    server = InProcessServerBuilder.forName(serverName).addService(service).build().start();
+    channel = InProcessChannelBuilder.forName(serverName).build();
+    provider = ConfidenceFeatureProvider.builder("fake-secret").channel(channel).build();
+  }
+}
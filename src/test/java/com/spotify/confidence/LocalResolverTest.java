@@ -0,0 +1,377 @@
+package com.spotify.confidence;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.protobuf.Struct;
+import com.google.protobuf.util.JsonFormat;
+import com.google.protobuf.util.Structs;
+import com.google.protobuf.util.Values;
+import com.spotify.confidence.flags.resolver.v1.FlagDefinition;
+import com.spotify.confidence.flags.resolver.v1.FlagDefinition.Rule;
+import com.spotify.confidence.flags.resolver.v1.FlagDefinition.Variant;
+import com.spotify.confidence.flags.resolver.v1.FlagDefinitions;
+import com.spotify.confidence.flags.resolver.v1.ResolveFlagsResponse;
+import com.spotify.confidence.flags.resolver.v1.ResolveReason;
+import com.spotify.confidence.flags.resolver.v1.ResolvedFlag;
+import com.spotify.confidence.flags.types.v1.Expression;
+import com.spotify.confidence.flags.types.v1.FlagSchema;
+import com.spotify.confidence.flags.types.v1.FlagSchema.StringFlagSchema;
+import com.spotify.confidence.flags.types.v1.FlagSchema.StructFlagSchema;
+import com.spotify.confidence.flags.types.v1.Targeting;
+import com.spotify.confidence.flags.types.v1.Targeting.Criterion;
+import com.spotify.confidence.flags.types.v1.Targeting.Criterion.AttributeCriterion;
+import com.spotify.confidence.flags.types.v1.Targeting.Criterion.SegmentCriterion;
+import com.spotify.confidence.flags.types.v1.Targeting.EqRule;
+import com.spotify.confidence.flags.types.v1.Targeting.InnerRule;
+import com.spotify.confidence.flags.types.v1.Targeting.RangeRule;
+import com.spotify.confidence.flags.types.v1.Targeting.SemanticVersion;
+import com.spotify.confidence.flags.types.v1.Targeting.SetRule;
+import dev.openfeature.sdk.MutableContext;
+import dev.openfeature.sdk.ProviderEvaluation;
+import dev.openfeature.sdk.Value;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+final class LocalResolverTest {
+
+  private static final String FLAG = "flags/button";
+  private static final String GREEN = "flags/button/variants/green";
+  private static final String RED = "flags/button/variants/red";
+
+  @Test
+  public void firstMatchingRuleAssignsVariant() {
+    final LocalResolver resolver =
+        LocalResolver.create(
+            definitions(
+                rule(targeting(attribute("country", setRule(string("SE"), string("NO")))), GREEN),
+                rule(Targeting.getDefaultInstance(), RED)));
+
+    assertThat(resolve(resolver, Structs.of("country", Values.of("NO"))).getVariant())
+        .isEqualTo(GREEN);
+    assertThat(resolve(resolver, Structs.of("country", Values.of("DK"))).getVariant())
+        .isEqualTo(RED);
+    assertThat(resolve(resolver, Struct.getDefaultInstance()).getVariant()).isEqualTo(RED);
+  }
+
+  @Test
+  public void noMatchingRuleGivesNoVariant() {
+    final LocalResolver resolver =
+        LocalResolver.create(
+            definitions(rule(targeting(attribute("targeting_key", eqRule(string("a")))), GREEN)));
+
+    final ResolvedFlag resolvedFlag =
+        resolve(resolver, Structs.of("targeting_key", Values.of("b")));
+
+    assertThat(resolvedFlag.getVariant()).isEmpty();
+    assertThat(resolvedFlag.getReason()).isEqualTo(ResolveReason.RESOLVE_REASON_NO_SEGMENT_MATCH);
+    assertThat(resolvedFlag.getFlagSchema()).isEqualTo(schema());
+  }
+
+  @Test
+  public void matchingRuleGivesVariantValue() {
+    final LocalResolver resolver =
+        LocalResolver.create(
+            definitions(rule(targeting(attribute("targeting_key", eqRule(string("a")))), GREEN)));
+
+    final ResolvedFlag resolvedFlag =
+        resolve(resolver, Structs.of("targeting_key", Values.of("a")));
+
+    assertThat(resolvedFlag.getVariant()).isEqualTo(GREEN);
+    assertThat(resolvedFlag.getReason()).isEqualTo(ResolveReason.RESOLVE_REASON_MATCH);
+    assertThat(resolvedFlag.getValue()).isEqualTo(Structs.of("color", Values.of("green")));
+  }
+
+  @Test
+  public void versionRange() {
+    final Targeting.Value min = version("1.2.0");
+    final Targeting.Value max = version("2.0.0");
+    final LocalResolver resolver =
+        LocalResolver.create(
+            definitions(
+                rule(
+                    targeting(
+                        attribute(
+                            "app.version",
+                            RangeRule.newBuilder().setStartInclusive(min).setEndExclusive(max))),
+                    GREEN)));
+
+    assertThat(resolve(resolver, appVersion("1.2.0")).getVariant()).isEqualTo(GREEN);
+    assertThat(resolve(resolver, appVersion("1.10.3")).getVariant()).isEqualTo(GREEN);
+    assertThat(resolve(resolver, appVersion("2.0.0")).getVariant()).isEmpty();
+    assertThat(resolve(resolver, appVersion("2.0.0-beta.1")).getVariant()).isEqualTo(GREEN);
+    assertThat(resolve(resolver, appVersion("1.1.9")).getVariant()).isEmpty();
+    assertThat(resolve(resolver, appVersion("not-a-version")).getVariant()).isEmpty();
+  }
+
+  @Test
+  public void numberRangeAndListRules() {
+    final Targeting targeting =
+        Targeting.newBuilder()
+            .putCriteria(
+                "adult",
+                attribute(
+                    "age",
+                    RangeRule.newBuilder()
+                        .setStartInclusive(Targeting.Value.newBuilder().setNumberValue(18))))
+            .putCriteria(
+                "any-premium",
+                attribute(
+                    "products",
+                    Targeting.AnyRule.newBuilder()
+                        .setRule(
+                            InnerRule.newBuilder()
+                                .setEqRule(EqRule.newBuilder().setValue(string("premium"))))))
+            .putCriteria(
+                "all-known",
+                attribute(
+                    "products",
+                    Targeting.AllRule.newBuilder()
+                        .setRule(
+                            InnerRule.newBuilder()
+                                .setSetRule(setRule(string("free"), string("premium"))))))
+            .setExpression(and(ref("adult"), or(ref("any-premium"), not(ref("all-known")))))
+            .build();
+    final LocalResolver resolver = LocalResolver.create(definitions(rule(targeting, GREEN)));
+
+    assertThat(resolve(resolver, user(30, "free", "premium")).getVariant()).isEqualTo(GREEN);
+    assertThat(resolve(resolver, user(30, "free", "other")).getVariant()).isEqualTo(GREEN);
+    assertThat(resolve(resolver, user(30, "free")).getVariant()).isEmpty();
+    assertThat(resolve(resolver, user(12, "premium")).getVariant()).isEmpty();
+  }
+
+  @Test
+  public void missingAttributeOnlyMatchesAllRule() {
+    final InnerRule premium =
+        InnerRule.newBuilder().setEqRule(EqRule.newBuilder().setValue(string("premium"))).build();
+    final LocalResolver allResolver =
+        LocalResolver.create(
+            definitions(
+                rule(
+                    targeting(
+                        attribute("products", Targeting.AllRule.newBuilder().setRule(premium))),
+                    GREEN)));
+    final LocalResolver anyResolver =
+        LocalResolver.create(
+            definitions(
+                rule(
+                    targeting(
+                        attribute("products", Targeting.AnyRule.newBuilder().setRule(premium))),
+                    GREEN)));
+    final Struct withoutProducts = Structs.of("age", Values.of(30));
+
+    assertThat(resolve(allResolver, withoutProducts).getVariant()).isEqualTo(GREEN);
+    assertThat(resolve(allResolver, user(30, "free")).getVariant()).isEmpty();
+    assertThat(resolve(anyResolver, withoutProducts).getVariant()).isEmpty();
+    assertThat(resolve(anyResolver, user(30, "premium")).getVariant()).isEqualTo(GREEN);
+  }
+
+  @Test
+  public void segmentCriterion() {
+    final Criterion nordics =
+        Criterion.newBuilder()
+            .setSegment(SegmentCriterion.newBuilder().setSegment("nordics"))
+            .build();
+    final LocalResolver resolver =
+        LocalResolver.create(
+            definitions(rule(targeting(nordics), GREEN)).toBuilder()
+                .putSegments(
+                    "nordics", targeting(attribute("country", setRule(string("SE"), string("NO")))))
+                .build());
+
+    assertThat(resolve(resolver, Structs.of("country", Values.of("SE"))).getVariant())
+        .isEqualTo(GREEN);
+    assertThat(resolve(resolver, Structs.of("country", Values.of("US"))).getVariant()).isEmpty();
+  }
+
+  @Test
+  public void resolvesAllFlagsAndSkipsUnknownFlags() {
+    final LocalResolver resolver =
+        LocalResolver.create(definitions(rule(Targeting.getDefaultInstance(), GREEN)));
+
+    assertThat(resolver.resolve(Struct.getDefaultInstance(), List.of()).getResolvedFlagsList())
+        .extracting(ResolvedFlag::getFlag)
+        .containsExactly(FLAG);
+    assertThat(
+            resolver
+                .resolve(Struct.getDefaultInstance(), List.of("flags/unknown"))
+                .getResolvedFlagsList())
+        .isEmpty();
+  }
+
+  @Test
+  public void loadsDefinitionsFromJsonFile(@TempDir Path directory) throws IOException {
+    final Path file = directory.resolve("flags.json");
+    Files.write(
+        file,
+        JsonFormat.printer()
+            .print(definitions(rule(Targeting.getDefaultInstance(), GREEN)))
+            .getBytes(StandardCharsets.UTF_8));
+
+    final LocalResolver resolver = LocalResolver.fromFile(file);
+
+    assertThat(resolve(resolver, Struct.getDefaultInstance()).getVariant()).isEqualTo(GREEN);
+  }
+
+  @Test
+  public void providerResolvesWithLocalResolver() {
+    final ConfidenceFeatureProvider provider =
+        ConfidenceFeatureProvider.builder("fake-secret")
+            .localResolver(
+                LocalResolver.create(
+                    definitions(
+                        rule(targeting(attribute("country", eqRule(string("SE")))), GREEN),
+                        rule(Targeting.getDefaultInstance(), RED))))
+            .build();
+    try {
+      final ProviderEvaluation<String> evaluation =
+          provider.getStringEvaluation(
+              "button.color",
+              "default",
+              new MutableContext("user-1", Map.of("country", new Value("SE"))));
+
+      assertThat(evaluation.getValue()).isEqualTo("green");
+      assertThat(evaluation.getVariant()).isEqualTo(GREEN);
+    } finally {
+      provider.shutdown();
+    }
+  }
+
+  //////
+  // Utility
+  //////
+
+  private static ResolvedFlag resolve(LocalResolver resolver, Struct context) {
+    final ResolveFlagsResponse response = resolver.resolve(context, List.of(FLAG));
+    assertThat(response.getResolvedFlagsList()).hasSize(1);
+    return response.getResolvedFlags(0);
+  }
+
+  private static FlagDefinitions definitions(Rule... rules) {
+    return FlagDefinitions.newBuilder()
+        .addFlags(
+            FlagDefinition.newBuilder()
+                .setName(FLAG)
+                .setSchema(schema())
+                .addVariants(variant(GREEN, "green"))
+                .addVariants(variant(RED, "red"))
+                .addAllRules(List.of(rules)))
+        .build();
+  }
+
+  private static StructFlagSchema schema() {
+    return StructFlagSchema.newBuilder()
+        .putSchema(
+            "color",
+            FlagSchema.newBuilder().setStringSchema(StringFlagSchema.getDefaultInstance()).build())
+        .build();
+  }
+
+  private static Variant variant(String name, String color) {
+    return Variant.newBuilder()
+        .setName(name)
+        .setValue(Structs.of("color", Values.of(color)))
+        .build();
+  }
+
+  private static Rule rule(Targeting targeting, String variant) {
+    return Rule.newBuilder().setTargeting(targeting).setVariant(variant).build();
+  }
+
+  private static Targeting targeting(Criterion criterion) {
+    return Targeting.newBuilder()
+        .putCriteria("criterion", criterion)
+        .setExpression(ref("criterion"))
+        .build();
+  }
+
+  private static Criterion attribute(String attributeName, EqRule.Builder rule) {
+    return Criterion.newBuilder()
+        .setAttribute(
+            AttributeCriterion.newBuilder().setAttributeName(attributeName).setEqRule(rule))
+        .build();
+  }
+
+  private static Criterion attribute(String attributeName, SetRule.Builder rule) {
+    return Criterion.newBuilder()
+        .setAttribute(
+            AttributeCriterion.newBuilder().setAttributeName(attributeName).setSetRule(rule))
+        .build();
+  }
+
+  private static Criterion attribute(String attributeName, RangeRule.Builder rule) {
+    return Criterion.newBuilder()
+        .setAttribute(
+            AttributeCriterion.newBuilder().setAttributeName(attributeName).setRangeRule(rule))
+        .build();
+  }
+
+  private static Criterion attribute(String attributeName, Targeting.AnyRule.Builder rule) {
+    return Criterion.newBuilder()
+        .setAttribute(
+            AttributeCriterion.newBuilder().setAttributeName(attributeName).setAnyRule(rule))
+        .build();
+  }
+
+  private static Criterion attribute(String attributeName, Targeting.AllRule.Builder rule) {
+    return Criterion.newBuilder()
+        .setAttribute(
+            AttributeCriterion.newBuilder().setAttributeName(attributeName).setAllRule(rule))
+        .build();
+  }
+
+  private static EqRule.Builder eqRule(Targeting.Value value) {
+    return EqRule.newBuilder().setValue(value);
+  }
+
+  private static SetRule.Builder setRule(Targeting.Value... values) {
+    return SetRule.newBuilder().addAllValues(List.of(values));
+  }
+
+  private static Targeting.Value string(String value) {
+    return Targeting.Value.newBuilder().setStringValue(value).build();
+  }
+
+  private static Targeting.Value version(String version) {
+    return Targeting.Value.newBuilder()
+        .setVersionValue(SemanticVersion.newBuilder().setVersion(version))
+        .build();
+  }
+
+  private static Expression ref(String criterion) {
+    return Expression.newBuilder().setRef(criterion).build();
+  }
+
+  private static Expression not(Expression expression) {
+    return Expression.newBuilder().setNot(expression).build();
+  }
+
+  private static Expression and(Expression... operands) {
+    return Expression.newBuilder()
+        .setAnd(Expression.Operands.newBuilder().addAllOperands(List.of(operands)))
+        .build();
+  }
+
+  private static Expression or(Expression... operands) {
+    return Expression.newBuilder()
+        .setOr(Expression.Operands.newBuilder().addAllOperands(List.of(operands)))
+        .build();
+  }
+
+  private static Struct appVersion(String version) {
+    return Structs.of("app", Values.of(Structs.of("version", Values.of(version))));
+  }
+
+  private static Struct user(int age, String... products) {
+    final List<com.google.protobuf.Value> productValues =
+        Arrays.stream(products).map(Values::of).collect(Collectors.toList());
+    return Structs.of("age", Values.of(age), "products", Values.of(productValues));
+  }
+}
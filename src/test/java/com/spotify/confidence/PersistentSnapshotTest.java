@@ -0,0 +1,174 @@
+package com.spotify.confidence;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Struct;
+import com.google.protobuf.util.Structs;
+import com.google.protobuf.util.Timestamps;
+import com.google.protobuf.util.Values;
+import com.spotify.confidence.flags.resolver.v1.PersistedResolve;
+import com.spotify.confidence.flags.resolver.v1.ResolvedFlag;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+final class PersistentSnapshotTest {
+
+  @TempDir Path directory;
+
+  @Test
+  public void readsWhatWasWritten() throws IOException {
+    final Map<FlagKey, FlagResolution> entries = entries();
+    final PersistentSnapshot snapshot = snapshot(directory.resolve("flags.snapshot"), true);
+
+    snapshot.write(entries, List.of());
+    final List<PersistedResolve> read = snapshot.read();
+
+    assertThat(read).hasSize(100);
+    for (PersistedResolve persisted : read) {
+      final FlagKey key =
+          new FlagKey(persisted.getResolvedFlag().getFlag(), persisted.getEvaluationContext());
+      assertThat(persisted.getResolvedFlag()).isEqualTo(entries.get(key).getResolvedFlag());
+      assertThat(persisted.getResolveToken()).isEqualTo(entries.get(key).getResolveToken());
+    }
+    try (var files = Files.list(directory)) {
+      assertThat(files).containsExactly(directory.resolve("flags.snapshot"));
+    }
+  }
+
+  @Test
+  public void contextsAreOnlyWrittenAsDigestsUnlessPersisted() throws IOException {
+    final Path file = directory.resolve("flags.snapshot");
+    final Map<FlagKey, FlagResolution> entries = entries();
+    final PersistedResolve withContext =
+        PersistedResolve.newBuilder()
+            .setEvaluationContext(Structs.of("targeting_key", Values.of("carried-over")))
+            .setResolvedFlag(ResolvedFlag.newBuilder().setFlag("flags/other"))
+            .setResolveTime(Timestamps.fromMillis(System.currentTimeMillis()))
+            .build();
+    final PersistentSnapshot snapshot = snapshot(file, false);
+
+    snapshot.write(entries, List.of(withContext));
+    final List<PersistedResolve> read = snapshot.read();
+
+    assertThat(new String(Files.readAllBytes(file), StandardCharsets.ISO_8859_1))
+        .doesNotContain("targeting_key")
+        .doesNotContain("carried-over");
+    assertThat(read).hasSize(101).noneMatch(PersistedResolve::hasEvaluationContext);
+    assertThat(read.get(0).getEvaluationContextSha256())
+        .isEqualTo(PersistentSnapshot.digest(withContext.getEvaluationContext()));
+    final Set<ByteString> digests = new HashSet<>();
+    read.forEach(persisted -> digests.add(PersistentSnapshot.contextDigest(persisted)));
+    entries
+        .keySet()
+        .forEach(key -> assertThat(digests).contains(PersistentSnapshot.digest(key.getContext())));
+  }
+
+  @Test
+  public void equalContextsHaveEqualDigests() {
+    final Struct context =
+        Struct.newBuilder()
+            .putFields("a", Values.of("1"))
+            .putFields("b", Values.of(Structs.of("c", Values.of(2), "d", Values.of(true))))
+            .build();
+    final Struct reordered =
+        Struct.newBuilder()
+            .putFields("b", Values.of(Structs.of("d", Values.of(true), "c", Values.of(2))))
+            .putFields("a", Values.of("1"))
+            .build();
+
+    assertThat(PersistentSnapshot.digest(reordered)).isEqualTo(PersistentSnapshot.digest(context));
+    assertThat(PersistentSnapshot.digest(Structs.of("a", Values.of("2"))))
+        .isNotEqualTo(PersistentSnapshot.digest(context));
+  }
+
+  @Test
+  public void missingTruncatedAndUnknownVersionFilesAreReadAsEmpty() throws IOException {
+    final Path file = directory.resolve("flags.snapshot");
+    final PersistentSnapshot snapshot = snapshot(file, true);
+    assertThat(snapshot.read()).isEmpty();
+
+    snapshot.write(
+        Map.of(
+            new FlagKey("flags/flag", Structs.of("targeting_key", Values.of("user"))),
+            new FlagResolution(
+                ResolvedFlag.newBuilder().setFlag("flags/flag").build(), ByteString.EMPTY)),
+        List.of());
+    final byte[] written = Files.readAllBytes(file);
+
+    Files.write(file, Arrays.copyOf(written, written.length - 1));
+    assertThat(snapshot.read()).isEmpty();
+
+    final byte[] otherVersion = written.clone();
+    ByteBuffer.wrap(otherVersion)
+        .order(ByteOrder.LITTLE_ENDIAN)
+        .putInt(4, PersistentSnapshot.VERSION + 1);
+    Files.write(file, otherVersion);
+    assertThat(snapshot.read()).isEmpty();
+
+    // the first version had no resolve times, so its entries can't be aged
+    final byte[] firstVersion = written.clone();
+    ByteBuffer.wrap(firstVersion).order(ByteOrder.LITTLE_ENDIAN).putInt(4, 1);
+    Files.write(file, firstVersion);
+    assertThat(snapshot.read()).isEmpty();
+  }
+
+  @Test
+  public void entriesOlderThanTheMaximumAgeAreDropped() throws IOException {
+    final Path file = directory.resolve("flags.snapshot");
+    final PersistedResolve old =
+        PersistedResolve.newBuilder()
+            .setEvaluationContext(Structs.of("targeting_key", Values.of("old")))
+            .setResolvedFlag(ResolvedFlag.newBuilder().setFlag("flags/other"))
+            .setResolveTime(
+                Timestamps.fromMillis(System.currentTimeMillis() - Duration.ofDays(2).toMillis()))
+            .build();
+    final PersistedResolve withoutResolveTime =
+        old.toBuilder()
+            .clearResolveTime()
+            .setResolvedFlag(ResolvedFlag.getDefaultInstance())
+            .build();
+    final PersistentSnapshot snapshot = snapshot(file, true);
+
+    snapshot.write(entries(), List.of(old, withoutResolveTime));
+
+    assertThat(snapshot.read()).hasSize(100).allMatch(PersistedResolve::hasResolveTime);
+    final PersistentSnapshot twoDaysLater =
+        new PersistentSnapshot(
+            file, true, Duration.ofDays(1), Clock.offset(Clock.systemUTC(), Duration.ofDays(2)));
+    assertThat(twoDaysLater.read()).isEmpty();
+  }
+
+  private static PersistentSnapshot snapshot(Path file, boolean persistContexts) {
+    return new PersistentSnapshot(file, persistContexts, Duration.ofDays(1), Clock.systemUTC());
+  }
+
+  private static Map<FlagKey, FlagResolution> entries() {
+    final Map<FlagKey, FlagResolution> entries = new HashMap<>();
+    for (int i = 0; i < 100; i++) {
+      entries.put(
+          new FlagKey("flags/flag-" + i % 10, Structs.of("targeting_key", Values.of("u" + i))),
+          new FlagResolution(
+              ResolvedFlag.newBuilder()
+                  .setFlag("flags/flag-" + i % 10)
+                  .setVariant("flags/flag/variants/v" + i)
+                  .build(),
+              ByteString.copyFromUtf8("token-" + i)));
+    }
+    return entries;
+  }
+}
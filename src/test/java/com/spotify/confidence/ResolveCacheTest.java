@@ -0,0 +1,80 @@
+package com.spotify.confidence;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Struct;
+import com.google.protobuf.util.Structs;
+import com.google.protobuf.util.Values;
+import com.spotify.confidence.flags.resolver.v1.ResolvedFlag;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+final class ResolveCacheTest {
+
+  private static final String FLAG = "flags/flag";
+  private static final Struct CONTEXT = Structs.of("targeting_key", Values.of("user"));
+  private static final FlagResolution FIRST = resolution("first");
+  private static final FlagResolution SECOND = resolution("second");
+
+  private final AtomicLong now = new AtomicLong();
+  private final List<CompletableFuture<FlagResolution>> refreshes = new ArrayList<>();
+  private final ResolveCache cache =
+      new ResolveCache(
+          10,
+          Duration.ofSeconds(10),
+          Duration.ofSeconds(60),
+          (flag, context) -> {
+            final CompletableFuture<FlagResolution> refresh = new CompletableFuture<>();
+            refreshes.add(refresh);
+            return refresh;
+          },
+          Runnable::run,
+          now::get);
+
+  @Test
+  public void staleEntriesAreServedWhileOneRefreshIsInFlight() {
+    cache.put(FLAG, CONTEXT, FIRST);
+    assertThat(cache.get(FLAG, CONTEXT)).isSameAs(FIRST);
+    assertThat(refreshes).isEmpty();
+
+    now.set(Duration.ofSeconds(11).toNanos());
+    assertThat(cache.get(FLAG, CONTEXT)).isSameAs(FIRST);
+    assertThat(cache.get(FLAG, CONTEXT)).isSameAs(FIRST);
+    assertThat(refreshes).hasSize(1);
+
+    refreshes.get(0).complete(SECOND);
+    assertThat(cache.get(FLAG, CONTEXT)).isSameAs(SECOND);
+
+    final CacheStats stats = cache.stats();
+    assertThat(stats.getHitCount()).isEqualTo(4);
+    assertThat(stats.getStaleHitCount()).isEqualTo(2);
+    assertThat(stats.getRefreshCount()).isEqualTo(1);
+    assertThat(stats.getRefreshFailureCount()).isZero();
+  }
+
+  @Test
+  public void failedRefreshIsRetriedUntilTheEntryExpires() {
+    cache.put(FLAG, CONTEXT, FIRST);
+
+    now.set(Duration.ofSeconds(11).toNanos());
+    assertThat(cache.get(FLAG, CONTEXT)).isSameAs(FIRST);
+    refreshes.get(0).completeExceptionally(new RuntimeException("unavailable"));
+    assertThat(cache.get(FLAG, CONTEXT)).isSameAs(FIRST);
+    assertThat(refreshes).hasSize(2);
+    assertThat(cache.stats().getRefreshFailureCount()).isEqualTo(1);
+
+    now.set(Duration.ofSeconds(60).toNanos());
+    assertThat(cache.get(FLAG, CONTEXT)).isNull();
+    assertThat(cache.stats().getMissCount()).isEqualTo(1);
+  }
+
+  private static FlagResolution resolution(String token) {
+    return new FlagResolution(
+        ResolvedFlag.newBuilder().setFlag(FLAG).build(), ByteString.copyFromUtf8(token));
+  }
+}
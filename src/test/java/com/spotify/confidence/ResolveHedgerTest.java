@@ -0,0 +1,96 @@
+package com.spotify.confidence;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+final class ResolveHedgerTest {
+
+  private final ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+  private final List<Runnable> timers = new ArrayList<>();
+  private final List<CompletableFuture<String>> attempts = new ArrayList<>();
+
+  @BeforeEach
+  void beforeEach() {
+    doAnswer(
+            invocation -> {
+              timers.add(invocation.getArgument(0));
+              return mock(ScheduledFuture.class);
+            })
+        .when(scheduler)
+        .schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+  }
+
+  @Test
+  public void slowCallIsHedgedAndTheFirstResponseWins() {
+    final ResolveHedger hedger =
+        new ResolveHedger(Duration.ofMillis(10), 1, scheduler, Runnable::run);
+
+    final CompletableFuture<String> result = hedger.call(this::attempt);
+    final CompletableFuture<Long> winsSeenOnCompletion =
+        result.thenApply(value -> hedger.stats().getHedgeWinCount());
+    assertThat(attempts).hasSize(1);
+    timers.get(0).run();
+    assertThat(attempts).hasSize(2);
+
+    attempts.get(1).complete("hedge");
+    assertThat(result).isCompletedWithValue("hedge");
+    assertThat(winsSeenOnCompletion).isCompletedWithValue(1L);
+    assertThat(attempts.get(0)).isCancelled();
+
+    final HedgeStats stats = hedger.stats();
+    assertThat(stats.getResolveCount()).isEqualTo(1);
+    assertThat(stats.getHedgeCount()).isEqualTo(1);
+    assertThat(stats.getHedgeWinCount()).isEqualTo(1);
+    assertThat(stats.getThrottledCount()).isZero();
+  }
+
+  @Test
+  public void callFailsOnlyWhenAllAttemptsFailed() {
+    final ResolveHedger hedger =
+        new ResolveHedger(Duration.ofMillis(10), 1, scheduler, Runnable::run);
+
+    final CompletableFuture<String> result = hedger.call(this::attempt);
+    timers.get(0).run();
+    attempts.get(0).completeExceptionally(new RuntimeException("first"));
+    assertThat(result).isNotDone();
+
+    attempts.get(1).completeExceptionally(new RuntimeException("hedge"));
+    assertThat(result).isCompletedExceptionally();
+    assertThat(hedger.stats().getHedgeWinCount()).isZero();
+  }
+
+  @Test
+  public void hedgesAreLimitedToTheMaximumRate() {
+    final ResolveHedger hedger =
+        new ResolveHedger(Duration.ofMillis(10), 0.5, scheduler, Runnable::run);
+
+    hedger.call(this::attempt);
+    timers.get(0).run();
+    hedger.call(this::attempt);
+    timers.get(1).run();
+
+    // only the second call earned a full hedge
+    assertThat(attempts).hasSize(3);
+    assertThat(hedger.stats().getHedgeCount()).isEqualTo(1);
+    assertThat(hedger.stats().getThrottledCount()).isEqualTo(1);
+  }
+
+  private CompletableFuture<String> attempt() {
+    final CompletableFuture<String> attempt = new CompletableFuture<>();
+    attempts.add(attempt);
+    return attempt;
+  }
+}
@@ -0,0 +1,79 @@
+package com.spotify.confidence;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+
+final class SemanticVersionTest {
+
+  @Test
+  public void ordersByPrecedence() {
+    // the example from the Semantic Versioning 2.0.0 specification
+    final List<String> ordered =
+        List.of(
+            "1.0.0-alpha",
+            "1.0.0-alpha.1",
+            "1.0.0-alpha.beta",
+            "1.0.0-beta",
+            "1.0.0-beta.2",
+            "1.0.0-beta.11",
+            "1.0.0-rc.1",
+            "1.0.0",
+            "1.2.0",
+            "1.10.0",
+            "2.0.0");
+    final List<SemanticVersion> shuffled =
+        ordered.stream().map(SemanticVersion::parse).collect(Collectors.toList());
+    Collections.shuffle(shuffled);
+    final List<SemanticVersion> sorted = new ArrayList<>(shuffled);
+    Collections.sort(sorted);
+
+    assertThat(sorted.stream().map(SemanticVersion::toString)).containsExactlyElementsOf(ordered);
+  }
+
+  @Test
+  public void ignoresBuildMetadata() {
+    assertThat(SemanticVersion.parse("1.2.3+build.5")).isEqualTo(SemanticVersion.parse("1.2.3"));
+    assertThat(SemanticVersion.parse("1.2.3-rc.1+build.5"))
+        .isEqualTo(SemanticVersion.parse("1.2.3-rc.1"))
+        .hasSameHashCodeAs(SemanticVersion.parse("1.2.3-rc.1"));
+  }
+
+  @Test
+  public void rejectsInvalidVersions() {
+    Stream.of(
+            "",
+            "1",
+            "1.2",
+            "1.2.3.4",
+            "1..3",
+            "v1.2.3",
+            "1.2.3-",
+            "1.2.x",
+            "99999999999.0.0",
+            "1.0.0-a..1",
+            "1.0.0-.a",
+            "1.0.0-a.",
+            "1.0.0-.",
+            "1.0.0-a.+build")
+        .forEach(version -> assertThat(SemanticVersion.parse(version)).as(version).isNull());
+  }
+
+  @Test
+  public void cachedParsingIsBounded() {
+    assertThat(SemanticVersion.parseCached("1.2.3")).isEqualTo(SemanticVersion.parse("1.2.3"));
+    assertThat(SemanticVersion.parseCached("1.2.3")).isSameAs(SemanticVersion.parseCached("1.2.3"));
+    assertThat(SemanticVersion.parseCached("not-a-version")).isNull();
+
+    for (int i = 0; i < SemanticVersion.MAX_CACHED_VERSIONS * 2; i++) {
+      SemanticVersion.parseCached("1.0." + i);
+    }
+    assertThat(SemanticVersion.cacheSize())
+        .isLessThanOrEqualTo(SemanticVersion.MAX_CACHED_VERSIONS);
+  }
+}
@@ -0,0 +1,123 @@
+package com.spotify.confidence;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.protobuf.Struct;
+import com.google.protobuf.util.Structs;
+import com.google.protobuf.util.Values;
+import com.spotify.confidence.flags.types.v1.Expression;
+import com.spotify.confidence.flags.types.v1.Targeting;
+import com.spotify.confidence.flags.types.v1.Targeting.Criterion;
+import com.spotify.confidence.flags.types.v1.Targeting.Criterion.AttributeCriterion;
+import com.spotify.confidence.flags.types.v1.Targeting.Criterion.SegmentCriterion;
+import com.spotify.confidence.flags.types.v1.Targeting.EqRule;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+final class TargetingCompilerTest {
+
+  private static final Criterion SWEDEN = eq("country", "SE");
+  private static final Criterion PREMIUM = eq("plan", "premium");
+
+  @Test
+  public void foldsConstantBranches() {
+    final TargetingCompiler compiler = new TargetingCompiler(Map.of());
+
+    assertThat(compiler.compile(Targeting.getDefaultInstance()))
+        .isSameAs(TargetingCompiler.Constant.TRUE);
+    // "missing" refers to no criterion and never matches
+    assertThat(compiler.compile(targeting(and(ref("se"), ref("missing")))))
+        .isSameAs(TargetingCompiler.Constant.FALSE);
+    assertThat(compiler.compile(targeting(or(ref("se"), not(ref("missing"))))))
+        .isSameAs(TargetingCompiler.Constant.TRUE);
+    assertThat(compiler.compile(targeting(or(ref("se"), ref("missing")))))
+        .isInstanceOf(TargetingCompiler.AttributeMatch.class);
+    assertThat(compiler.compile(targeting(not(not(ref("se"))))))
+        .isInstanceOf(TargetingCompiler.AttributeMatch.class);
+  }
+
+  @Test
+  public void sharesCriteriaReferencedMoreThanOnce() {
+    final TargetingCompiler compiler = new TargetingCompiler(Map.of());
+
+    final TargetingPredicate predicate =
+        compiler.compile(targeting(or(and(ref("se"), ref("premium")), not(ref("se")))));
+
+    assertThat(predicate).isInstanceOf(TargetingCompiler.Or.class);
+    assertThat(predicate.test(scope(compiler, "SE"))).isFalse();
+    assertThat(predicate.test(scope(compiler, "NO"))).isTrue();
+  }
+
+  @Test
+  public void segmentsAreCompiledOnceAndCyclesNeverMatch() {
+    final Map<String, Targeting> segments =
+        Map.of(
+            "sweden", targeting(ref("se")),
+            "cycle", segmentTargeting("cycle"));
+    final TargetingCompiler compiler = new TargetingCompiler(segments);
+
+    final TargetingPredicate first = compiler.compile(segmentTargeting("sweden"));
+    final TargetingPredicate second = compiler.compile(segmentTargeting("sweden"));
+
+    assertThat(first).isInstanceOf(TargetingCompiler.Shared.class).isSameAs(second);
+    assertThat(first.test(scope(compiler, "SE"))).isTrue();
+    assertThat(compiler.compile(segmentTargeting("cycle")))
+        .isSameAs(TargetingCompiler.Constant.FALSE);
+  }
+
+  private static EvaluationScope scope(TargetingCompiler compiler, String country) {
+    final Struct context = Structs.of("country", Values.of(country));
+    return compiler.newScope(context);
+  }
+
+  private static Targeting targeting(Expression expression) {
+    return Targeting.newBuilder()
+        .putCriteria("se", SWEDEN)
+        .putCriteria("premium", PREMIUM)
+        .setExpression(expression)
+        .build();
+  }
+
+  private static Targeting segmentTargeting(String segment) {
+    return Targeting.newBuilder()
+        .putCriteria(
+            "segment",
+            Criterion.newBuilder()
+                .setSegment(SegmentCriterion.newBuilder().setSegment(segment))
+                .build())
+        .setExpression(ref("segment"))
+        .build();
+  }
+
+  private static Criterion eq(String attributeName, String value) {
+    return Criterion.newBuilder()
+        .setAttribute(
+            AttributeCriterion.newBuilder()
+                .setAttributeName(attributeName)
+                .setEqRule(
+                    EqRule.newBuilder()
+                        .setValue(Targeting.Value.newBuilder().setStringValue(value))))
+        .build();
+  }
+
+  private static Expression ref(String criterion) {
+    return Expression.newBuilder().setRef(criterion).build();
+  }
+
+  private static Expression not(Expression expression) {
+    return Expression.newBuilder().setNot(expression).build();
+  }
+
+  private static Expression and(Expression... operands) {
+    return Expression.newBuilder()
+        .setAnd(Expression.Operands.newBuilder().addAllOperands(List.of(operands)))
+        .build();
+  }
+
+  private static Expression or(Expression... operands) {
+    return Expression.newBuilder()
+        .setOr(Expression.Operands.newBuilder().addAllOperands(List.of(operands)))
+        .build();
+  }
+}
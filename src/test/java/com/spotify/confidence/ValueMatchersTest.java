@@ -0,0 +1,83 @@
+package com.spotify.confidence;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.protobuf.Timestamp;
+import com.google.protobuf.util.Values;
+import com.spotify.confidence.flags.types.v1.Targeting;
+import com.spotify.confidence.flags.types.v1.Targeting.RangeRule;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+final class ValueMatchersTest {
+
+  @Test
+  public void setMatchesEachTypeOfValue() {
+    final ValueMatcher matcher =
+        new ValueMatchers.SetMatcher(
+            List.of(
+                Targeting.Value.newBuilder().setBoolValue(true).build(),
+                Targeting.Value.newBuilder().setNumberValue(0.0).build(),
+                Targeting.Value.newBuilder().setNumberValue(42).build(),
+                Targeting.Value.newBuilder().setStringValue("SE").build(),
+                Targeting.Value.newBuilder()
+                    .setTimestampValue(Timestamp.newBuilder().setSeconds(1_700_000_000))
+                    .build(),
+                Targeting.Value.newBuilder()
+                    .setVersionValue(Targeting.SemanticVersion.newBuilder().setVersion("1.2.3"))
+                    .build()));
+
+    assertThat(matcher.matches(Values.of(true))).isTrue();
+    assertThat(matcher.matches(Values.of(false))).isFalse();
+    assertThat(matcher.matches(Values.of(-0.0))).isTrue();
+    assertThat(matcher.matches(Values.of(42))).isTrue();
+    assertThat(matcher.matches(Values.of(43))).isFalse();
+    assertThat(matcher.matches(Values.of("SE"))).isTrue();
+    assertThat(matcher.matches(Values.of("2023-11-14T22:13:20Z"))).isTrue();
+    assertThat(matcher.matches(Values.of("1.2.3"))).isTrue();
+    assertThat(matcher.matches(Values.of("1.2.4"))).isFalse();
+    assertThat(matcher.matches(Values.ofNull())).isFalse();
+  }
+
+  @Test
+  public void largeSetMatchesMembersOnly() {
+    final ValueMatcher matcher =
+        new ValueMatchers.SetMatcher(
+            IntStream.range(0, 100_000)
+                .mapToObj(i -> Targeting.Value.newBuilder().setStringValue("user-" + i).build())
+                .collect(Collectors.toList()));
+
+    assertThat(matcher.matches(Values.of("user-0"))).isTrue();
+    assertThat(matcher.matches(Values.of("user-99999"))).isTrue();
+    assertThat(matcher.matches(Values.of("user-100000"))).isFalse();
+  }
+
+  @Test
+  public void rangesRespectInclusiveAndExclusiveBounds() {
+    final ValueMatcher numbers =
+        ValueMatchers.range(
+            RangeRule.newBuilder()
+                .setStartExclusive(Targeting.Value.newBuilder().setNumberValue(1))
+                .setEndInclusive(Targeting.Value.newBuilder().setNumberValue(3))
+                .build());
+    assertThat(numbers).isInstanceOf(ValueMatchers.NumberRangeMatcher.class);
+    assertThat(numbers.matches(Values.of(1))).isFalse();
+    assertThat(numbers.matches(Values.of(3))).isTrue();
+    assertThat(numbers.matches(Values.of("2"))).isFalse();
+
+    final ValueMatcher timestamps =
+        ValueMatchers.range(
+            RangeRule.newBuilder()
+                .setStartInclusive(
+                    Targeting.Value.newBuilder()
+                        .setTimestampValue(Timestamp.newBuilder().setSeconds(1_700_000_000)))
+                .build());
+    assertThat(timestamps.matches(Values.of("2023-11-14T22:13:20Z"))).isTrue();
+    assertThat(timestamps.matches(Values.of("2023-11-14T22:13:19Z"))).isFalse();
+    assertThat(timestamps.matches(Values.of("not-a-timestamp"))).isFalse();
+
+    assertThat(ValueMatchers.range(RangeRule.getDefaultInstance())).isSameAs(ValueMatchers.NONE);
+  }
+}
@@ -0,0 +1,161 @@
+package com.spotify.confidence;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import com.google.protobuf.util.Structs;
+import com.google.protobuf.util.Values;
+import com.spotify.confidence.flags.resolver.v1.FlagDefinition;
+import com.spotify.confidence.flags.resolver.v1.FlagDefinition.Rule;
+import com.spotify.confidence.flags.resolver.v1.FlagDefinition.Variant;
+import com.spotify.confidence.flags.resolver.v1.FlagDefinitions;
+import com.spotify.confidence.flags.types.v1.FlagSchema;
+import com.spotify.confidence.flags.types.v1.FlagSchema.BoolFlagSchema;
+import com.spotify.confidence.flags.types.v1.FlagSchema.StructFlagSchema;
+import com.spotify.confidence.flags.types.v1.Targeting;
+import dev.openfeature.sdk.ImmutableContext;
+import dev.openfeature.sdk.ProviderEvaluation;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Evaluates a flag 100k times concurrently against a {@link LocalFlagResolverService} served
+ * in-process. The evaluations on virtual threads need Java 21, so they only run in the Java 21 job
+ * of the CI workflow and are skipped on older runtimes. Virtual threads that pin their carrier
+ * thread while blocking are found with a JFR recording of {@value #PINNED_EVENT} events.
+ */
+final class VirtualThreadLoadTest {
+
+  private static final int EVALUATIONS = 100_000;
+  private static final int CONTEXTS = 1000;
+  private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+  private Server server;
+  private ManagedChannel channel;
+  private ConfidenceFeatureProvider provider;
+
+  @BeforeEach
+  void beforeEach() throws IOException {
+    final String serverName = InProcessServerBuilder.generateName();
+    server =
+        InProcessServerBuilder.forName(serverName)
+            .addService(new LocalFlagResolverService(LocalResolver.create(definitions())))
+            .build()
+            .start();
+    channel = InProcessChannelBuilder.forName(serverName).build();
+  }
+
+  @AfterEach
+  void afterEach() {
+    if (provider != null) {
+      provider.shutdown();
+    }
+    channel.shutdownNow();
+    server.shutdownNow();
+  }
+
+  @Test
+  public void concurrentAsyncEvaluations() throws Exception {
+    provider =
+        ConfidenceFeatureProvider.builder("fake-secret")
+            .channel(channel)
+            .batching(Duration.ofMillis(1), 100)
+            .build();
+
+    final List<CompletableFuture<ProviderEvaluation<Boolean>>> evaluations =
+        new ArrayList<>(EVALUATIONS);
+    for (int i = 0; i < EVALUATIONS; i++) {
+      evaluations.add(provider.getBooleanEvaluationAsync("flag.enabled", false, context(i)));
+    }
+    CompletableFuture.allOf(evaluations.toArray(new CompletableFuture<?>[0]))
+        .get(1, TimeUnit.MINUTES);
+
+    for (CompletableFuture<ProviderEvaluation<Boolean>> evaluation : evaluations) {
+      assertThat(evaluation.join().getValue()).isTrue();
+    }
+  }
+
+  @Test
+  public void concurrentBlockingEvaluationsOnVirtualThreads(@TempDir Path directory)
+      throws Exception {
+    assumeTrue(VirtualThreads.isAvailable(), "virtual threads require Java 21");
+    provider =
+        ConfidenceFeatureProvider.builder("fake-secret")
+            .channel(channel)
+            .batching(Duration.ofMillis(1), 100)
+            .deferredApply()
+            .virtualThreads()
+            .build();
+
+    final Path recordingFile = directory.resolve("pinned.jfr");
+    final ExecutorService executor = VirtualThreads.newThreadPerTaskExecutor("load-");
+    try (Recording recording = new Recording()) {
+      // every pinned park is recorded, not only the ones longer than the default threshold
+      recording.enable(PINNED_EVENT).withThreshold(Duration.ZERO).withStackTrace();
+      recording.start();
+      final List<Future<Boolean>> evaluations = new ArrayList<>(EVALUATIONS);
+      for (int i = 0; i < EVALUATIONS; i++) {
+        final ImmutableContext context = context(i);
+        evaluations.add(
+            executor.submit(
+                () -> provider.getBooleanEvaluation("flag.enabled", false, context).getValue()));
+      }
+      for (Future<Boolean> evaluation : evaluations) {
+        assertThat(evaluation.get(1, TimeUnit.MINUTES)).isTrue();
+      }
+      recording.stop();
+      recording.dump(recordingFile);
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertThat(RecordingFile.readAllEvents(recordingFile))
+        .filteredOn(event -> event.getEventType().getName().equals(PINNED_EVENT))
+        .isEmpty();
+  }
+
+  private static ImmutableContext context(int i) {
+    return new ImmutableContext("user-" + i % CONTEXTS);
+  }
+
+  private static FlagDefinitions definitions() {
+    final String variant = "flags/flag/variants/on";
+    return FlagDefinitions.newBuilder()
+        .addFlags(
+            FlagDefinition.newBuilder()
+                .setName("flags/flag")
+                .setSchema(
+                    StructFlagSchema.newBuilder()
+                        .putSchema(
+                            "enabled",
+                            FlagSchema.newBuilder()
+                                .setBoolSchema(BoolFlagSchema.getDefaultInstance())
+                                .build()))
+                .addVariants(
+                    Variant.newBuilder()
+                        .setName(variant)
+                        .setValue(Structs.of("enabled", Values.of(true))))
+                .addRules(
+                    Rule.newBuilder()
+                        .setTargeting(Targeting.getDefaultInstance())
+                        .setVariant(variant)))
+        .build();
+  }
+}
@@ -0,0 +1,93 @@
+package com.spotify.confidence;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Struct;
+import com.google.protobuf.util.Structs;
+import com.google.protobuf.util.Timestamps;
+import com.google.protobuf.util.Values;
+import com.spotify.confidence.flags.resolver.v1.PersistedResolve;
+import com.spotify.confidence.flags.resolver.v1.ResolvedFlag;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+final class WarmStartTest {
+
+  private static final Struct CONTEXT = Structs.of("targeting_key", Values.of("user"));
+
+  private final AtomicLong nanoTime = new AtomicLong();
+  private final AtomicInteger resolves = new AtomicInteger();
+
+  @Test
+  public void loadedFlagsAreServedStaleUntilTheyAreResolvedAgain() {
+    final WarmStart warmStart = warmStart(new CompletableFuture<>());
+
+    final FlagResolution loaded = warmStart.get("flags/flag", CONTEXT);
+
+    assertThat(loaded.isStale()).isTrue();
+    assertThat(loaded.getResolvedFlag().getVariant()).isEqualTo("flags/flag/variants/a");
+    assertThat(warmStart.get("flags/flag", CONTEXT)).isSameAs(loaded);
+    assertThat(warmStart.get("flags/flag", Structs.of("other", Values.of(1)))).isNull();
+    assertThat(warmStart.get("flags/other", CONTEXT)).isNull();
+    // a single background resolve, since the first one is still running
+    assertThat(resolves).hasValue(1);
+  }
+
+  @Test
+  public void retiresAfterItsLifetime() {
+    final WarmStart warmStart = warmStart(new CompletableFuture<>());
+    assertThat(warmStart.remaining()).hasSize(1);
+
+    nanoTime.addAndGet(Duration.ofMinutes(1).toNanos());
+
+    assertThat(warmStart.get("flags/flag", CONTEXT)).isNull();
+    assertThat(warmStart.size()).isZero();
+    assertThat(warmStart.remaining()).isEmpty();
+    assertThat(resolves).hasValue(0);
+  }
+
+  @Test
+  public void resolvesAgainOnTheExecutor() {
+    final List<Runnable> tasks = new ArrayList<>();
+    final WarmStart warmStart = warmStart(CompletableFuture.completedFuture(null), tasks::add);
+
+    assertThat(warmStart.get("flags/flag", CONTEXT)).isNotNull();
+    assertThat(resolves).hasValue(0);
+
+    tasks.forEach(Runnable::run);
+
+    assertThat(resolves).hasValue(1);
+    assertThat(warmStart.size()).isZero();
+  }
+
+  private WarmStart warmStart(CompletableFuture<FlagResolution> refreshed) {
+    return warmStart(refreshed, Runnable::run);
+  }
+
+  private WarmStart warmStart(CompletableFuture<FlagResolution> refreshed, Executor executor) {
+    final PersistedResolve persisted =
+        PersistedResolve.newBuilder()
+            .setEvaluationContextSha256(PersistentSnapshot.digest(CONTEXT))
+            .setResolvedFlag(
+                ResolvedFlag.newBuilder().setFlag("flags/flag").setVariant("flags/flag/variants/a"))
+            .setResolveToken(ByteString.copyFromUtf8("token"))
+            .setResolveTime(Timestamps.fromMillis(System.currentTimeMillis()))
+            .build();
+    return new WarmStart(
+        List.of(persisted),
+        (flag, context) -> {
+          resolves.incrementAndGet();
+          return refreshed;
+        },
+        executor,
+        Duration.ofMinutes(1),
+        nanoTime::get);
+  }
+}